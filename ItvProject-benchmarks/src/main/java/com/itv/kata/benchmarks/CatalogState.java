@@ -0,0 +1,123 @@
+package com.itv.kata.benchmarks;
+
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.itv.kata.checkout.KataSupermarketCheckout;
+import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.checkout.PriceCatalog;
+import com.itv.kata.checkout.Receipt;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule;
+
+/**
+ * The rules, items and baskets shared by the checkout benchmarks.
+ *
+ * Every item has an individual price and every tenth item a 3 for 2 offer as
+ * well. The items scanned are drawn up front, either uniformly or with a Zipf
+ * skew where a few best sellers make up most of the scans.
+ *
+ */
+@State(Scope.Benchmark)
+public class CatalogState {
+
+	public enum Skew {
+		UNIFORM, ZIPF
+	}
+
+	// Number of scans drawn up front, a power of two so the next one is picked with a mask.
+	private static final int SCANS = 1 << 16;
+
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int catalogSize;
+
+	@Param({ "1", "10", "100" })
+	public int basketSize;
+
+	@Param({ "UNIFORM", "ZIPF" })
+	public Skew skew;
+
+	public KataSupermarketCheckout checkout;
+	public Set<PricingRule> pricingRules;
+	public PriceCatalog catalog;
+	public Item[] scans;
+	public Transaction basket;
+	public Receipt receipt;
+
+	private int next;
+
+	@Setup
+	public void setUp() {
+		final Item[] items = new Item[catalogSize];
+		pricingRules = new HashSet<PricingRule>(catalogSize * 3);
+		for (int i = 0; i < catalogSize; i++) {
+			items[i] = new Item("SKU" + i);
+			pricingRules.add(pricingRuleFor(items[i]).atPrice(Money.ofPence(50 + i % 200)));
+			if (i % 10 == 0) {
+				pricingRules.add(multiItemPricingRuleFor(items[i]).buy(3).atPrice(Money.ofPence(2 * (50 + i % 200))));
+			}
+		}
+
+		final Random random = new Random(42);
+		final double[] cumulative = skew == Skew.ZIPF ? zipf(catalogSize) : null;
+		scans = new Item[SCANS];
+		for (int i = 0; i < SCANS; i++) {
+			// Fresh instances, as a barcode reader would create them.
+			final int sku = cumulative == null ? random.nextInt(catalogSize) : sample(cumulative, random.nextDouble());
+			scans[i] = new Item(items[sku].getSku());
+		}
+
+		checkout = new KataSupermarketCheckout();
+		catalog = PriceCatalog.compile(pricingRules);
+		basket = checkout.getTransaction(pricingRules);
+		receipt = new Receipt(basketSize * 2);
+		for (int i = 0; i < basketSize; i++) {
+			basket.scan(nextScan());
+		}
+	}
+
+	/**
+	 * @return the next item to scan.
+	 */
+	public Item nextScan() {
+		return scans[next++ & (SCANS - 1)];
+	}
+
+	private static double[] zipf(final int size) {
+		final double[] cumulative = new double[size];
+		double sum = 0;
+		for (int rank = 0; rank < size; rank++) {
+			sum += 1.0 / (rank + 1);
+			cumulative[rank] = sum;
+		}
+		for (int rank = 0; rank < size; rank++) {
+			cumulative[rank] /= sum;
+		}
+		return cumulative;
+	}
+
+	private static int sample(final double[] cumulative, final double probability) {
+		int low = 0;
+		int high = cumulative.length - 1;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (cumulative[middle] < probability) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+}
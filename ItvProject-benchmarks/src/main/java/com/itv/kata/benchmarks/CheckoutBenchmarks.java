@@ -0,0 +1,117 @@
+package com.itv.kata.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.checkout.ValidationUtil;
+import com.itv.kata.model.Money;
+
+/**
+ * Benchmarks of the checkout hot paths: scanning a basket, validating an item
+ * and calculating the total of a basket, with or without its receipt, and
+ * starting a transaction from a rule set.
+ *
+ * Run with {@code java -jar target/benchmarks.jar}. Results are written as JSON
+ * to {@code target/jmh-result.json}, with the allocation rate of the GC
+ * profiler, so two releases can be compared. Other JMH options given on the
+ * command line, for example {@code -p catalogSize=1000}, are applied as well.
+ *
+ */
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CheckoutBenchmarks {
+
+	/**
+	 * Scans a new basket of basketSize items.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Transaction scan(final CatalogState state) {
+		final Transaction transaction = state.checkout.getTransaction(state.catalog);
+		for (int i = 0; i < state.basketSize; i++) {
+			transaction.scan(state.nextScan());
+		}
+		return transaction;
+	}
+
+	/**
+	 * Starts a transaction for the rule set, which looks up the catalog compiled for it.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Transaction getTransactionForRuleSet(final CatalogState state) {
+		return state.checkout.getTransaction(state.pricingRules);
+	}
+
+	/**
+	 * Validates one item against the compiled catalog.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public boolean validateItem(final CatalogState state) {
+		return ValidationUtil.validateItem(state.nextScan(), state.catalog);
+	}
+
+	/**
+	 * Validates one item against the rule set, for comparison with the catalog.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public boolean validateItemAgainstRuleSet(final CatalogState state) {
+		return ValidationUtil.validateItem(state.nextScan(), state.pricingRules);
+	}
+
+	/**
+	 * Calculates the total of a scanned basket of basketSize items.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public BigDecimal calculateTotalPrice(final CatalogState state) {
+		return state.checkout.calculateTotalPrice(state.basket);
+	}
+
+	/**
+	 * Calculates the total of the same basket itemised on a reused receipt, to compare with the total alone.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Money calculateTotalWithReceipt(final CatalogState state) {
+		return state.checkout.calculateTotal(state.basket, state.receipt);
+	}
+
+	public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+		final Options options = new OptionsBuilder()
+				.include(CheckoutBenchmarks.class.getName())
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("target/jmh-result.json")
+				.parent(new CommandLineOptions(args))
+				.build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,254 @@
+package com.itv.kata.service;
+
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.itv.kata.checkout.KataSupermarketCheckout;
+import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.checkout.PricingRuleStore;
+import com.itv.kata.checkout.ScanResult;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule;
+
+/**
+ * CheckoutServer serves checkout sessions to tills over a loopback socket.
+ *
+ * Every connection is the session of one till and runs on a virtual thread of
+ * its own, so the session is written as plain blocking reads and writes and
+ * thousands of tills cost a few kilobytes each rather than a platform thread.
+ *
+ * The protocol is one request per line, answered with one line:
+ *
+ *   SCAN sku [quantity]  OK, UNKNOWN_SKU or REJECTED
+ *   TOTAL                TOTAL and the total in GBP, the next scan starts a new basket
+ *   VOID                 OK, the basket is discarded
+ *   QUIT                 BYE, the connection is closed
+ *
+ * A request that cannot be understood is answered with ERROR and the reason,
+ * the session carries on. Every basket is priced with the catalog published to
+ * the store when its first item was scanned.
+ *
+ */
+public final class CheckoutServer implements AutoCloseable {
+
+	public static final int DEFAULT_PORT = 7070;
+
+	// Lets a load of tills connect at once without being refused.
+	private static final int BACKLOG = 4096;
+	// Wait between failed accepts, doubled after every failure in a row.
+	private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10;
+	private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+	private final KataSupermarketCheckout checkout;
+	private final PricingRuleStore store;
+	private final ServerSocket serverSocket;
+	private final ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor();
+	private final Thread acceptor;
+	private final LongAdder sessionCount = new LongAdder();
+	private final LongAdder requestCount = new LongAdder();
+
+	private CheckoutServer(final KataSupermarketCheckout checkout, final PricingRuleStore store, final ServerSocket serverSocket) {
+		this.checkout = checkout;
+		this.store = store;
+		this.serverSocket = serverSocket;
+		this.acceptor = Thread.ofVirtual().name("checkout-acceptor").start(this::accept);
+	}
+
+	/**
+	 * Gives you a server accepting tills on the loopback address.
+	 * @param checkout the checkout totalling the baskets.
+	 * @param store the prices, published while the server runs.
+	 * @param port the port, 0 for any free port.
+	 * @return CheckoutServer
+	 * @throws IOException if the port cannot be bound.
+	 */
+	public static CheckoutServer start(final KataSupermarketCheckout checkout, final PricingRuleStore store, final int port) throws IOException {
+		return new CheckoutServer(checkout, store, new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress()));
+	}
+
+	/**
+	 * @return the address the tills connect to.
+	 */
+	public InetSocketAddress getAddress() {
+		return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+	}
+
+	/**
+	 * @return the number of sessions opened so far.
+	 */
+	public long getSessionCount() {
+		return sessionCount.sum();
+	}
+
+	/**
+	 * @return the number of requests answered so far.
+	 */
+	public long getRequestCount() {
+		return requestCount.sum();
+	}
+
+	private void accept() {
+		long backoffMillis = 0;
+		while (!serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				if (serverSocket.isClosed()) {
+					return;
+				}
+				// Out of file descriptors or another failure that will not go away at once,
+				// so wait a little longer every time rather than spin on accept.
+				backoffMillis = Math.min(Math.max(2 * backoffMillis, MIN_ACCEPT_BACKOFF_MILLIS), MAX_ACCEPT_BACKOFF_MILLIS);
+				System.err.println("Checkout server could not accept a till, retrying in " + backoffMillis + "ms: " + e);
+				try {
+					Thread.sleep(backoffMillis);
+				} catch (InterruptedException interrupted) {
+					return;
+				}
+				continue;
+			}
+			backoffMillis = 0;
+			sessionCount.increment();
+			sessions.execute(() -> serve(socket));
+		}
+	}
+
+	private void serve(final Socket socket) {
+		try (Socket session = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(session.getInputStream(), StandardCharsets.US_ASCII));
+				Writer out = new BufferedWriter(new OutputStreamWriter(session.getOutputStream(), StandardCharsets.US_ASCII))) {
+			session.setTcpNoDelay(true);
+			final Session till = new Session();
+			String request;
+			while ((request = in.readLine()) != null) {
+				final String response = till.handle(request);
+				out.write(response);
+				out.write('\n');
+				out.flush();
+				requestCount.increment();
+				if (till.closed) {
+					return;
+				}
+			}
+		} catch (SocketException e) {
+			// The till went away, or the server is closing.
+		} catch (IOException e) {
+			System.err.println("Session of " + socket.getRemoteSocketAddress() + " failed: " + e);
+		}
+	}
+
+	// The basket of one till, only ever touched by the session's own thread.
+	private final class Session {
+
+		private Transaction basket;
+		private boolean closed;
+
+		private String handle(final String request) {
+			final String[] words = request.trim().split(" +");
+			try {
+				switch (words[0]) {
+				case "SCAN":
+					return scan(words);
+				case "TOTAL":
+					final Money total = basket == null ? Money.ZERO : checkout.calculateTotal(basket);
+					basket = null;
+					return "TOTAL " + total.toGBP().toPlainString();
+				case "VOID":
+					basket = null;
+					return "OK";
+				case "QUIT":
+					closed = true;
+					return "BYE";
+				default:
+					return "ERROR unknown request " + words[0];
+				}
+			} catch (InvalidKataRequestException e) {
+				return "ERROR " + e.getMessage();
+			}
+		}
+
+		private String scan(final String[] words) {
+			if (words.length < 2 || words.length > 3) {
+				return "ERROR expected SCAN sku [quantity]";
+			}
+			final long quantity;
+			try {
+				quantity = words.length == 3 ? Long.parseLong(words[2]) : 1;
+			} catch (NumberFormatException e) {
+				return "ERROR invalid quantity " + words[2];
+			}
+			if (basket == null) {
+				basket = checkout.getTransaction(store);
+			}
+			final ScanResult result = basket.tryScan(new Item(words[1]), quantity);
+			return result.isAccepted() ? "OK" : result.name();
+		}
+	}
+
+	/**
+	 * Stops accepting tills and closes every open session.
+	 */
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		// Interrupting a virtual thread blocked on a socket closes the socket.
+		sessions.shutdownNow();
+		try {
+			acceptor.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Gives you the prices of a demo catalog of SKU0 to SKU(n - 1), every item
+	 * priced individually and every tenth one on a 3 for 2 offer as well.
+	 * @param catalogSize the number of items.
+	 * @return Set of PricingRule
+	 */
+	public static Set<PricingRule> demoPricingRules(final int catalogSize) {
+		final Set<PricingRule> pricingRules = new HashSet<PricingRule>(catalogSize * 3);
+		for (int i = 0; i < catalogSize; i++) {
+			final Item item = new Item("SKU" + i);
+			pricingRules.add(pricingRuleFor(item).atPrice(Money.ofPence(50 + i % 200)));
+			if (i % 10 == 0) {
+				pricingRules.add(multiItemPricingRuleFor(item).buy(3).atPrice(Money.ofPence(2 * (50 + i % 200))));
+			}
+		}
+		return pricingRules;
+	}
+
+	/**
+	 * Serves the demo catalog until the process is stopped.
+	 * Arguments: [port] [catalog size]
+	 */
+	public static void main(final String[] args) throws Exception {
+		final int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		final int catalogSize = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		final CheckoutServer server = start(new KataSupermarketCheckout(), new PricingRuleStore(demoPricingRules(catalogSize)), port);
+		System.out.println("Checkout server listening on " + server.getAddress() + " with " + catalogSize + " items");
+		server.acceptor.join();
+	}
+
+}
@@ -0,0 +1,232 @@
+package com.itv.kata.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.itv.kata.checkout.KataSupermarketCheckout;
+import com.itv.kata.checkout.PricingRuleStore;
+import com.itv.kata.metrics.LatencyHistogram;
+
+/**
+ * LoadGenerator simulates a store of tills scanning baskets against a
+ * CheckoutServer, and reports the throughput and the tail latency of the
+ * requests.
+ *
+ * Every till is a virtual thread with its own connection. The tills connect
+ * first and then start together, each scanning its baskets of random items of
+ * the demo catalog one request at a time and totalling them. The latency of a
+ * request is the time from writing it to reading its answer.
+ *
+ */
+public final class LoadGenerator {
+
+	/**
+	 * The outcome of one run.
+	 */
+	public static final class Report {
+
+		private final int tills;
+		private final long baskets;
+		private final long requests;
+		private final long errors;
+		private final long elapsedNanos;
+		private final LatencyHistogram latencies;
+
+		Report(final int tills, final long baskets, final long requests, final long errors, final long elapsedNanos, final LatencyHistogram latencies) {
+			this.tills = tills;
+			this.baskets = baskets;
+			this.requests = requests;
+			this.errors = errors;
+			this.elapsedNanos = elapsedNanos;
+			this.latencies = latencies;
+		}
+
+		public long getBaskets() {
+			return baskets;
+		}
+
+		public long getRequests() {
+			return requests;
+		}
+
+		/**
+		 * @return the number of requests answered other than expected, and of tills that failed.
+		 */
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * @return the requests answered per second.
+		 */
+		public double getThroughput() {
+			return requests * 1e9 / Math.max(1, elapsedNanos);
+		}
+
+		/**
+		 * @return the latency of the requests, in nanoseconds.
+		 */
+		public LatencyHistogram getLatencies() {
+			return latencies;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d tills, %d baskets, %d requests, %d errors in %.2f s%n"
+					+ "throughput %.0f requests/s, %.0f baskets/s%n"
+					+ "latency p50 %d us, p99 %d us, p99.9 %d us, max %d us",
+					tills, baskets, requests, errors, elapsedNanos / 1e9,
+					getThroughput(), baskets * 1e9 / Math.max(1, elapsedNanos),
+					micros(50), micros(99), micros(99.9), latencies.getMaxValue() / 1000);
+		}
+
+		private long micros(final double percentile) {
+			return latencies.getValueAtPercentile(percentile) / 1000;
+		}
+	}
+
+	private final InetSocketAddress server;
+	private final int catalogSize;
+
+	/**
+	 * @param server the address of the CheckoutServer.
+	 * @param catalogSize the number of items of the demo catalog the server prices.
+	 */
+	public LoadGenerator(final InetSocketAddress server, final int catalogSize) {
+		this.server = server;
+		this.catalogSize = catalogSize;
+	}
+
+	/**
+	 * Runs the given number of tills until each has totalled its baskets.
+	 * @param tills the number of tills.
+	 * @param basketsPerTill the number of baskets every till totals.
+	 * @param basketSize the number of items scanned into every basket.
+	 * @return Report
+	 * @throws InterruptedException if interrupted while the tills run.
+	 */
+	public Report run(final int tills, final int basketsPerTill, final int basketSize) throws InterruptedException {
+		final LatencyHistogram latencies = new LatencyHistogram();
+		final LongAdder requests = new LongAdder();
+		final LongAdder baskets = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final CountDownLatch connected = new CountDownLatch(tills);
+		final CountDownLatch go = new CountDownLatch(1);
+		final long elapsed;
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			final List<Future<?>> running = new ArrayList<Future<?>>(tills);
+			for (int till = 0; till < tills; till++) {
+				final SplittableRandom random = new SplittableRandom(till);
+				running.add(executor.submit(() -> {
+					try (Socket socket = new Socket()) {
+						try {
+							socket.connect(server);
+							socket.setTcpNoDelay(true);
+						} finally {
+							connected.countDown();
+						}
+						final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+						final Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+						go.await();
+						for (int basket = 0; basket < basketsPerTill; basket++) {
+							for (int scan = 0; scan < basketSize; scan++) {
+								request("SCAN SKU" + random.nextInt(catalogSize), "OK", in, out, latencies, requests, errors);
+							}
+							request("TOTAL", "TOTAL", in, out, latencies, requests, errors);
+							baskets.increment();
+						}
+						request("QUIT", "BYE", in, out, latencies, requests, errors);
+					}
+					return null;
+				}));
+			}
+			final long start;
+			try {
+				connected.await();
+				start = System.nanoTime();
+			} catch (InterruptedException e) {
+				// Interrupt the tills, or closing the executor would wait for them all.
+				executor.shutdownNow();
+				throw e;
+			} finally {
+				// Tills wait for go even if the run was given up.
+				go.countDown();
+			}
+			for (Future<?> till : running) {
+				try {
+					till.get();
+				} catch (ExecutionException e) {
+					errors.increment();
+				}
+			}
+			elapsed = System.nanoTime() - start;
+		}
+		return new Report(tills, baskets.sum(), requests.sum(), errors.sum(), elapsed, latencies);
+	}
+
+	private static void request(final String request, final String expected, final BufferedReader in, final Writer out,
+			final LatencyHistogram latencies, final LongAdder requests, final LongAdder errors) throws IOException {
+		final long start = System.nanoTime();
+		out.write(request);
+		out.write('\n');
+		out.flush();
+		final String response = in.readLine();
+		latencies.record(System.nanoTime() - start);
+		requests.increment();
+		if (response == null) {
+			throw new IOException("Server closed the session");
+		}
+		if (!response.startsWith(expected)) {
+			errors.increment();
+		}
+	}
+
+	/**
+	 * Runs a load against a server, started in this process on a free loopback
+	 * port unless an address is given.
+	 * Arguments: [tills] [baskets per till] [basket size] [catalog size] [host:port]
+	 */
+	public static void main(final String[] args) throws Exception {
+		final int tills = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		final int basketsPerTill = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		final int basketSize = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		final int catalogSize = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+
+		CheckoutServer server = null;
+		final InetSocketAddress address;
+		if (args.length > 4) {
+			final int colon = args[4].lastIndexOf(':');
+			address = new InetSocketAddress(args[4].substring(0, colon), Integer.parseInt(args[4].substring(colon + 1)));
+		} else {
+			server = CheckoutServer.start(new KataSupermarketCheckout(), new PricingRuleStore(CheckoutServer.demoPricingRules(catalogSize)), 0);
+			address = server.getAddress();
+		}
+		try {
+			final LoadGenerator generator = new LoadGenerator(address, catalogSize);
+			// A short run first, so the figures are not those of the JIT warming up.
+			generator.run(Math.min(tills, 100), 10, basketSize);
+			System.out.println(generator.run(tills, basketsPerTill, basketSize));
+		} finally {
+			if (server != null) {
+				server.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,540 @@
+package com.itv.kata.archive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.itv.kata.checkout.Receipt;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.ItemRegistry;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.BundlePricingRule;
+import com.itv.kata.pricing.PricingRule;
+
+/**
+ * BasketArchive is a columnar archive of the line items of completed baskets,
+ * for questions such as the revenue of one SKU under multi-buy offers last
+ * quarter, answered without pricing any basket again.
+ *
+ * Every line item is the time its basket was completed, the SKU, the quantity,
+ * the type of the rule it was priced with and the pence charged. Each of these
+ * is a column of its own, a little endian file of fixed width values in the
+ * archive directory, next to the dictionary of the SKUs:
+ * <pre>
+ * time.col      long  epoch milliseconds the basket was completed
+ * sku.col       int   index of the SKU in skus.dict
+ * quantity.col  long  quantity of the line
+ * rule.col      byte  ordinal of the RuleType
+ * pence.col     long  pence charged for the line
+ * </pre>
+ * The columns are mapped in segments, off the heap, and a query is a plain loop
+ * over the columns it filters or aggregates on, never reading the others.
+ *
+ * Line items are written by an {@link Appender}. An archive opened for queries
+ * sees the line items appended up to when it was opened.
+ *
+ */
+public final class BasketArchive {
+
+	static final int TIME = 0;
+	static final int SKU = 1;
+	static final int QUANTITY = 2;
+	static final int RULE = 3;
+	static final int PENCE = 4;
+	private static final int COLUMNS = 5;
+	private static final int COUNT = -1;
+	private static final int NO_GROUP = -1;
+
+	private static final String[] COLUMN_FILES = { "time.col", "sku.col", "quantity.col", "rule.col", "pence.col" };
+	private static final int[] COLUMN_BYTES = { 8, 4, 8, 1, 8 };
+	private static final String DICTIONARY_FILE = "skus.dict";
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	// Rows mapped at once, 128MB of a long column.
+	static final int DEFAULT_SEGMENT_ROWS = 1 << 24;
+	// Rows an appender buffers before writing them.
+	private static final int BUFFER_ROWS = 1 << 13;
+
+	/**
+	 * Appends line items to an archive. An appender is used by one thread at a
+	 * time, and only one appender is open on an archive.
+	 */
+	public static final class Appender implements Closeable {
+
+		private final Path directory;
+		private final FileChannel[] channels = new FileChannel[COLUMNS];
+		private final ByteBuffer[] buffers = new ByteBuffer[COLUMNS];
+		private final List<String> skus;
+		private final Map<String, Integer> skuIds;
+		private int writtenSkus;
+		private int buffered;
+
+		private Appender(final Path directory) throws IOException {
+			this.directory = directory;
+			Files.createDirectories(directory);
+			skus = readDictionary(directory);
+			writtenSkus = skus.size();
+			skuIds = new HashMap<String, Integer>(skus.size() * 2);
+			for (int id = 0; id < skus.size(); id++) {
+				skuIds.put(skus.get(id), id);
+			}
+			try {
+				for (int column = 0; column < COLUMNS; column++) {
+					channels[column] = FileChannel.open(directory.resolve(COLUMN_FILES[column]), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					buffers[column] = ByteBuffer.allocateDirect(BUFFER_ROWS * COLUMN_BYTES[column]).order(ORDER);
+				}
+				// Drops the rows a failed append wrote to some of the columns only.
+				final long rows = rowsOf(channels);
+				for (int column = 0; column < COLUMNS; column++) {
+					channels[column].truncate(rows * COLUMN_BYTES[column]);
+					channels[column].position(rows * COLUMN_BYTES[column]);
+				}
+			} catch (IOException e) {
+				closeAll();
+				throw e;
+			}
+		}
+
+		/**
+		 * Appends a line item.
+		 * @param time when the basket was completed, in epoch milliseconds.
+		 * @param item the item of the line.
+		 * @param quantity the quantity of the line.
+		 * @param rule the type of the rule the line was priced with.
+		 * @param pence the pence charged for the line.
+		 * @return Appender
+		 * @throws IOException if the buffered line items cannot be written.
+		 */
+		public Appender append(final long time, final Item item, final long quantity, final RuleType rule, final long pence) throws IOException {
+			if (item == null || item.getSku() == null) {
+				throw new InvalidKataRequestException("Sorry! Items without SKU cannot be archived.");
+			}
+			if (rule == null) {
+				throw new InvalidKataRequestException("Sorry! Line items must have a rule type, NONE if no rule applied.");
+			}
+			Integer id = skuIds.get(item.getSku());
+			if (id == null) {
+				id = skus.size();
+				skus.add(item.getSku());
+				skuIds.put(item.getSku(), id);
+			}
+			buffers[TIME].putLong(time);
+			buffers[SKU].putInt(id);
+			buffers[QUANTITY].putLong(quantity);
+			buffers[RULE].put((byte) rule.ordinal());
+			buffers[PENCE].putLong(pence);
+			if (++buffered == BUFFER_ROWS) {
+				flush();
+			}
+			return this;
+		}
+
+		/**
+		 * Appends every line of a receipt. A bundle is a line item for each of its
+		 * items, with the quantity of the item sold in the bundles and the price of
+		 * the bundles shared by quantity, so the quantities and revenue of every SKU
+		 * add up.
+		 * @param time when the basket was completed, in epoch milliseconds.
+		 * @param receipt the receipt of the basket.
+		 * @return Appender
+		 * @throws IOException if the buffered line items cannot be written.
+		 */
+		public Appender append(final long time, final Receipt receipt) throws IOException {
+			for (int line = 0; line < receipt.size(); line++) {
+				final PricingRule rule = receipt.getRule(line);
+				if (rule instanceof BundlePricingRule) {
+					appendBundle(time, (BundlePricingRule) rule, receipt.getQuantity(line), receipt.getPence(line));
+				} else {
+					append(time, receipt.getItem(line), receipt.getQuantity(line), RuleType.of(rule), receipt.getPence(line));
+				}
+			}
+			return this;
+		}
+
+		private void appendBundle(final long time, final BundlePricingRule bundle, final long times, final long pence) throws IOException {
+			final List<Item> items = bundle.getItems();
+			final long[] quantities = new long[items.size()];
+			long units = 0;
+			for (int i = 0; i < quantities.length; i++) {
+				quantities[i] = Money.multiplyPence(bundle.getQuantityOf(items.get(i)), times);
+				units = Money.addPence(units, quantities[i]);
+			}
+			// Shared in whole pence per unit, the few pence left over go to the first item.
+			final long perUnit = pence / units;
+			final long[] shares = new long[quantities.length];
+			long shared = 0;
+			for (int i = 0; i < quantities.length; i++) {
+				shares[i] = Money.multiplyPence(perUnit, quantities[i]);
+				shared = Money.addPence(shared, shares[i]);
+			}
+			shares[0] += pence - shared;
+			for (int i = 0; i < quantities.length; i++) {
+				append(time, items.get(i), quantities[i], RuleType.BUNDLE, shares[i]);
+			}
+		}
+
+		/**
+		 * Writes the buffered line items, so an archive opened from now on sees them.
+		 * @throws IOException if they cannot be written.
+		 */
+		public void flush() throws IOException {
+			// The dictionary goes first, a column never refers to a SKU missing from it.
+			if (writtenSkus < skus.size()) {
+				writeDictionary(directory, skus);
+				writtenSkus = skus.size();
+			}
+			for (int column = 0; column < COLUMNS; column++) {
+				final ByteBuffer buffer = buffers[column];
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channels[column].write(buffer);
+				}
+				buffer.clear();
+			}
+			buffered = 0;
+		}
+
+		/**
+		 * Writes the buffered line items and closes the column files.
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				closeAll();
+			}
+		}
+
+		private void closeAll() throws IOException {
+			IOException failure = null;
+			for (FileChannel channel : channels) {
+				try {
+					if (channel != null) {
+						channel.close();
+					}
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * A query over the line items of the archive. The filters narrow down the
+	 * line items, every aggregate scans the archive once.
+	 */
+	public final class Query {
+
+		private Item sku;
+		private RuleType rule;
+		private boolean timed;
+		private long from;
+		private long to;
+
+		private Query() {
+		}
+
+		/**
+		 * @param sku only the line items of this item.
+		 * @return Query
+		 */
+		public Query sku(final Item sku) {
+			this.sku = sku;
+			return this;
+		}
+
+		/**
+		 * @param rule only the line items priced with this type of rule.
+		 * @return Query
+		 */
+		public Query rule(final RuleType rule) {
+			this.rule = rule;
+			return this;
+		}
+
+		/**
+		 * @param from only the line items of baskets completed at or after this time, in epoch milliseconds.
+		 * @param to and before this time.
+		 * @return Query
+		 */
+		public Query between(final long from, final long to) {
+			this.timed = true;
+			this.from = from;
+			this.to = to;
+			return this;
+		}
+
+		/**
+		 * @return the number of line items.
+		 */
+		public long count() {
+			return aggregate(this, COUNT, NO_GROUP, new long[1], null)[0];
+		}
+
+		/**
+		 * @return the pence charged for the line items.
+		 */
+		public long sumPence() {
+			return aggregate(this, PENCE, NO_GROUP, new long[1], null)[0];
+		}
+
+		/**
+		 * @return the quantity of the line items.
+		 */
+		public long sumQuantity() {
+			return aggregate(this, QUANTITY, NO_GROUP, new long[1], null)[0];
+		}
+
+		/**
+		 * @return the pence charged per item, for the items with at least one line item.
+		 */
+		public Map<Item, Long> penceBySku() {
+			return bySku(PENCE);
+		}
+
+		/**
+		 * @return the quantity per item, for the items with at least one line item.
+		 */
+		public Map<Item, Long> quantityBySku() {
+			return bySku(QUANTITY);
+		}
+
+		/**
+		 * @return the pence charged per type of rule, for the types with at least one line item.
+		 */
+		public Map<RuleType, Long> penceByRule() {
+			final long[] counts = new long[RuleType.count()];
+			final long[] sums = aggregate(this, PENCE, RULE, new long[counts.length], counts);
+			final Map<RuleType, Long> byRule = new EnumMap<RuleType, Long>(RuleType.class);
+			for (int type = 0; type < sums.length; type++) {
+				if (counts[type] > 0) {
+					byRule.put(RuleType.ofOrdinal(type), sums[type]);
+				}
+			}
+			return byRule;
+		}
+
+		private Map<Item, Long> bySku(final int measure) {
+			final long[] counts = new long[skus.length];
+			final long[] sums = aggregate(this, measure, SKU, new long[counts.length], counts);
+			final Map<Item, Long> bySku = new HashMap<Item, Long>();
+			for (int id = 0; id < sums.length; id++) {
+				if (counts[id] > 0) {
+					bySku.put(skus[id], sums[id]);
+				}
+			}
+			return bySku;
+		}
+	}
+
+	/**
+	 * Gives you an appender adding line items to the archive in the given
+	 * directory, created if it does not exist.
+	 * @param directory the archive directory.
+	 * @return Appender
+	 * @throws IOException if the archive cannot be opened.
+	 */
+	public static Appender append(final Path directory) throws IOException {
+		return new Appender(directory);
+	}
+
+	/**
+	 * Maps the archive in the given directory for queries.
+	 * @param directory the archive directory.
+	 * @return BasketArchive
+	 * @throws IOException if the archive cannot be read.
+	 */
+	public static BasketArchive open(final Path directory) throws IOException {
+		return open(directory, DEFAULT_SEGMENT_ROWS);
+	}
+
+	static BasketArchive open(final Path directory, final int segmentRows) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			throw new InvalidKataRequestException("Sorry! " + directory + " is not a basket archive.");
+		}
+		final List<String> dictionary = readDictionary(directory);
+		final Item[] skus = new Item[dictionary.size()];
+		for (int id = 0; id < skus.length; id++) {
+			skus[id] = ItemRegistry.intern(dictionary.get(id));
+		}
+		final FileChannel[] channels = new FileChannel[COLUMNS];
+		try {
+			for (int column = 0; column < COLUMNS; column++) {
+				channels[column] = FileChannel.open(directory.resolve(COLUMN_FILES[column]), StandardOpenOption.READ);
+			}
+			final long rows = rowsOf(channels);
+			final int segmentCount = (int) ((rows + segmentRows - 1) / segmentRows);
+			final MappedByteBuffer[][] segments = new MappedByteBuffer[COLUMNS][segmentCount];
+			for (int column = 0; column < COLUMNS; column++) {
+				for (int segment = 0; segment < segmentCount; segment++) {
+					final long first = (long) segment * segmentRows;
+					final long length = Math.min(segmentRows, rows - first) * COLUMN_BYTES[column];
+					segments[column][segment] = channels[column].map(FileChannel.MapMode.READ_ONLY, first * COLUMN_BYTES[column], length);
+				}
+			}
+			return new BasketArchive(rows, segmentRows, skus, segments);
+		} finally {
+			// The mappings stay valid once the channels are closed.
+			for (FileChannel channel : channels) {
+				if (channel != null) {
+					channel.close();
+				}
+			}
+		}
+	}
+
+	private final long rows;
+	private final int segmentRows;
+	private final Item[] skus;
+	private final Map<Item, Integer> skuIds;
+	private final MappedByteBuffer[][] segments;
+
+	private BasketArchive(final long rows, final int segmentRows, final Item[] skus, final MappedByteBuffer[][] segments) {
+		this.rows = rows;
+		this.segmentRows = segmentRows;
+		this.skus = skus;
+		this.segments = segments;
+		this.skuIds = new HashMap<Item, Integer>(skus.length * 2);
+		for (int id = 0; id < skus.length; id++) {
+			skuIds.put(skus[id], id);
+		}
+	}
+
+	/**
+	 * @return a query over every line item, narrowed down by its filters.
+	 */
+	public Query query() {
+		return new Query();
+	}
+
+	/**
+	 * @return the number of line items.
+	 */
+	public long size() {
+		return rows;
+	}
+
+	/**
+	 * Sums the measure column, or counts the rows, of the line items passing the
+	 * filters of the query, per group if grouped by the SKU or rule column.
+	 * The rows of every group are counted as well if counts is given.
+	 */
+	private long[] aggregate(final Query query, final int measure, final int groupBy, final long[] sums, final long[] counts) {
+		int skuId = -1;
+		if (query.sku != null) {
+			final Integer id = skuIds.get(query.sku);
+			if (id == null) {
+				return sums;
+			}
+			skuId = id;
+		}
+		final byte rule = query.rule == null ? -1 : (byte) query.rule.ordinal();
+		final long from = query.from;
+		final long to = query.to;
+
+		for (int segment = 0; segment < segments[TIME].length; segment++) {
+			final int segmentSize = (int) Math.min(segmentRows, rows - (long) segment * segmentRows);
+			// Only the columns the query needs are read.
+			final LongBuffer times = query.timed ? longs(TIME, segment) : null;
+			final IntBuffer skuColumn = skuId >= 0 || groupBy == SKU ? ints(SKU, segment) : null;
+			final ByteBuffer ruleColumn = rule >= 0 || groupBy == RULE ? bytes(RULE, segment) : null;
+			final LongBuffer values = measure == COUNT ? null : longs(measure, segment);
+			for (int row = 0; row < segmentSize; row++) {
+				if (times != null) {
+					final long time = times.get(row);
+					if (time < from || time >= to) {
+						continue;
+					}
+				}
+				if (skuId >= 0 && skuColumn.get(row) != skuId) {
+					continue;
+				}
+				if (rule >= 0 && ruleColumn.get(row) != rule) {
+					continue;
+				}
+				final int group = groupBy == SKU ? skuColumn.get(row) : groupBy == RULE ? ruleColumn.get(row) : 0;
+				sums[group] += values == null ? 1 : values.get(row);
+				if (counts != null) {
+					counts[group]++;
+				}
+			}
+		}
+		return sums;
+	}
+
+	private ByteBuffer bytes(final int column, final int segment) {
+		return segments[column][segment].duplicate();
+	}
+
+	private IntBuffer ints(final int column, final int segment) {
+		return bytes(column, segment).order(ORDER).asIntBuffer();
+	}
+
+	private LongBuffer longs(final int column, final int segment) {
+		return bytes(column, segment).order(ORDER).asLongBuffer();
+	}
+
+	// Rows every column has, the ones of a failed append are only in some.
+	private static long rowsOf(final FileChannel[] channels) throws IOException {
+		long rows = Long.MAX_VALUE;
+		for (int column = 0; column < COLUMNS; column++) {
+			rows = Math.min(rows, channels[column].size() / COLUMN_BYTES[column]);
+		}
+		return rows;
+	}
+
+	private static List<String> readDictionary(final Path directory) throws IOException {
+		final Path file = directory.resolve(DICTIONARY_FILE);
+		final List<String> skus = new ArrayList<String>();
+		if (!Files.exists(file)) {
+			return skus;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			final int count = in.readInt();
+			for (int id = 0; id < count; id++) {
+				skus.add(in.readUTF());
+			}
+		}
+		return skus;
+	}
+
+	private static void writeDictionary(final Path directory, final List<String> skus) throws IOException {
+		final Path temp = directory.resolve(DICTIONARY_FILE + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(skus.size());
+			for (String sku : skus) {
+				out.writeUTF(sku);
+			}
+		}
+		Files.move(temp, directory.resolve(DICTIONARY_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	public String toString() {
+		return "BasketArchive [lineItems=" + rows + ", skus=" + skus.length + "]";
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.itv.kata.archive;
+
+import com.itv.kata.pricing.BundlePricingRule;
+import com.itv.kata.pricing.IndividualPricingRule;
+import com.itv.kata.pricing.MultiItemPricingRule;
+import com.itv.kata.pricing.PricingRule;
+
+/**
+ * The kind of rule a line item of a basket was priced with.
+ *
+ * Archives store the ordinal, so new types are only ever added at the end.
+ *
+ */
+public enum RuleType {
+
+	/** The quantity was not priced by any rule. */
+	NONE,
+	INDIVIDUAL,
+	MULTI_ITEM,
+	BUNDLE,
+	/** A rule type other than the built in ones. */
+	OTHER;
+
+	private static final RuleType[] VALUES = values();
+
+	/**
+	 * @param rule the rule, null if no rule applied.
+	 * @return the type of the rule.
+	 */
+	public static RuleType of(final PricingRule rule) {
+		if (rule == null) {
+			return NONE;
+		}
+		if (rule instanceof IndividualPricingRule) {
+			return INDIVIDUAL;
+		}
+		if (rule instanceof MultiItemPricingRule) {
+			return MULTI_ITEM;
+		}
+		if (rule instanceof BundlePricingRule) {
+			return BUNDLE;
+		}
+		return OTHER;
+	}
+
+	static RuleType ofOrdinal(final int ordinal) {
+		return VALUES[ordinal];
+	}
+
+	static int count() {
+		return VALUES.length;
+	}
+
+}
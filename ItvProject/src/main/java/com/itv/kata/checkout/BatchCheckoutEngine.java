@@ -0,0 +1,189 @@
+package com.itv.kata.checkout;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.GreedyPricingStrategy;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.pricing.PricingRule.MutableUnit;
+import com.itv.kata.pricing.PricingStrategy;
+
+/**
+ * BatchCheckoutEngine re-prices many baskets against one set of pricing rules,
+ * for example historical transactions against the next day's prices.
+ *
+ * The rules are compiled once, and the baskets are totalled in parallel on a
+ * fork-join pool. Workers share nothing but the immutable catalog.
+ *
+ */
+public final class BatchCheckoutEngine {
+
+	/**
+	 * The totals of a batch of baskets, in the order the baskets were given.
+	 */
+	public static final class BatchResult {
+
+		// Prices are in pence.
+		private final long[] totalPrices;
+		private final long aggregateTotalPrice;
+
+		BatchResult(final long[] totalPrices) {
+			this.totalPrices = totalPrices;
+			long aggregate = 0;
+			for (long totalPrice : totalPrices) {
+				aggregate = Money.addPence(aggregate, totalPrice);
+			}
+			this.aggregateTotalPrice = aggregate;
+		}
+
+		/**
+		 * @return the number of baskets.
+		 */
+		public int size() {
+			return totalPrices.length;
+		}
+
+		/**
+		 * @param index the index of the basket.
+		 * @return the total amount of the basket.
+		 */
+		public Money getTotal(final int index) {
+			return Money.ofPence(totalPrices[index]);
+		}
+
+		/**
+		 * @param index the index of the basket.
+		 * @return the total amount of the basket in GBP.
+		 */
+		public BigDecimal getTotalPrice(final int index) {
+			return getTotal(index).toGBP();
+		}
+
+		/**
+		 * @return the total amount of all the baskets.
+		 */
+		public Money getAggregateTotal() {
+			return Money.ofPence(aggregateTotalPrice);
+		}
+
+		/**
+		 * @return the total amount of all the baskets in GBP.
+		 */
+		public BigDecimal getAggregateTotalPrice() {
+			return getAggregateTotal().toGBP();
+		}
+
+		@Override
+		public String toString() {
+			return "BatchResult [baskets=" + totalPrices.length + ", total=" + aggregateTotalPrice + "p]";
+		}
+	}
+
+	// One unit per worker thread, reused by every rule the worker applies.
+	private static final ThreadLocal<MutableUnit> UNITS = ThreadLocal.withInitial(MutableUnit::new);
+
+	private final PriceCatalog catalog;
+	private final ForkJoinPool pool;
+	private final PricingStrategy pricingStrategy;
+
+	/**
+	 * Engine totalling on the common fork-join pool.
+	 * @param pricingRules the pricing rules to total the baskets with.
+	 */
+	public BatchCheckoutEngine(final Set<PricingRule> pricingRules) {
+		this(pricingRules, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pricingRules the pricing rules to total the baskets with.
+	 * @param pool the pool the baskets are totalled on, its parallelism decides the number of workers.
+	 */
+	public BatchCheckoutEngine(final Set<PricingRule> pricingRules, final ForkJoinPool pool) {
+		this(pricingRules, pool, new GreedyPricingStrategy());
+	}
+
+	/**
+	 * @param pricingRules the pricing rules to total the baskets with.
+	 * @param pool the pool the baskets are totalled on, its parallelism decides the number of workers.
+	 * @param pricingStrategy how the pricing rules of an item are combined.
+	 */
+	public BatchCheckoutEngine(final Set<PricingRule> pricingRules, final ForkJoinPool pool, final PricingStrategy pricingStrategy) {
+		this.catalog = PriceCatalog.compile(pricingRules);
+		this.pool = pool;
+		this.pricingStrategy = pricingStrategy;
+	}
+
+	/**
+	 * Calculates the total price of every transaction with the rules of this engine,
+	 * whatever rules the transactions were scanned with.
+	 * @param transactions the transactions to re-price.
+	 * @return the total of every transaction and the aggregate total.
+	 * @throws InvalidKataRequestException if a basket contains an item without a pricing rule.
+	 */
+	public BatchResult calculateTotalPrices(final Stream<Transaction> transactions) {
+		// Set when the caller gives up, so the workers stop instead of totalling the rest of the stream.
+		final AtomicBoolean cancelled = new AtomicBoolean();
+		final ForkJoinTask<BatchResult> batch = pool.submit(() -> new BatchResult(transactions.parallel()
+				.mapToLong(transaction -> totalPrice(transaction, cancelled)).toArray()));
+		try {
+			return batch.get();
+		} catch (InterruptedException e) {
+			cancelled.set(true);
+			batch.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InvalidKataRequestException("Sorry! Batch totalling was interrupted.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the compiled catalog the baskets are totalled with.
+	 */
+	public PriceCatalog getCatalog() {
+		return catalog;
+	}
+
+	/**
+	 * Gives you the price of the transaction's basket with the rules of this engine.
+	 * @param transaction the transaction.
+	 * @param cancelled set once the caller no longer waits for the batch.
+	 * @return the price in pence.
+	 */
+	private long totalPrice(final Transaction transaction, final AtomicBoolean cancelled) {
+		if (cancelled.get()) {
+			throw new CancellationException("Batch totalling was cancelled.");
+		}
+		final PriceCatalog scannedWith = transaction.getCatalog();
+		final ItemQuantityMap basket = transaction.getShoppingBasket();
+		final MutableUnit unit = UNITS.get();
+		if (scannedWith == catalog) {
+			return catalog.priceOf(basket, pricingStrategy, unit);
+		}
+
+		// Bundles price items together, so the basket is moved over to this engine's catalog as a whole.
+		final ItemQuantityMap repriced = new ItemQuantityMap(basket.size());
+		for (int slot = 0; slot < basket.capacity(); slot++) {
+			final int ordinal = basket.ordinalAt(slot);
+			if (ordinal >= 0) {
+				final Item item = scannedWith.itemAt(ordinal);
+				repriced.add(ValidationUtil.validateItemOrdinal(item, catalog), basket.quantityAt(slot));
+			}
+		}
+		return catalog.priceOf(repriced, pricingStrategy, unit);
+	}
+
+}
@@ -0,0 +1,260 @@
+package com.itv.kata.checkout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.itv.kata.model.Item;
+import com.itv.kata.model.ItemRegistry;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.BundlePricingRule;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.pricing.PricingRuleOrders;
+
+/**
+ * PriceCatalog compiled in memory from a set of pricing rules. The items of the
+ * catalog are interned, so looking up an interned item while scanning is an
+ * array index, and any other item a single hash probe. A small catalog among
+ * many interned SKUs, such as the overrides of one store, is only looked up by
+ * hash, so its size does not depend on the SKUs of the other catalogs.
+ *
+ */
+final class CompiledPriceCatalog extends PriceCatalog {
+
+	// Higher PricingRuleOrder first, the order of a rule type is resolved once when it is registered.
+	private static final Comparator<PricingRule> BY_ORDER = new Comparator<PricingRule>() {
+		public int compare(PricingRule o1, PricingRule o2) {
+			return PricingRuleOrders.orderOf(o2) - PricingRuleOrders.orderOf(o1);
+		}
+	};
+
+	// Beyond this many ids per item, the catalog is looked up by hash rather than by an array of all the ids.
+	private static final int MAX_IDS_PER_ITEM = 4;
+
+	// Copy of the rules this catalog was compiled from.
+	private final Set<PricingRule> pricingRules;
+	private final Map<Item, Integer> ordinals;
+	// Ordinals by the id of the interned items, -1 for items this catalog does not price. Null
+	// if the ids are too sparse, as for a few local prices among all the SKUs ever interned.
+	private final int[] ordinalsById;
+	private final Item[] items;
+	private final PricingRule[][] rules;
+	// Bundles, with the ordinals and quantities of their items, and the bundles indexed by every item.
+	private final BundlePricingRule[] bundles;
+	private final int[][] bundleOrdinals;
+	private final long[][] bundleQuantities;
+	private final int[][] bundlesOf;
+	private final boolean[] inBundle;
+
+	CompiledPriceCatalog(final Set<PricingRule> pricingRules, final long version) {
+		super(version);
+		this.pricingRules = Collections.unmodifiableSet(new HashSet<PricingRule>(pricingRules));
+
+		// Keep the iteration order of the given set, so rules of the same order are
+		// applied exactly as a sort of the whole set would apply them.
+		final Map<Item, List<PricingRule>> rulesByItem = new LinkedHashMap<Item, List<PricingRule>>();
+		final List<BundlePricingRule> bundleRules = new ArrayList<BundlePricingRule>();
+		for (PricingRule rule : pricingRules) {
+			PricingRuleOrders.register(rule.getClass());
+			if (rule instanceof BundlePricingRule) {
+				// Bundles are priced across items, each of their items gets an ordinal, but is only scanned with a rule of its own.
+				final BundlePricingRule bundle = (BundlePricingRule) rule;
+				bundleRules.add(bundle);
+				for (Item item : bundle.getItems()) {
+					rulesFor(rulesByItem, item);
+				}
+			} else {
+				rulesFor(rulesByItem, rule.getItem()).add(rule);
+			}
+		}
+
+		this.ordinals = new HashMap<Item, Integer>(rulesByItem.size() * 2);
+		this.items = new Item[rulesByItem.size()];
+		this.rules = new PricingRule[rulesByItem.size()][];
+		int ordinal = 0;
+		int maxId = -1;
+		for (Map.Entry<Item, List<PricingRule>> entry : rulesByItem.entrySet()) {
+			final List<PricingRule> itemRules = entry.getValue();
+			Collections.sort(itemRules, BY_ORDER);
+			final Item item = ItemRegistry.intern(entry.getKey());
+			ordinals.put(item, ordinal);
+			items[ordinal] = item;
+			rules[ordinal] = itemRules.toArray(new PricingRule[itemRules.size()]);
+			maxId = Math.max(maxId, item.getId());
+			ordinal++;
+		}
+		if (maxId < items.length * MAX_IDS_PER_ITEM + 64) {
+			this.ordinalsById = new int[maxId + 1];
+			Arrays.fill(ordinalsById, -1);
+			for (ordinal = 0; ordinal < items.length; ordinal++) {
+				if (items[ordinal].isInterned()) {
+					ordinalsById[items[ordinal].getId()] = ordinal;
+				}
+			}
+		} else {
+			this.ordinalsById = null;
+		}
+
+		// Bundles are applied in catalog order, so they are ordered by what they save off the regular
+		// prices of their items, the most first, and by their description if they save the same. Equal
+		// rule sets then price a basket alike, whatever order their rules were given in.
+		final Map<BundlePricingRule, Long> savings = new HashMap<BundlePricingRule, Long>(bundleRules.size() * 2);
+		for (BundlePricingRule bundle : bundleRules) {
+			savings.put(bundle, savingOf(bundle));
+		}
+		Collections.sort(bundleRules, new Comparator<BundlePricingRule>() {
+			public int compare(BundlePricingRule o1, BundlePricingRule o2) {
+				final int bySaving = Long.compare(savings.get(o2), savings.get(o1));
+				return bySaving != 0 ? bySaving : o1.toString().compareTo(o2.toString());
+			}
+		});
+
+		// Index every bundle by the item in the fewest bundles, so a popular item such as a drink
+		// does not pull in every meal deal: only bundles touching the basket's rarer items are evaluated.
+		this.bundles = bundleRules.toArray(new BundlePricingRule[bundleRules.size()]);
+		this.bundleOrdinals = new int[bundles.length][];
+		this.bundleQuantities = new long[bundles.length][];
+		this.inBundle = new boolean[items.length];
+		final int[] bundleCounts = new int[items.length];
+		for (int bundle = 0; bundle < bundles.length; bundle++) {
+			final List<Item> bundleItems = bundles[bundle].getItems();
+			bundleOrdinals[bundle] = new int[bundleItems.size()];
+			bundleQuantities[bundle] = new long[bundleItems.size()];
+			for (int i = 0; i < bundleItems.size(); i++) {
+				final int member = ordinals.get(bundleItems.get(i));
+				bundleOrdinals[bundle][i] = member;
+				bundleQuantities[bundle][i] = bundles[bundle].getQuantityOf(bundleItems.get(i));
+				bundleCounts[member]++;
+				inBundle[member] = true;
+			}
+		}
+		final int[] keys = new int[bundles.length];
+		final int[] keyCounts = new int[items.length];
+		for (int bundle = 0; bundle < bundles.length; bundle++) {
+			int key = bundleOrdinals[bundle][0];
+			for (int member : bundleOrdinals[bundle]) {
+				if (bundleCounts[member] < bundleCounts[key]) {
+					key = member;
+				}
+			}
+			keys[bundle] = key;
+			keyCounts[key]++;
+		}
+		this.bundlesOf = new int[items.length][];
+		for (int i = 0; i < items.length; i++) {
+			bundlesOf[i] = keyCounts[i] == 0 ? NO_BUNDLES : new int[keyCounts[i]];
+			keyCounts[i] = 0;
+		}
+		for (int bundle = 0; bundle < bundles.length; bundle++) {
+			bundlesOf[keys[bundle]][keyCounts[keys[bundle]]++] = bundle;
+		}
+	}
+
+	/**
+	 * @return the saving in pence of one bundle on the regular prices of its items, 0 if an item has no regular price.
+	 */
+	private long savingOf(final BundlePricingRule bundle) {
+		long regularPrice = 0;
+		for (Item item : bundle.getItems()) {
+			final long itemPrice = regularPriceOf(rules[ordinals.get(item)]);
+			if (itemPrice < 0) {
+				return 0;
+			}
+			regularPrice = Money.addPence(regularPrice, Money.multiplyPence(itemPrice, bundle.getQuantityOf(item)));
+		}
+		return regularPrice - bundle.getPrice().getPence();
+	}
+
+	private static List<PricingRule> rulesFor(final Map<Item, List<PricingRule>> rulesByItem, final Item item) {
+		List<PricingRule> itemRules = rulesByItem.get(item);
+		if (itemRules == null) {
+			itemRules = new ArrayList<PricingRule>();
+			rulesByItem.put(item, itemRules);
+		}
+		return itemRules;
+	}
+
+	/**
+	 * Gives you the ordinal of the given item in this catalog.
+	 * @param item the item, may be null.
+	 * @return the ordinal of the item, or -1 if the item is null or has not been priced.
+	 */
+	@Override
+	public int ordinalOf(final Item item) {
+		if (item == null) {
+			return -1;
+		}
+		final int id = item.getId();
+		if (id >= 0 && ordinalsById != null) {
+			// Every item of this catalog was interned when it was compiled.
+			return id < ordinalsById.length ? ordinalsById[id] : -1;
+		}
+		final Integer ordinal = ordinals.get(item);
+		return ordinal == null ? -1 : ordinal;
+	}
+
+	@Override
+	public Item itemAt(final int ordinal) {
+		return items[ordinal];
+	}
+
+	@Override
+	PricingRule[] rulesAt(final int ordinal) {
+		return rules[ordinal];
+	}
+
+	@Override
+	int bundleCount() {
+		return bundles.length;
+	}
+
+	@Override
+	PricingRule bundleAt(final int bundle) {
+		return bundles[bundle];
+	}
+
+	@Override
+	int[] bundleOrdinals(final int bundle) {
+		return bundleOrdinals[bundle];
+	}
+
+	@Override
+	long[] bundleQuantities(final int bundle) {
+		return bundleQuantities[bundle];
+	}
+
+	@Override
+	int[] bundlesKeyedBy(final int ordinal) {
+		return bundlesOf[ordinal];
+	}
+
+	@Override
+	boolean isInBundle(final int ordinal) {
+		return inBundle[ordinal];
+	}
+
+	@Override
+	public int size() {
+		return items.length;
+	}
+
+	/**
+	 * @return the length of the index by item id, 0 if items are looked up by hash.
+	 */
+	int idIndexLength() {
+		return ordinalsById == null ? 0 : ordinalsById.length;
+	}
+
+	@Override
+	public Set<PricingRule> getPricingRules() {
+		return pricingRules;
+	}
+
+}
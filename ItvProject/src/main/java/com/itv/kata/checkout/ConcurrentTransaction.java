@@ -0,0 +1,221 @@
+package com.itv.kata.checkout;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.metrics.CheckoutMetrics;
+import com.itv.kata.model.Item;
+
+/**
+ * The checkout transaction that many scanners can add to at the same time, for
+ * example handheld devices and a fixed till sharing one basket.
+ *
+ * Every item is counted by its own LongAdder, so scans of different items never
+ * contend and scans of the same item are striped across cores. No lock is taken
+ * by scanners, nor by {@link #snapshot()} unless scanning goes on so fast that a
+ * few snapshots in a row were inconsistent: the next one then holds the scanners
+ * back for as long as it takes to copy the basket.
+ *
+ */
+public final class ConcurrentTransaction {
+
+	// Quantities are capped far below overflow, so scans of the same item racing past the check can not wrap.
+	static final long MAX_QUANTITY = Long.MAX_VALUE >> 8;
+	// Snapshots taken without holding the scanners back, before one does.
+	static final int OPTIMISTIC_SNAPSHOTS = 16;
+
+	private final PriceCatalog catalog;
+	private final CheckoutMetrics metrics;
+	private final ConcurrentHashMap<Item, LongAdder> shoppingBasket = new ConcurrentHashMap<Item, LongAdder>();
+	// Number of scans completed, incremented only after the item's count.
+	private final LongAdder scanned = new LongAdder();
+	// Scanners take the read lock only while a snapshot waits for or holds the write lock.
+	private final StampedLock lock = new StampedLock();
+	private final AtomicInteger lockingSnapshots = new AtomicInteger();
+
+	ConcurrentTransaction(final PriceCatalog catalog) {
+		this(catalog, CheckoutMetrics.NOOP);
+	}
+
+	ConcurrentTransaction(final PriceCatalog catalog, final CheckoutMetrics metrics) {
+		this.catalog = catalog;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Add the item to the shopping basket, if already exist increase the quantity.
+	 * Safe to call from many threads at the same time.
+	 * @param item the item to purchase.
+	 * @return ConcurrentTransaction.
+	 */
+	public ConcurrentTransaction scan(final Item item) {
+		KataSupermarketCheckout.validatedOrdinal(catalog, item, metrics);
+		add(item, 1);
+		return this;
+	}
+
+	/**
+	 * Add the given quantity of the item to the shopping basket, same as scanning it quantity times.
+	 * Safe to call from many threads at the same time.
+	 * @param item the item to purchase.
+	 * @param quantity the quantity to purchase.
+	 * @return ConcurrentTransaction.
+	 */
+	public ConcurrentTransaction scan(final Item item, final long quantity) {
+		KataSupermarketCheckout.validateQuantity(quantity, metrics);
+		KataSupermarketCheckout.validatedOrdinal(catalog, item, metrics);
+		add(item, quantity);
+		return this;
+	}
+
+	/**
+	 * Add the item to the shopping basket like {@link #scan(Item)}, but tells you if
+	 * the item was rejected instead of throwing.
+	 * Safe to call from many threads at the same time.
+	 * @param item the item to purchase.
+	 * @return ScanResult.
+	 */
+	public ScanResult tryScan(final Item item) {
+		return tryScan(item, 1);
+	}
+
+	/**
+	 * Add the given quantity of the item to the shopping basket like {@link #scan(Item, long)},
+	 * but tells you if the item was rejected instead of throwing.
+	 * Safe to call from many threads at the same time.
+	 * @param item the item to purchase.
+	 * @param quantity the quantity to purchase.
+	 * @return ScanResult.
+	 */
+	public ScanResult tryScan(final Item item, final long quantity) {
+		if (item == null || quantity <= 0) {
+			metrics.validationFailed();
+			return ScanResult.REJECTED;
+		}
+		if (catalog.pricedOrdinalOf(item) < 0) {
+			metrics.validationFailed();
+			return ScanResult.UNKNOWN_SKU;
+		}
+		try {
+			add(item, quantity);
+		} catch (InvalidKataRequestException e) {
+			return ScanResult.REJECTED;
+		}
+		return ScanResult.ACCEPTED;
+	}
+
+	/**
+	 * Add all the items to the shopping basket, same as scanning them one by one. The items are
+	 * grouped first, and nothing is added if any of them has not been priced. Quantities are
+	 * never taken out again, as snapshots rely on them only growing, so if a line would take
+	 * the basket past {@link #MAX_QUANTITY} the lines before it stay added.
+	 * @param items the items to purchase.
+	 * @return ConcurrentTransaction.
+	 */
+	public ConcurrentTransaction scanAll(final Iterable<Item> items) {
+		final ItemQuantityMap grouped = KataSupermarketCheckout.group(catalog, items, metrics);
+		for (int slot = 0; slot < grouped.capacity(); slot++) {
+			final int ordinal = grouped.ordinalAt(slot);
+			if (ordinal >= 0) {
+				add(catalog.itemAt(ordinal), grouped.quantityAt(slot));
+			}
+		}
+		return this;
+	}
+
+	private void add(final Item item, final long addedQuantity) {
+		if (lockingSnapshots.get() == 0) {
+			addUnlocked(item, addedQuantity);
+		} else {
+			final long stamp = lock.readLock();
+			try {
+				addUnlocked(item, addedQuantity);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+	}
+
+	private void addUnlocked(final Item item, final long addedQuantity) {
+		LongAdder quantity = shoppingBasket.get(item);
+		if (quantity == null) {
+			quantity = shoppingBasket.computeIfAbsent(item, newItem -> new LongAdder());
+		}
+		if (addedQuantity > MAX_QUANTITY - quantity.sum() || addedQuantity > MAX_QUANTITY - scanned.sum()) {
+			metrics.validationFailed();
+			throw new InvalidKataRequestException("Sorry! " + addedQuantity + " more of " + item + " is more than a basket can hold.");
+		}
+		quantity.add(addedQuantity);
+		scanned.add(addedQuantity);
+		metrics.scanned(addedQuantity);
+	}
+
+	/**
+	 * Gives you a consistent copy of the basket: the quantities of all the scans
+	 * completed at one point in time, and none of a scan still in progress.
+	 *
+	 * Quantities only grow and every scan counts its item before it counts itself
+	 * as completed, so a copy whose quantities add up to the completed scans read
+	 * before it contains exactly those scans. Otherwise a scan was in flight, and
+	 * the copy is taken again. After {@link #OPTIMISTIC_SNAPSHOTS} inconsistent
+	 * copies new scans wait until the copy is consistent, which only takes the
+	 * scans already in flight to complete.
+	 *
+	 * @return the quantities of the items in the basket.
+	 */
+	ItemQuantityMap snapshot() {
+		for (int attempt = 0; attempt < OPTIMISTIC_SNAPSHOTS; attempt++) {
+			final ItemQuantityMap basket = tryCopy();
+			if (basket != null) {
+				return basket;
+			}
+			Thread.yield();
+		}
+		lockingSnapshots.incrementAndGet();
+		try {
+			final long stamp = lock.writeLock();
+			try {
+				while (true) {
+					final ItemQuantityMap basket = tryCopy();
+					if (basket != null) {
+						return basket;
+					}
+					Thread.yield();
+				}
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		} finally {
+			lockingSnapshots.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return a consistent copy of the basket, null if a scan was in flight.
+	 */
+	private ItemQuantityMap tryCopy() {
+		final long completed = scanned.sum();
+		final ItemQuantityMap basket = new ItemQuantityMap(shoppingBasket.size());
+		long seen = 0;
+		for (Map.Entry<Item, LongAdder> entry : shoppingBasket.entrySet()) {
+			final long quantity = entry.getValue().sum();
+			if (quantity > 0) {
+				basket.add(catalog.ordinalOf(entry.getKey()), quantity);
+				seen += quantity;
+			}
+		}
+		return seen == completed ? basket : null;
+	}
+
+	/**
+	 * @return the compiled catalog shared by this transaction.
+	 */
+	public PriceCatalog getCatalog() {
+		return catalog;
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.itv.kata.checkout;
+
+import java.util.Arrays;
+
+/**
+ * ItemQuantityMap holds the quantity of each item in a basket, keyed by the
+ * ordinal of the item in its PriceCatalog.
+ *
+ * It is an open-addressing map over primitive arrays, so adding to a quantity
+ * neither boxes a Long nor allocates a map entry. The arrays only grow when the
+ * number of distinct items in the basket does.
+ *
+ */
+public final class ItemQuantityMap {
+
+	private static final int EMPTY = -1;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] ordinals;
+	private long[] quantities;
+	private int size;
+
+	public ItemQuantityMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param expectedItems the expected number of distinct items.
+	 */
+	public ItemQuantityMap(final int expectedItems) {
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity < expectedItems * 2) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	/**
+	 * @param other the map to copy.
+	 */
+	public ItemQuantityMap(final ItemQuantityMap other) {
+		this.ordinals = other.ordinals.clone();
+		this.quantities = other.quantities.clone();
+		this.size = other.size;
+	}
+
+	/**
+	 * Adds the given quantity to the item.
+	 * @param ordinal the ordinal of the item.
+	 * @param quantity the quantity to add.
+	 * @return the new quantity of the item.
+	 */
+	public long add(final int ordinal, final long quantity) {
+		int slot = slotOf(ordinal);
+		if (ordinals[slot] == EMPTY) {
+			if ((size + 1) * 2 > ordinals.length) {
+				grow();
+				slot = slotOf(ordinal);
+			}
+			ordinals[slot] = ordinal;
+			size++;
+		}
+		quantities[slot] += quantity;
+		return quantities[slot];
+	}
+
+	/**
+	 * @param ordinal the ordinal of the item.
+	 * @return the quantity of the item, 0 if it is not in the basket.
+	 */
+	public long get(final int ordinal) {
+		final int slot = slotOf(ordinal);
+		return ordinals[slot] == EMPTY ? 0 : quantities[slot];
+	}
+
+	/**
+	 * @return the number of distinct items.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all the items while keeping the allocated arrays.
+	 */
+	public void clear() {
+		Arrays.fill(ordinals, EMPTY);
+		Arrays.fill(quantities, 0);
+		size = 0;
+	}
+
+	/**
+	 * Gives you the number of slots, to iterate over the map with
+	 * {@link #ordinalAt(int)} and {@link #quantityAt(int)}.
+	 * @return the number of slots.
+	 */
+	public int capacity() {
+		return ordinals.length;
+	}
+
+	/**
+	 * @param slot the slot.
+	 * @return the ordinal of the item in the slot, or -1 if the slot is empty.
+	 */
+	public int ordinalAt(final int slot) {
+		return ordinals[slot];
+	}
+
+	/**
+	 * @param slot the slot.
+	 * @return the quantity of the item in the slot.
+	 */
+	public long quantityAt(final int slot) {
+		return quantities[slot];
+	}
+
+	private int slotOf(final int ordinal) {
+		final int mask = ordinals.length - 1;
+		final int hash = ordinal * 0x9E3779B9;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (ordinals[slot] != EMPTY && ordinals[slot] != ordinal) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		final int[] oldOrdinals = ordinals;
+		final long[] oldQuantities = quantities;
+		allocate(oldOrdinals.length << 1);
+		for (int i = 0; i < oldOrdinals.length; i++) {
+			if (oldOrdinals[i] != EMPTY) {
+				final int slot = slotOf(oldOrdinals[i]);
+				ordinals[slot] = oldOrdinals[i];
+				quantities[slot] = oldQuantities[i];
+			}
+		}
+	}
+
+	private void allocate(final int capacity) {
+		ordinals = new int[capacity];
+		quantities = new long[capacity];
+		Arrays.fill(ordinals, EMPTY);
+	}
+
+}
@@ -1,19 +1,20 @@
 package com.itv.kata.checkout;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.metrics.CheckoutMetrics;
 import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.GreedyPricingStrategy;
 import com.itv.kata.pricing.PricingRule;
-import com.itv.kata.pricing.PricingRule.Unit;
-import com.itv.kata.pricing.PricingRuleOrder;
+import com.itv.kata.pricing.PricingRule.MutableUnit;
+import com.itv.kata.pricing.PricingStrategy;
 
 /**
  * 
@@ -28,11 +29,25 @@ public class KataSupermarketCheckout {
 	 */
     public class Transaction {
 
-        private final Set<PricingRule> pricingRules;
-        private final Map<Item, Long> shoppingBasket = new HashMap<Item, Long>();
+        private final PriceCatalog catalog;
+        private final ItemQuantityMap shoppingBasket = new ItemQuantityMap();
+        // Running total of the basket in pence, kept up to date by every scan.
+        private long subtotal;
+        // The basket's items that are in a bundle, with the bundles keyed by them in catalog
+        // order, so a scan of a bundle item only re-prices these.
+        private int[] bundledOrdinals = PriceCatalog.NO_BUNDLES;
+        private int bundledCount;
+        private int[] bundles = PriceCatalog.NO_BUNDLES;
+        private int bundleCount;
+        // Price of the bundled items in pence, part of the subtotal.
+        private long bundledSubtotal;
+        // What the bundles leave of the bundled items, reused by every scan.
+        private final ItemQuantityMap remaining = new ItemQuantityMap();
+        // Reused by every rule applied to this basket.
+        private final MutableUnit unit = new MutableUnit();
 
-        Transaction(Set<PricingRule> pricingRules) {
-            this.pricingRules = pricingRules;
+        Transaction(PriceCatalog catalog) {
+            this.catalog = catalog;
         }
 
         /**
@@ -41,88 +56,495 @@ public class KataSupermarketCheckout {
          * @return Transaction.
          */
         public Transaction scan(Item item) {
-        	if(ValidationUtil.validateItem(item, this.pricingRules)) {
-	            Long quantity = shoppingBasket.get(item);
-	            if(quantity != null) {
-	                quantity++;
-	            } else {
-	                quantity = 1L;
-	            }
-	
-	            shoppingBasket.put(item, quantity);
+        	add(validatedOrdinal(this.catalog, item, metrics), 1);
+            return this;
+        }
+
+        /**
+         * Add the given quantity of the item to the shopping basket, same as scanning it quantity times.
+         * @param item the item to purchase.
+         * @param quantity the quantity to purchase.
+         * @return Transaction.
+         */
+        public Transaction scan(Item item, long quantity) {
+        	validateQuantity(quantity, metrics);
+        	add(validatedOrdinal(this.catalog, item, metrics), quantity);
+            return this;
+        }
+
+        /**
+         * Add the item to the shopping basket like {@link #scan(Item)}, but tells you if
+         * the item was rejected instead of throwing, so misread barcodes cost about the
+         * same as accepted scans.
+         * @param item the item to purchase.
+         * @return ScanResult.
+         */
+        public ScanResult tryScan(Item item) {
+        	return tryScan(item, 1);
+        }
+
+        /**
+         * Add the given quantity of the item to the shopping basket like {@link #scan(Item, long)},
+         * but tells you if the item was rejected instead of throwing.
+         * @param item the item to purchase.
+         * @param quantity the quantity to purchase.
+         * @return ScanResult.
+         */
+        public ScanResult tryScan(Item item, long quantity) {
+        	if (item == null || quantity <= 0) {
+        		metrics.validationFailed();
+        		return ScanResult.REJECTED;
+        	}
+        	final int ordinal = catalog.pricedOrdinalOf(item);
+        	if (ordinal < 0) {
+        		metrics.validationFailed();
+        		return ScanResult.UNKNOWN_SKU;
+        	}
+        	try {
+        		add(ordinal, quantity);
+        	} catch (InvalidKataRequestException e) {
+        		metrics.validationFailed();
+        		return ScanResult.REJECTED;
         	}
+        	return ScanResult.ACCEPTED;
+        }
+
+        /**
+         * Add all the items to the shopping basket, same as scanning them one by one. The items are
+         * grouped first, and nothing is added if any of them has not been priced or if they would
+         * make the total too large.
+         * @param items the items to purchase.
+         * @return Transaction.
+         */
+        public Transaction scanAll(Iterable<Item> items) {
+        	final ItemQuantityMap grouped = group(catalog, items, metrics);
+        	final long previousSubtotal = subtotal;
+        	final long previousBundledSubtotal = bundledSubtotal;
+        	long added = 0;
+        	int slot = 0;
+        	try {
+        		for (; slot < grouped.capacity(); slot++) {
+        			final int ordinal = grouped.ordinalAt(slot);
+        			if (ordinal >= 0) {
+        				addToBasket(ordinal, grouped.quantityAt(slot));
+        				added += grouped.quantityAt(slot);
+        			}
+        		}
+        	} catch (InvalidKataRequestException e) {
+        		// The failed line is not added, the lines before it are taken out again.
+        		for (int addedSlot = 0; addedSlot < slot; addedSlot++) {
+        			final int ordinal = grouped.ordinalAt(addedSlot);
+        			if (ordinal >= 0) {
+        				shoppingBasket.add(ordinal, -grouped.quantityAt(addedSlot));
+        			}
+        		}
+        		subtotal = previousSubtotal;
+        		bundledSubtotal = previousBundledSubtotal;
+        		throw e;
+        	}
+        	metrics.scanned(added);
             return this;
         }
+
+        /**
+         * Add all the items to the shopping basket, same as scanning them one by one.
+         * @param items the items to purchase.
+         * @return Transaction.
+         */
+        public Transaction scanAll(Stream<Item> items) {
+            return scanAll((Iterable<Item>) items::iterator);
+        }
+
+        private void add(final int ordinal, final long addedQuantity) {
+        	addToBasket(ordinal, addedQuantity);
+        	metrics.scanned(addedQuantity);
+        }
+
+        private void addToBasket(final int ordinal, final long addedQuantity) {
+        	final long quantity = shoppingBasket.add(ordinal, addedQuantity);
+        	try {
+        		if (catalog.isInBundle(ordinal)) {
+        			// A bundle item can change the price of the other bundled items, but not of the rest.
+        			addBundled(ordinal);
+        			final long bundled = catalog.priceOfBundled(shoppingBasket, bundledOrdinals, bundledCount, bundles, bundleCount, remaining, pricingStrategy, unit);
+        			subtotal = Money.addPence(subtotal - bundledSubtotal, bundled);
+        			bundledSubtotal = bundled;
+        		} else {
+        			// Only the contribution of the scanned item changes.
+        			subtotal = Money.addPence(subtotal, catalog.priceOf(ordinal, quantity, pricingStrategy, unit) - catalog.priceOf(ordinal, quantity - addedQuantity, pricingStrategy, unit));
+        		}
+        	} catch (InvalidKataRequestException e) {
+        		// The total would be too large, the scan is not added.
+        		shoppingBasket.add(ordinal, -addedQuantity);
+        		throw e;
+        	}
+        }
+
+        // Tracks a bundle item and the bundles it keys the first time it is scanned.
+        private void addBundled(final int ordinal) {
+        	for (int i = 0; i < bundledCount; i++) {
+        		if (bundledOrdinals[i] == ordinal) {
+        			return;
+        		}
+        	}
+        	if (bundledCount == bundledOrdinals.length) {
+        		bundledOrdinals = Arrays.copyOf(bundledOrdinals, Math.max(8, bundledCount * 2));
+        	}
+        	bundledOrdinals[bundledCount++] = ordinal;
+        	for (int bundle : catalog.bundlesKeyedBy(ordinal)) {
+        		if (bundleCount == bundles.length) {
+        			bundles = Arrays.copyOf(bundles, Math.max(8, bundleCount * 2));
+        		}
+        		int i = bundleCount++;
+        		for (; i > 0 && bundles[i - 1] > bundle; i--) {
+        			bundles[i] = bundles[i - 1];
+        		}
+        		bundles[i] = bundle;
+        	}
+        }
+
+        /**
+         * Gives you the running total of the basket, without recalculating it.
+         * @return the total amount.
+         */
+        public Money currentTotal() {
+            return Money.ofPence(subtotal);
+        }
+
+        /**
+         * @return the compiled catalog shared by this transaction.
+         */
+        public PriceCatalog getCatalog() {
+            return catalog;
+        }
+
+        /**
+         * @return a copy of the items in the basket with their quantities.
+         */
+        public Map<Item, Long> getItems() {
+        	final Map<Item, Long> items = new LinkedHashMap<Item, Long>(shoppingBasket.size() * 2);
+        	for (int slot = 0; slot < shoppingBasket.capacity(); slot++) {
+        		final int ordinal = shoppingBasket.ordinalAt(slot);
+        		if (ordinal >= 0 && shoppingBasket.quantityAt(slot) > 0) {
+        			items.put(catalog.itemAt(ordinal), shoppingBasket.quantityAt(slot));
+        		}
+        	}
+        	return items;
+        }
+
+        /**
+         * @return the quantities of the items in the basket, keyed by their ordinal in the catalog.
+         */
+        ItemQuantityMap getShoppingBasket() {
+            return shoppingBasket;
+        }
     }
 
+    // The catalog compiled for a rule set, with the set it was last given as.
+    private static final class CompiledRules {
+    	private final Set<PricingRule> pricingRules;
+    	private final int size;
+    	private final PriceCatalog catalog;
+
+    	private CompiledRules(final Set<PricingRule> pricingRules, final PriceCatalog catalog) {
+    		this.pricingRules = pricingRules;
+    		this.size = pricingRules.size();
+    		this.catalog = catalog;
+    	}
+    }
+
+    // Number of rule sets whose catalogs are kept, so a few alternating sets are not compiled again and again.
+    private static final int COMPILED_RULE_SETS = 4;
+
+    // The catalogs of the last given rule sets, the latest first, replaced as a whole.
+    private volatile CompiledRules[] compiled = new CompiledRules[0];
+    private final PricingStrategy pricingStrategy;
+    // Null unless repeated baskets are totalled from a cache.
+    private final PriceResultCache priceCache;
+    private final CheckoutMetrics metrics;
+    // False for the NOOP metrics, so totals do not even read the clock.
+    private final boolean instrumented;
+
     /**
-     * Gives you transaction for certain price rules.
-     * @param pricingRules Set of price rules.
+     * Checkout applying the pricing rules of every item in their PricingRuleOrder.
+     */
+    public KataSupermarketCheckout() {
+    	this(new GreedyPricingStrategy());
+    }
+
+    /**
+     * @param pricingStrategy how the pricing rules of an item are combined.
+     */
+    public KataSupermarketCheckout(final PricingStrategy pricingStrategy) {
+    	this(pricingStrategy, null);
+    }
+
+    /**
+     * @param pricingStrategy how the pricing rules of an item are combined.
+     * @param priceCache the totals of recent baskets, only shared with checkouts of the same pricing strategy, or null.
+     */
+    public KataSupermarketCheckout(final PricingStrategy pricingStrategy, final PriceResultCache priceCache) {
+    	this(pricingStrategy, priceCache, CheckoutMetrics.NOOP);
+    }
+
+    /**
+     * @param pricingStrategy how the pricing rules of an item are combined.
+     * @param priceCache the totals of recent baskets, only shared with checkouts of the same pricing strategy, or null.
+     * @param metrics told about the scans, totals and validation failures of this checkout.
+     */
+    public KataSupermarketCheckout(final PricingStrategy pricingStrategy, final PriceResultCache priceCache, final CheckoutMetrics metrics) {
+    	this.pricingStrategy = pricingStrategy;
+    	this.priceCache = priceCache;
+    	if (priceCache != null) {
+    		priceCache.bindTo(pricingStrategy);
+    	}
+    	this.metrics = metrics;
+    	this.instrumented = metrics != CheckoutMetrics.NOOP;
+    }
+
+    /**
+     * Gives you transaction for certain price rules. The catalog of the same set
+     * given again is found by identity, an equal new set is compared rule by rule
+     * once, so tills should rather start their transactions from a
+     * {@link #getTransaction(PriceCatalog) catalog} or a {@link #getTransaction(PricingRuleStore) store}.
+     * @param pricingRules Set of price rules, not to be changed once given, give a new set for new prices.
      * @return the new Transaction object.
      */
     public Transaction getTransaction(final Set<PricingRule> pricingRules) {
 		if (ValidationUtil.validatePricingRules(pricingRules)) {
-			return new Transaction(pricingRules);
+			return new Transaction(catalogFor(pricingRules));
 		} else {
 			return null;
 		}
     }
 
+    /**
+     * Gives you transaction pinned to the current prices of the store. Later price changes
+     * of the store only apply to later transactions.
+     * @param store the store's pricing rules.
+     * @return the new Transaction object.
+     */
+    public Transaction getTransaction(final PricingRuleStore store) {
+		return getTransaction(store.getCatalog());
+    }
+
+    /**
+     * Gives you transaction pinned to the current prices of one store, the national
+     * prices with the store's overrides.
+     * @param stores the prices of every store.
+     * @param store the id of the store.
+     * @return the new Transaction object.
+     */
+    public Transaction getTransaction(final StorePriceCatalogs stores, final String store) {
+		return getTransaction(stores.getCatalog(store));
+    }
+
+    /**
+     * Gives you transaction priced as at the given moment, with the promotions valid
+     * then. A moment in the past re-prices a historical transaction.
+     * @param timeline the prices of every moment.
+     * @param time the moment of the transaction, in epoch milliseconds.
+     * @return the new Transaction object.
+     */
+    public Transaction getTransaction(final PromotionTimeline timeline, final long time) {
+		return getTransaction(timeline.catalogAt(time));
+    }
+
+    /**
+     * Gives you transaction for an already compiled or mapped catalog.
+     * @param catalog the catalog, see {@link MappedPriceCatalog#open(java.nio.file.Path)}.
+     * @return the new Transaction object.
+     */
+    public Transaction getTransaction(final PriceCatalog catalog) {
+		return new Transaction(catalog);
+    }
+
+    /**
+     * Gives you a transaction for certain price rules that many scanners can add to at the same time.
+     * @param pricingRules Set of price rules.
+     * @return the new ConcurrentTransaction object.
+     */
+    public ConcurrentTransaction getConcurrentTransaction(final Set<PricingRule> pricingRules) {
+		if (ValidationUtil.validatePricingRules(pricingRules)) {
+			return new ConcurrentTransaction(catalogFor(pricingRules), metrics);
+		} else {
+			return null;
+		}
+    }
+
+    /**
+     * Gives you a transaction pinned to the current prices of the store that many scanners can add to at the same time.
+     * @param store the store's pricing rules.
+     * @return the new ConcurrentTransaction object.
+     */
+    public ConcurrentTransaction getConcurrentTransaction(final PricingRuleStore store) {
+		return new ConcurrentTransaction(store.getCatalog(), metrics);
+    }
+
+    /**
+     * Gives you the compiled catalog for the given rules. The same set of one of the
+     * last rule sets is found by identity, and an equal set is only compared with
+     * the ones of the same size. The rules are only compiled if none of them is equal.
+     * @param pricingRules Set of price rules.
+     * @return the compiled catalog.
+     */
+    private PriceCatalog catalogFor(final Set<PricingRule> pricingRules) {
+    	final CompiledRules[] current = this.compiled;
+    	final int size = pricingRules.size();
+    	for (CompiledRules entry : current) {
+    		if (entry.pricingRules == pricingRules && entry.size == size) {
+    			return entry.catalog;
+    		}
+    	}
+    	PriceCatalog catalog = null;
+    	for (CompiledRules entry : current) {
+    		if (entry.size == size && entry.catalog.isCompiledFrom(pricingRules)) {
+    			catalog = entry.catalog;
+    			break;
+    		}
+    	}
+    	if (catalog == null) {
+    		catalog = PriceCatalog.compile(pricingRules);
+    	}
+    	// Two threads may both remember a set, either one is correct.
+    	final CompiledRules[] latest = new CompiledRules[Math.min(COMPILED_RULE_SETS, current.length + 1)];
+    	latest[0] = new CompiledRules(pricingRules, catalog);
+    	int kept = 1;
+    	for (int i = 0; i < current.length && kept < latest.length; i++) {
+    		if (current[i].catalog != catalog) {
+    			latest[kept++] = current[i];
+    		}
+    	}
+    	this.compiled = kept == latest.length ? latest : Arrays.copyOf(latest, kept);
+    	return catalog;
+    }
+
 	/**
 	 * Calculates the total price of the basket for a given transaction and with given pricing rules.
 	 * @param transaction the transaction.
 	 * @return the total amount in GBP.
 	 */
 	public BigDecimal calculateTotalPrice(final Transaction transaction) {
-		long totalPrice = 0;
-		if(null != transaction.shoppingBasket && !transaction.shoppingBasket.isEmpty()) {
-		
-			
-			final List<PricingRule> orderedPricingRules = orderPricingRules(transaction.pricingRules);
-	        final Map<Item, Long> shoppingBasket = new HashMap<Item, Long>(transaction.shoppingBasket);
-	        
-	
-			for (PricingRule rule : orderedPricingRules) {
-				if (shoppingBasket.containsKey(rule.getItem())) {
-	
-					long quantityInBasket = shoppingBasket.get(rule.getItem());
-					Unit unit = rule.getUnit(quantityInBasket);
-					totalPrice += unit.getPrice();
-					long remainingQty = 0;
-					if(quantityInBasket == 1) {
-						remainingQty = quantityInBasket;
-					} else {
-						remainingQty = quantityInBasket - unit.getQuantity();
-					}
-					// Update the basket with remaining quantity.
-					shoppingBasket.put(rule.getItem(), remainingQty);
-				}
+		return calculateTotal(transaction).toGBP();
+    }
+
+	/**
+	 * Calculates the total of the basket for a given transaction and with given pricing rules.
+	 * @param transaction the transaction.
+	 * @return the total amount.
+	 */
+	public Money calculateTotal(final Transaction transaction) {
+		return Money.ofPence(priceOf(transaction.catalog, transaction.shoppingBasket, transaction.unit, null));
+	}
+
+	/**
+	 * Calculates the total of the basket for a given transaction, itemising it on the
+	 * given receipt in the same pass. The total is never taken from the price cache.
+	 * @param transaction the transaction.
+	 * @param receipt emptied and given the lines of the basket, reused from basket to basket.
+	 * @return the total amount.
+	 */
+	public Money calculateTotal(final Transaction transaction, final Receipt receipt) {
+		return Money.ofPence(priceOf(transaction.catalog, transaction.shoppingBasket, transaction.unit, receipt));
+	}
+
+	/**
+	 * Calculates the total price of a consistent snapshot of the basket of a concurrent transaction.
+	 * Scanners of the transaction are not blocked while the total is calculated.
+	 * @param transaction the concurrent transaction.
+	 * @return the total amount in GBP.
+	 */
+	public BigDecimal calculateTotalPrice(final ConcurrentTransaction transaction) {
+		return calculateTotal(transaction).toGBP();
+	}
+
+	/**
+	 * Calculates the total of a consistent snapshot of the basket of a concurrent transaction.
+	 * @param transaction the concurrent transaction.
+	 * @return the total amount.
+	 */
+	public Money calculateTotal(final ConcurrentTransaction transaction) {
+		return Money.ofPence(priceOf(transaction.getCatalog(), transaction.snapshot(), new MutableUnit(), null));
+	}
+
+	/**
+	 * Calculates the total of a consistent snapshot of the basket of a concurrent transaction,
+	 * itemising it on the given receipt in the same pass.
+	 * @param transaction the concurrent transaction.
+	 * @param receipt emptied and given the lines of the basket, reused from basket to basket.
+	 * @return the total amount.
+	 */
+	public Money calculateTotal(final ConcurrentTransaction transaction, final Receipt receipt) {
+		return Money.ofPence(priceOf(transaction.getCatalog(), transaction.snapshot(), new MutableUnit(), receipt));
+	}
+
+	private long priceOf(final PriceCatalog catalog, final ItemQuantityMap basket, final MutableUnit unit, final Receipt receipt) {
+		if (!instrumented) {
+			if (receipt != null) {
+				return catalog.priceOf(basket, pricingStrategy, unit, null, receipt);
 			}
+			return priceCache == null ? catalog.priceOf(basket, pricingStrategy, unit) : priceCache.priceOf(catalog, basket, pricingStrategy, unit, null);
 		}
-		
-		// totalPrice in GBP.
-		BigDecimal totPrice = new BigDecimal(totalPrice).setScale(2, RoundingMode.CEILING);
-		totPrice = totPrice.divide(new BigDecimal(100)).setScale(2, RoundingMode.CEILING);
-		return totPrice;
-    }
+		final long start = System.nanoTime();
+		final long price;
+		if (receipt != null) {
+			price = catalog.priceOf(basket, pricingStrategy, unit, metrics, receipt);
+		} else {
+			price = priceCache == null ? catalog.priceOf(basket, pricingStrategy, unit, metrics) : priceCache.priceOf(catalog, basket, pricingStrategy, unit, metrics);
+		}
+		metrics.totalled(System.nanoTime() - start);
+		return price;
+	}
 
+	/**
+	 * Validates the item against the catalog, telling the metrics if it is rejected.
+	 * @return the ordinal of the item.
+	 */
+	static int validatedOrdinal(final PriceCatalog catalog, final Item item, final CheckoutMetrics metrics) {
+		try {
+			return ValidationUtil.validateItemOrdinal(item, catalog);
+		} catch (InvalidKataRequestException e) {
+			metrics.validationFailed();
+			throw e;
+		}
+	}
 
-	
-    /**
-     * Gives you ordered pricing rules based on the defined PricingRuleOrder.
-     * 
-     * @param pricingRules the collection of pricing rules.
-     * @return the ordered pricing rules based on the defined PricingRuleOrder.
-     */
-    private List<PricingRule> orderPricingRules(Set<PricingRule> pricingRules) {
-    	List<PricingRule> pricingRulesList = pricingRules.stream().collect(Collectors.toList());
-    	Collections.sort(pricingRulesList, new Comparator<PricingRule>() {
-			public int compare(PricingRule o1, PricingRule o2) {
-				return ((o2.getClass().getAnnotation(PricingRuleOrder.class).value()) - (o1.getClass().getAnnotation(PricingRuleOrder.class).value()));
+	/**
+	 * Validates the quantity, telling the metrics if it is rejected.
+	 */
+	static void validateQuantity(final long quantity, final CheckoutMetrics metrics) {
+		try {
+			ValidationUtil.validateQuantity(quantity);
+		} catch (InvalidKataRequestException e) {
+			metrics.validationFailed();
+			throw e;
+		}
+	}
+
+	/**
+	 * Groups the given items by their ordinal in the catalog. The items are counted
+	 * first, so every distinct item is validated once however often it was scanned.
+	 * @param catalog the compiled pricing rules.
+	 * @param items the items.
+	 * @param metrics told about the items that are rejected.
+	 * @return the quantity of every item.
+	 */
+	static ItemQuantityMap group(final PriceCatalog catalog, final Iterable<Item> items, final CheckoutMetrics metrics) {
+		final Map<Item, long[]> counted = new LinkedHashMap<Item, long[]>();
+		for (Item item : items) {
+			final long[] quantity = counted.get(item);
+			if (quantity == null) {
+				counted.put(item, new long[] { 1 });
+			} else {
+				quantity[0]++;
 			}
-		});
-		return pricingRulesList;
-    }
-    
+		}
+		final ItemQuantityMap grouped = new ItemQuantityMap(counted.size());
+		for (Map.Entry<Item, long[]> entry : counted.entrySet()) {
+			grouped.add(validatedOrdinal(catalog, entry.getKey(), metrics), entry.getValue()[0]);
+		}
+		return grouped;
+	}
+
 }
 
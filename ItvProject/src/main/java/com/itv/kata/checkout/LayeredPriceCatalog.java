@@ -0,0 +1,265 @@
+package com.itv.kata.checkout;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.itv.kata.model.Item;
+import com.itv.kata.pricing.BundlePricingRule;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.pricing.PricingRule.MutableUnit;
+import com.itv.kata.pricing.PricingStrategy;
+
+/**
+ * PriceCatalog of one store: the shared national catalog with the store's own
+ * rules laid over it, resolved when an item is looked up.
+ *
+ * An item with rules of its own in the overlay is priced by those rules only,
+ * every other item by the national ones. Bundles of both layers apply, the
+ * national ones first. Items of the national catalog keep their ordinals, items
+ * only the store sells come after them, so the layer holds nothing but the
+ * overlay and a few sorted arrays about the items it touches.
+ *
+ */
+final class LayeredPriceCatalog extends PriceCatalog {
+
+	private final PriceCatalog base;
+	private final PriceCatalog overlay;
+	private final int baseSize;
+	private final int baseBundles;
+
+	// Ordinals of the overlay's items that the base has as well, sorted, with their overlay ordinals.
+	private final int[] sharedOrdinals;
+	private final int[] sharedOverlayOrdinals;
+	// Overlay ordinals of the items only the overlay has, by their ordinal after the base's.
+	private final int[] addedOverlayOrdinals;
+	// Layer ordinal of every overlay ordinal.
+	private final int[] ordinalsOfOverlay;
+	// Ordinals and quantities of the overlay's bundles, in layer ordinals.
+	private final int[][] overlayBundleOrdinals;
+	// Ordinals keying overlay bundles, sorted, with the bundles of both layers they key.
+	private final int[] keyOrdinals;
+	private final int[][] keyedBundles;
+
+	private volatile Set<PricingRule> pricingRules;
+
+	LayeredPriceCatalog(final PriceCatalog base, final PriceCatalog overlay) {
+		super(base.getVersion());
+		this.base = base;
+		this.overlay = overlay;
+		this.baseSize = base.size();
+		this.baseBundles = base.bundleCount();
+
+		this.ordinalsOfOverlay = new int[overlay.size()];
+		int shared = 0;
+		for (int ordinal = 0; ordinal < overlay.size(); ordinal++) {
+			ordinalsOfOverlay[ordinal] = base.ordinalOf(overlay.itemAt(ordinal));
+			if (ordinalsOfOverlay[ordinal] >= 0) {
+				shared++;
+			}
+		}
+		this.addedOverlayOrdinals = new int[overlay.size() - shared];
+		final long[] sharedPairs = new long[shared];
+		int added = 0;
+		shared = 0;
+		for (int ordinal = 0; ordinal < overlay.size(); ordinal++) {
+			if (ordinalsOfOverlay[ordinal] >= 0) {
+				sharedPairs[shared++] = (long) ordinalsOfOverlay[ordinal] << 32 | ordinal;
+			} else {
+				addedOverlayOrdinals[added] = ordinal;
+				ordinalsOfOverlay[ordinal] = baseSize + added++;
+			}
+		}
+		Arrays.sort(sharedPairs);
+		this.sharedOrdinals = new int[shared];
+		this.sharedOverlayOrdinals = new int[shared];
+		for (int i = 0; i < shared; i++) {
+			sharedOrdinals[i] = (int) (sharedPairs[i] >>> 32);
+			sharedOverlayOrdinals[i] = (int) sharedPairs[i];
+		}
+
+		this.overlayBundleOrdinals = new int[overlay.bundleCount()][];
+		for (int bundle = 0; bundle < overlayBundleOrdinals.length; bundle++) {
+			final int[] members = overlay.bundleOrdinals(bundle);
+			overlayBundleOrdinals[bundle] = new int[members.length];
+			for (int member = 0; member < members.length; member++) {
+				overlayBundleOrdinals[bundle][member] = ordinalsOfOverlay[members[member]];
+			}
+		}
+		int keys = 0;
+		for (int ordinal = 0; ordinal < overlay.size(); ordinal++) {
+			if (overlay.bundlesKeyedBy(ordinal).length > 0) {
+				keys++;
+			}
+		}
+		final long[] keyPairs = new long[keys];
+		keys = 0;
+		for (int ordinal = 0; ordinal < overlay.size(); ordinal++) {
+			if (overlay.bundlesKeyedBy(ordinal).length > 0) {
+				keyPairs[keys++] = (long) ordinalsOfOverlay[ordinal] << 32 | ordinal;
+			}
+		}
+		Arrays.sort(keyPairs);
+		this.keyOrdinals = new int[keys];
+		this.keyedBundles = new int[keys][];
+		for (int i = 0; i < keys; i++) {
+			final int ordinal = (int) (keyPairs[i] >>> 32);
+			final int[] baseKeyed = ordinal < baseSize ? base.bundlesKeyedBy(ordinal) : NO_BUNDLES;
+			final int[] overlayKeyed = overlay.bundlesKeyedBy((int) keyPairs[i]);
+			final int[] both = Arrays.copyOf(baseKeyed, baseKeyed.length + overlayKeyed.length);
+			for (int bundle = 0; bundle < overlayKeyed.length; bundle++) {
+				both[baseKeyed.length + bundle] = baseBundles + overlayKeyed[bundle];
+			}
+			keyOrdinals[i] = ordinal;
+			keyedBundles[i] = both;
+		}
+	}
+
+	/**
+	 * @return the overlay ordinal of a base item, -1 if the overlay does not have it.
+	 */
+	private int sharedOverlayOrdinal(final int ordinal) {
+		final int i = Arrays.binarySearch(sharedOrdinals, ordinal);
+		return i < 0 ? -1 : sharedOverlayOrdinals[i];
+	}
+
+	private int overlayOrdinal(final int ordinal) {
+		return ordinal < baseSize ? sharedOverlayOrdinal(ordinal) : addedOverlayOrdinals[ordinal - baseSize];
+	}
+
+	@Override
+	public int ordinalOf(final Item item) {
+		final int ordinal = base.ordinalOf(item);
+		if (ordinal >= 0) {
+			return ordinal;
+		}
+		final int overlayOrdinal = overlay.ordinalOf(item);
+		return overlayOrdinal < 0 ? -1 : ordinalsOfOverlay[overlayOrdinal];
+	}
+
+	@Override
+	public Item itemAt(final int ordinal) {
+		return ordinal < baseSize ? base.itemAt(ordinal) : overlay.itemAt(addedOverlayOrdinals[ordinal - baseSize]);
+	}
+
+	@Override
+	public int size() {
+		return baseSize + addedOverlayOrdinals.length;
+	}
+
+	/**
+	 * @return the overlay ordinal of the item if the overlay prices it, -1 if the base does.
+	 */
+	private int pricingOverlayOrdinal(final int ordinal) {
+		final int overlayOrdinal = overlayOrdinal(ordinal);
+		// An item the overlay only knows from one of its bundles keeps the national rules.
+		if (overlayOrdinal >= 0 && ordinal < baseSize && overlay.ruleCount(overlayOrdinal) == 0) {
+			return -1;
+		}
+		return overlayOrdinal;
+	}
+
+	@Override
+	PricingRule[] rulesAt(final int ordinal) {
+		final int overlayOrdinal = pricingOverlayOrdinal(ordinal);
+		return overlayOrdinal < 0 ? base.rulesAt(ordinal) : overlay.rulesAt(overlayOrdinal);
+	}
+
+	@Override
+	int ruleCount(final int ordinal) {
+		final int overlayOrdinal = pricingOverlayOrdinal(ordinal);
+		return overlayOrdinal < 0 ? base.ruleCount(ordinal) : overlay.ruleCount(overlayOrdinal);
+	}
+
+	@Override
+	long priceOf(final int ordinal, final long quantity, final PricingStrategy pricingStrategy, final MutableUnit unit) {
+		final int overlayOrdinal = pricingOverlayOrdinal(ordinal);
+		return overlayOrdinal < 0 ? base.priceOf(ordinal, quantity, pricingStrategy, unit) : overlay.priceOf(overlayOrdinal, quantity, pricingStrategy, unit);
+	}
+
+	@Override
+	int bundleCount() {
+		return baseBundles + overlayBundleOrdinals.length;
+	}
+
+	@Override
+	PricingRule bundleAt(final int bundle) {
+		return bundle < baseBundles ? base.bundleAt(bundle) : overlay.bundleAt(bundle - baseBundles);
+	}
+
+	@Override
+	int[] bundleOrdinals(final int bundle) {
+		return bundle < baseBundles ? base.bundleOrdinals(bundle) : overlayBundleOrdinals[bundle - baseBundles];
+	}
+
+	@Override
+	long[] bundleQuantities(final int bundle) {
+		return bundle < baseBundles ? base.bundleQuantities(bundle) : overlay.bundleQuantities(bundle - baseBundles);
+	}
+
+	@Override
+	int[] bundlesKeyedBy(final int ordinal) {
+		final int i = Arrays.binarySearch(keyOrdinals, ordinal);
+		if (i >= 0) {
+			return keyedBundles[i];
+		}
+		return ordinal < baseSize ? base.bundlesKeyedBy(ordinal) : NO_BUNDLES;
+	}
+
+	@Override
+	boolean isInBundle(final int ordinal) {
+		if (ordinal < baseSize && base.isInBundle(ordinal)) {
+			return true;
+		}
+		final int overlayOrdinal = overlayOrdinal(ordinal);
+		return overlayOrdinal >= 0 && overlay.isInBundle(overlayOrdinal);
+	}
+
+	/**
+	 * Gives you the rules of the store flattened into one set, built the first
+	 * time it is asked for: the national rules of the items the overlay does not
+	 * price, the national bundles and the rules of the overlay.
+	 */
+	@Override
+	public Set<PricingRule> getPricingRules() {
+		Set<PricingRule> flattened = pricingRules;
+		if (flattened == null) {
+			final Set<PricingRule> rules = new HashSet<PricingRule>(base.getPricingRules().size() * 4 / 3 + 1);
+			for (PricingRule rule : base.getPricingRules()) {
+				if (rule instanceof BundlePricingRule || !overrides(rule.getItem())) {
+					rules.add(rule);
+				}
+			}
+			rules.addAll(overlay.getPricingRules());
+			flattened = Collections.unmodifiableSet(rules);
+			pricingRules = flattened;
+		}
+		return flattened;
+	}
+
+	private boolean overrides(final Item item) {
+		final int overlayOrdinal = overlay.ordinalOf(item);
+		return overlayOrdinal >= 0 && overlay.ruleCount(overlayOrdinal) > 0;
+	}
+
+	/**
+	 * @return the catalog the overlay is laid over.
+	 */
+	PriceCatalog getBase() {
+		return base;
+	}
+
+	/**
+	 * @return the catalog laid over the base.
+	 */
+	PriceCatalog getOverlay() {
+		return overlay;
+	}
+
+	@Override
+	public String toString() {
+		return "LayeredPriceCatalog [version=" + getVersion() + ", items=" + size() + ", overlay=" + overlay.size() + "]";
+	}
+
+}
@@ -0,0 +1,366 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.checkout.PriceCatalogFile.BUNDLE_BYTES;
+import static com.itv.kata.checkout.PriceCatalogFile.BUNDLE_KEY_BYTES;
+import static com.itv.kata.checkout.PriceCatalogFile.FORMAT_VERSION;
+import static com.itv.kata.checkout.PriceCatalogFile.HEADER_BYTES;
+import static com.itv.kata.checkout.PriceCatalogFile.INDIVIDUAL;
+import static com.itv.kata.checkout.PriceCatalogFile.IN_BUNDLE;
+import static com.itv.kata.checkout.PriceCatalogFile.MAGIC;
+import static com.itv.kata.checkout.PriceCatalogFile.MEMBER_BYTES;
+import static com.itv.kata.checkout.PriceCatalogFile.MULTI_ITEM;
+import static com.itv.kata.checkout.PriceCatalogFile.OFFER_BYTES;
+import static com.itv.kata.checkout.PriceCatalogFile.RULE_BYTES;
+import static com.itv.kata.checkout.PriceCatalogFile.SKU_BYTES;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.BundlePricingRule;
+import com.itv.kata.pricing.BundlePricingRule.BundlePricingRuleBuilder;
+import com.itv.kata.pricing.GreedyPricingStrategy;
+import com.itv.kata.pricing.IndividualPricingRule;
+import com.itv.kata.pricing.MultiItemPricingRule;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.pricing.PricingRule.MutableUnit;
+import com.itv.kata.pricing.PricingStrategy;
+
+/**
+ * PriceCatalog served straight from a memory mapped catalog file written by
+ * {@link PriceCatalogFile}. Opening the catalog only maps the file, so a till
+ * starts in constant time whatever the number of SKUs.
+ *
+ * Looking up an item is a binary search over the sorted SKUs in the file and
+ * does not allocate. The ordinal of an item is its index in the file. Items are
+ * priced by the default GreedyPricingStrategy with the prices read in place.
+ * Rule objects are only decoded for the callers that need them, such as
+ * receipts, metrics and other strategies, and only the most recent ones are
+ * kept, so the heap does not grow with the number of SKUs priced.
+ *
+ */
+public final class MappedPriceCatalog extends PriceCatalog {
+
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	// Decoded SKUs and bundles kept, a SKU or bundle replaces the one of the same slot.
+	private static final int DECODED_SKUS = 1024;
+	private static final int DECODED_BUNDLES = 256;
+
+	/**
+	 * Maps the given catalog file.
+	 * @param file the catalog file.
+	 * @return the mapped catalog.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public static MappedPriceCatalog open(final Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+				throw new InvalidKataRequestException("Sorry! " + file + " is not a price catalog file.");
+			}
+			// The mapping stays valid after the channel is closed.
+			return new MappedPriceCatalog(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ORDER));
+		}
+	}
+
+	// Rules and bundle keys of a SKU, decoded when they are needed.
+	private static final class Sku {
+		private final int index;
+		private final Item item;
+		private final PricingRule[] rules;
+		private final int[] bundleKeys;
+
+		private Sku(final int index, final Item item, final PricingRule[] rules, final int[] bundleKeys) {
+			this.index = index;
+			this.item = item;
+			this.rules = rules;
+			this.bundleKeys = bundleKeys;
+		}
+	}
+
+	// A bundle with the ordinals and quantities of its items, decoded when it is needed.
+	private static final class Bundle {
+		private final int index;
+		private final BundlePricingRule rule;
+		private final int[] ordinals;
+		private final long[] quantities;
+
+		private Bundle(final int index, final BundlePricingRule rule, final int[] ordinals, final long[] quantities) {
+			this.index = index;
+			this.rule = rule;
+			this.ordinals = ordinals;
+			this.quantities = quantities;
+		}
+	}
+
+	// Only read with absolute gets, so the buffer is shared by every thread.
+	private final ByteBuffer buffer;
+	private final int skuCount;
+	private final int bundleCount;
+	private final int rulesAt;
+	private final int bundlesAt;
+	private final int bundleKeysAt;
+	private final int offersAt;
+	private final int offerDataAt;
+	private final int namesAt;
+	private final AtomicReferenceArray<Sku> skus = new AtomicReferenceArray<Sku>(DECODED_SKUS);
+	private final AtomicReferenceArray<Bundle> bundles = new AtomicReferenceArray<Bundle>(DECODED_BUNDLES);
+
+	private MappedPriceCatalog(final Path file, final ByteBuffer buffer) {
+		super(buffer.getLong(8));
+		if (buffer.getInt(0) != MAGIC) {
+			throw new InvalidKataRequestException("Sorry! " + file + " is not a price catalog file.");
+		}
+		if (buffer.getInt(4) != FORMAT_VERSION) {
+			throw new InvalidKataRequestException("Sorry! " + file + " has an unsupported price catalog format " + buffer.getInt(4) + ".");
+		}
+		this.buffer = buffer;
+		this.skuCount = buffer.getInt(16);
+		final int ruleCount = buffer.getInt(20);
+		this.bundleCount = buffer.getInt(24);
+		final int offerCount = buffer.getInt(28);
+		final int bundleKeyCount = buffer.getInt(32);
+		final int nameChars = buffer.getInt(36);
+
+		this.rulesAt = HEADER_BYTES + skuCount * SKU_BYTES;
+		this.bundlesAt = rulesAt + ruleCount * RULE_BYTES;
+		this.bundleKeysAt = bundlesAt + bundleCount * BUNDLE_BYTES;
+		this.offersAt = bundleKeysAt + bundleKeyCount * BUNDLE_KEY_BYTES;
+		this.offerDataAt = offersAt + offerCount * OFFER_BYTES;
+		this.namesAt = buffer.capacity() - nameChars * 2;
+		if (namesAt < offerDataAt) {
+			throw new InvalidKataRequestException("Sorry! " + file + " is truncated.");
+		}
+	}
+
+	@Override
+	public int ordinalOf(final Item item) {
+		final String sku = item == null ? null : item.getSku();
+		if (sku == null) {
+			return -1;
+		}
+		int low = 0;
+		int high = skuCount - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final int comparison = compareSku(middle, sku);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	// Compares the SKU in the file with the given one the way String.compareTo does.
+	private int compareSku(final int index, final String sku) {
+		final int start = namesAt + buffer.getInt(HEADER_BYTES + index * SKU_BYTES) * 2;
+		final int length = buffer.getInt(HEADER_BYTES + index * SKU_BYTES + 4);
+		final int common = Math.min(length, sku.length());
+		for (int i = 0; i < common; i++) {
+			final char c = buffer.getChar(start + i * 2);
+			if (c != sku.charAt(i)) {
+				return c - sku.charAt(i);
+			}
+		}
+		return length - sku.length();
+	}
+
+	@Override
+	public Item itemAt(final int ordinal) {
+		return sku(ordinal).item;
+	}
+
+	@Override
+	public int size() {
+		return skuCount;
+	}
+
+	@Override
+	PricingRule[] rulesAt(final int ordinal) {
+		return sku(ordinal).rules;
+	}
+
+	@Override
+	int ruleCount(final int ordinal) {
+		return buffer.getInt(HEADER_BYTES + ordinal * SKU_BYTES + 12);
+	}
+
+	/**
+	 * Prices the item with the prices read in place from the file if the strategy
+	 * is greedy, applying the rules exactly as GreedyPricingStrategy does.
+	 */
+	@Override
+	long priceOf(final int ordinal, final long quantity, final PricingStrategy pricingStrategy, final MutableUnit unit) {
+		if (!(pricingStrategy instanceof GreedyPricingStrategy)) {
+			return super.priceOf(ordinal, quantity, pricingStrategy, unit);
+		}
+		final int firstRule = buffer.getInt(HEADER_BYTES + ordinal * SKU_BYTES + 8);
+		final int ruleCount = ruleCount(ordinal);
+		long price = 0;
+		long remainingQty = quantity;
+		for (int i = 0; i < ruleCount; i++) {
+			final int at = rulesAt + (firstRule + i) * RULE_BYTES;
+			final long rulePrice = buffer.getLong(at + 8);
+			final long consumed;
+			switch (buffer.getInt(at)) {
+			case INDIVIDUAL:
+				price = Money.addPence(price, Money.multiplyPence(rulePrice, remainingQty));
+				consumed = remainingQty;
+				break;
+			case MULTI_ITEM:
+				final long offerQuantity = buffer.getLong(offerDataAt + buffer.getInt(offersAt + buffer.getInt(at + 16) * OFFER_BYTES) + 8);
+				final long applicableCount = remainingQty / offerQuantity;
+				price = Money.addPence(price, Money.multiplyPence(rulePrice, applicableCount));
+				consumed = offerQuantity * applicableCount;
+				break;
+			default:
+				throw new InvalidKataRequestException("Sorry! Unknown pricing rule type " + buffer.getInt(at) + " for " + itemAt(ordinal) + ".");
+			}
+			// A single remaining item is left in the basket for the next rule.
+			if (remainingQty != 1) {
+				remainingQty = remainingQty - consumed;
+			}
+		}
+		return price;
+	}
+
+	@Override
+	int bundleCount() {
+		return bundleCount;
+	}
+
+	@Override
+	PricingRule bundleAt(final int bundle) {
+		return bundle(bundle).rule;
+	}
+
+	@Override
+	int[] bundleOrdinals(final int bundle) {
+		return bundle(bundle).ordinals;
+	}
+
+	@Override
+	long[] bundleQuantities(final int bundle) {
+		return bundle(bundle).quantities;
+	}
+
+	@Override
+	int[] bundlesKeyedBy(final int ordinal) {
+		if (buffer.getInt(HEADER_BYTES + ordinal * SKU_BYTES + 20) == 0) {
+			return NO_BUNDLES;
+		}
+		return sku(ordinal).bundleKeys;
+	}
+
+	@Override
+	boolean isInBundle(final int ordinal) {
+		return (buffer.getInt(HEADER_BYTES + ordinal * SKU_BYTES + 24) & IN_BUNDLE) != 0;
+	}
+
+	/**
+	 * Decodes every rule of the file on every call and keeps none of them, so it
+	 * is only meant for tools and checks, not for the till.
+	 */
+	@Override
+	public Set<PricingRule> getPricingRules() {
+		final Set<PricingRule> decoded = new HashSet<PricingRule>();
+		for (int ordinal = 0; ordinal < skuCount; ordinal++) {
+			Collections.addAll(decoded, decodeSku(ordinal).rules);
+		}
+		for (int bundle = 0; bundle < bundleCount; bundle++) {
+			decoded.add(decodeBundle(bundle).rule);
+		}
+		return Collections.unmodifiableSet(decoded);
+	}
+
+	// Two threads may decode the same SKU, they decode equal rules and either one is kept.
+	private Sku sku(final int index) {
+		final int slot = index & (DECODED_SKUS - 1);
+		Sku sku = skus.get(slot);
+		if (sku == null || sku.index != index) {
+			sku = decodeSku(index);
+			skus.lazySet(slot, sku);
+		}
+		return sku;
+	}
+
+	private Bundle bundle(final int index) {
+		final int slot = index & (DECODED_BUNDLES - 1);
+		Bundle bundle = bundles.get(slot);
+		if (bundle == null || bundle.index != index) {
+			bundle = decodeBundle(index);
+			bundles.lazySet(slot, bundle);
+		}
+		return bundle;
+	}
+
+	// Not interned, so the ItemRegistry does not keep every SKU the till ever priced.
+	private Item decodeItem(final int index) {
+		final int start = namesAt + buffer.getInt(HEADER_BYTES + index * SKU_BYTES) * 2;
+		final char[] name = new char[buffer.getInt(HEADER_BYTES + index * SKU_BYTES + 4)];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = buffer.getChar(start + i * 2);
+		}
+		return new Item(new String(name));
+	}
+
+	private Sku decodeSku(final int index) {
+		final Item item = decodeItem(index);
+		final int firstRule = buffer.getInt(HEADER_BYTES + index * SKU_BYTES + 8);
+		final PricingRule[] rules = new PricingRule[buffer.getInt(HEADER_BYTES + index * SKU_BYTES + 12)];
+		for (int i = 0; i < rules.length; i++) {
+			final int at = rulesAt + (firstRule + i) * RULE_BYTES;
+			final Money price = Money.ofPence(buffer.getLong(at + 8));
+			switch (buffer.getInt(at)) {
+			case INDIVIDUAL:
+				rules[i] = IndividualPricingRule.pricingRuleFor(item).atPrice(price);
+				break;
+			case MULTI_ITEM:
+				final int offer = offerDataAt + buffer.getInt(offersAt + buffer.getInt(at + 16) * OFFER_BYTES);
+				rules[i] = MultiItemPricingRule.multiItemPricingRuleFor(item).buy((int) buffer.getLong(offer + 8)).atPrice(price);
+				break;
+			default:
+				throw new InvalidKataRequestException("Sorry! Unknown pricing rule type " + buffer.getInt(at) + " for " + item + ".");
+			}
+		}
+		final int firstBundleKey = buffer.getInt(HEADER_BYTES + index * SKU_BYTES + 16);
+		final int[] bundleKeys = new int[buffer.getInt(HEADER_BYTES + index * SKU_BYTES + 20)];
+		for (int i = 0; i < bundleKeys.length; i++) {
+			bundleKeys[i] = buffer.getInt(bundleKeysAt + (firstBundleKey + i) * BUNDLE_KEY_BYTES);
+		}
+		return new Sku(index, item, rules, bundleKeys.length == 0 ? NO_BUNDLES : bundleKeys);
+	}
+
+	private Bundle decodeBundle(final int index) {
+		final int at = bundlesAt + index * BUNDLE_BYTES;
+		final int offer = offerDataAt + buffer.getInt(offersAt + buffer.getInt(at + 4) * OFFER_BYTES);
+		final int[] ordinals = new int[buffer.getInt(offer)];
+		final long[] quantities = new long[ordinals.length];
+		BundlePricingRuleBuilder builder = null;
+		for (int member = 0; member < ordinals.length; member++) {
+			ordinals[member] = buffer.getInt(offer + 4 + member * MEMBER_BYTES);
+			quantities[member] = buffer.getLong(offer + 8 + member * MEMBER_BYTES);
+			final Item item = decodeItem(ordinals[member]);
+			builder = builder == null ? BundlePricingRule.bundlePricingRuleFor(item, quantities[member]) : builder.and(item, quantities[member]);
+		}
+		if (builder == null) {
+			throw new InvalidKataRequestException("Sorry! Bundle " + index + " has no items.");
+		}
+		return new Bundle(index, builder.atPrice(Money.ofPence(buffer.getLong(at + 8))), ordinals, quantities);
+	}
+
+}
@@ -0,0 +1,499 @@
+package com.itv.kata.checkout;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.itv.kata.metrics.CheckoutMetrics;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.IndividualPricingRule;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.pricing.PricingRule.MutableUnit;
+import com.itv.kata.pricing.PricingStrategy;
+
+/**
+ * PriceCatalog is the compiled, immutable form of a set of pricing rules.
+ *
+ * Every priced item gets a dense ordinal, and the rules of each item are grouped
+ * and ordered by their PricingRuleOrder once, when the catalog is compiled, and
+ * bundles across items are indexed by the items they contain. All
+ * transactions created for the same rule set share one catalog, so looking up
+ * an item while scanning does not depend on the number of rules.
+ *
+ * Catalogs are compiled in memory with {@link #compile(Set)}, or mapped from a
+ * catalog file with {@link MappedPriceCatalog#open(java.nio.file.Path)}. The
+ * catalog of a store with local prices is laid over a shared one with
+ * {@link #overlay(PriceCatalog, Set)}.
+ *
+ */
+public abstract class PriceCatalog {
+
+	/**
+	 * Compiles the given pricing rules into a catalog.
+	 * @param pricingRules the pricing rules.
+	 * @return the compiled catalog.
+	 */
+	public static PriceCatalog compile(final Set<PricingRule> pricingRules) {
+		return compile(pricingRules, 0);
+	}
+
+	/**
+	 * Compiles the given pricing rules into a catalog of the given version.
+	 * @param pricingRules the pricing rules.
+	 * @param version the version of the rules.
+	 * @return the compiled catalog.
+	 */
+	static PriceCatalog compile(final Set<PricingRule> pricingRules, final long version) {
+		ValidationUtil.validatePricingRules(pricingRules);
+		return new CompiledPriceCatalog(pricingRules, version);
+	}
+
+	/**
+	 * Lays the pricing rules of one store over a shared catalog. An item with rules
+	 * in the overlay is priced by those rules only, the bundles of both apply. The
+	 * layer does not copy the shared catalog, so many stores can share one.
+	 * @param base the shared catalog, for example the national prices.
+	 * @param overrides the store's own pricing rules.
+	 * @return the store's catalog, the base itself if there are no overrides.
+	 */
+	public static PriceCatalog overlay(final PriceCatalog base, final Set<PricingRule> overrides) {
+		if (overrides == null || overrides.isEmpty()) {
+			return base;
+		}
+		return new LayeredPriceCatalog(base, compile(overrides));
+	}
+
+	static final int[] NO_BUNDLES = new int[0];
+
+	private static final AtomicLong SERIALS = new AtomicLong();
+
+	private final long version;
+	// Unique to this catalog, even between catalogs of the same version.
+	private final long serial = SERIALS.incrementAndGet();
+
+	PriceCatalog(final long version) {
+		this.version = version;
+	}
+
+	/**
+	 * Gives you the ordinal of the given item in this catalog.
+	 * @param item the item, may be null.
+	 * @return the ordinal of the item, or -1 if the item is null or has not been priced.
+	 */
+	public abstract int ordinalOf(Item item);
+
+	/**
+	 * @param item the item.
+	 * @return true if the item has at least one pricing rule of its own.
+	 */
+	public boolean contains(final Item item) {
+		return pricedOrdinalOf(item) >= 0;
+	}
+
+	/**
+	 * Gives you the ordinal of an item that can be scanned. An item only known
+	 * from a bundle has no price outside the bundle, so it can not be scanned.
+	 * @param item the item.
+	 * @return the ordinal of the item, or -1 if the item has no pricing rule of its own.
+	 */
+	int pricedOrdinalOf(final Item item) {
+		final int ordinal = ordinalOf(item);
+		return ordinal >= 0 && ruleCount(ordinal) > 0 ? ordinal : -1;
+	}
+
+	/**
+	 * @param ordinal the ordinal of the item.
+	 * @return the item for the given ordinal.
+	 */
+	public abstract Item itemAt(int ordinal);
+
+	/**
+	 * @return the number of priced items in this catalog.
+	 */
+	public abstract int size();
+
+	/**
+	 * @return the unmodifiable pricing rules of this catalog.
+	 */
+	public abstract Set<PricingRule> getPricingRules();
+
+	/**
+	 * Gives you the rules that can price a basket of the given items: the rules of
+	 * every item, and the bundles looked up for the items when a basket is priced.
+	 * Only the given items are looked up, not every rule of the catalog.
+	 * @param items the items.
+	 * @return the pricing rules of the items.
+	 */
+	public Set<PricingRule> getPricingRulesOf(final Collection<Item> items) {
+		final Set<PricingRule> rules = new HashSet<PricingRule>();
+		for (Item item : items) {
+			final int ordinal = ordinalOf(item);
+			if (ordinal >= 0) {
+				Collections.addAll(rules, rulesAt(ordinal));
+				for (int bundle : bundlesKeyedBy(ordinal)) {
+					rules.add(bundleAt(bundle));
+				}
+			}
+		}
+		return Collections.unmodifiableSet(rules);
+	}
+
+	/**
+	 * Gives you the pricing rules of the item ordered by their PricingRuleOrder,
+	 * without its bundles. The returned array is shared and must not be modified.
+	 * @param ordinal the ordinal of the item.
+	 * @return the ordered pricing rules of the item.
+	 */
+	abstract PricingRule[] rulesAt(int ordinal);
+
+	/**
+	 * @param ordinal the ordinal of the item.
+	 * @return the number of pricing rules of the item, without its bundles.
+	 */
+	int ruleCount(final int ordinal) {
+		return rulesAt(ordinal).length;
+	}
+
+	/**
+	 * @return the number of bundles.
+	 */
+	abstract int bundleCount();
+
+	/**
+	 * @param bundle the index of the bundle.
+	 * @return the bundle rule.
+	 */
+	abstract PricingRule bundleAt(int bundle);
+
+	/**
+	 * @param bundle the index of the bundle.
+	 * @return the ordinals of the items of the bundle, shared and must not be modified.
+	 */
+	abstract int[] bundleOrdinals(int bundle);
+
+	/**
+	 * @param bundle the index of the bundle.
+	 * @return the quantities of the items of the bundle, shared and must not be modified.
+	 */
+	abstract long[] bundleQuantities(int bundle);
+
+	/**
+	 * Gives you the bundles indexed by the item, each bundle is indexed by only one
+	 * of its items, in ascending order.
+	 * @param ordinal the ordinal of the item.
+	 * @return the indexes of the bundles, shared and must not be modified.
+	 */
+	abstract int[] bundlesKeyedBy(int ordinal);
+
+	/**
+	 * @param ordinal the ordinal of the item.
+	 * @return true if the item is in at least one bundle, so its price depends on other items.
+	 */
+	abstract boolean isInBundle(int ordinal);
+
+	/**
+	 * Gives you the price of the given quantity of an item.
+	 * @param ordinal the ordinal of the item.
+	 * @param quantity the quantity in the basket.
+	 * @param pricingStrategy how the rules of the item are combined.
+	 * @param unit the caller's unit the rules are applied with.
+	 * @return the price in pence.
+	 */
+	long priceOf(final int ordinal, final long quantity, final PricingStrategy pricingStrategy, final MutableUnit unit) {
+		return pricingStrategy.priceOf(rulesAt(ordinal), quantity, unit);
+	}
+
+	/**
+	 * Gives you the price of the basket. Only the rules of the items in the basket
+	 * are applied, already in their PricingRuleOrder: first the bundles of these
+	 * items, then the rules of every item on the quantity the bundles have left.
+	 * @param basket the quantities of the items in the basket.
+	 * @param pricingStrategy how the rules of an item are combined.
+	 * @param unit the caller's unit the rules are applied with.
+	 * @return the price in pence.
+	 */
+	long priceOf(final ItemQuantityMap basket, final PricingStrategy pricingStrategy, final MutableUnit unit) {
+		return priceOf(basket, pricingStrategy, unit, null);
+	}
+
+	/**
+	 * Gives you the price of the basket, telling the metrics about every rule applied.
+	 * @param basket the quantities of the items in the basket.
+	 * @param pricingStrategy how the rules of an item are combined.
+	 * @param unit the caller's unit the rules are applied with.
+	 * @param metrics told about the rules applied, null if they are not counted.
+	 * @return the price in pence.
+	 */
+	long priceOf(final ItemQuantityMap basket, final PricingStrategy pricingStrategy, final MutableUnit unit, final CheckoutMetrics metrics) {
+		return priceOf(basket, pricingStrategy, unit, metrics, null);
+	}
+
+	/**
+	 * Gives you the price of the basket, itemising it on the receipt as the rules are applied.
+	 * @param basket the quantities of the items in the basket.
+	 * @param pricingStrategy how the rules of an item are combined.
+	 * @param unit the caller's unit the rules are applied with.
+	 * @param metrics told about the rules applied, null if they are not counted.
+	 * @param receipt emptied and given the lines of the basket, null if it is not itemised.
+	 * @return the price in pence.
+	 */
+	long priceOf(final ItemQuantityMap basket, final PricingStrategy pricingStrategy, final MutableUnit unit, final CheckoutMetrics metrics, final Receipt receipt) {
+		if (receipt == null) {
+			return priceOfBasket(basket, pricingStrategy, unit, metrics, null);
+		}
+		// Most items take a line or two, the receipt grows if they take more.
+		receipt.reset(basket.size() * 2);
+		final long price = priceOfBasket(basket, pricingStrategy, unit, metrics, receipt);
+		receipt.setTotal(price);
+		return price;
+	}
+
+	private long priceOfBasket(final ItemQuantityMap basket, final PricingStrategy pricingStrategy, final MutableUnit unit, final CheckoutMetrics metrics, final Receipt receipt) {
+		if (bundleCount() == 0) {
+			return priceOfItems(basket, pricingStrategy, unit, metrics, receipt);
+		}
+
+		int[] candidates = NO_BUNDLES;
+		int candidateCount = 0;
+		for (int slot = 0; slot < basket.capacity(); slot++) {
+			final int ordinal = basket.ordinalAt(slot);
+			if (ordinal >= 0) {
+				for (int bundle : bundlesKeyedBy(ordinal)) {
+					if (candidateCount == candidates.length) {
+						candidates = Arrays.copyOf(candidates, Math.max(8, candidateCount * 2));
+					}
+					candidates[candidateCount++] = bundle;
+				}
+			}
+		}
+		if (candidateCount == 0) {
+			return priceOfItems(basket, pricingStrategy, unit, metrics, receipt);
+		}
+
+		// Bundles are applied in their catalog order, the biggest saving first, each one as many times as the basket allows.
+		Arrays.sort(candidates, 0, candidateCount);
+		final ItemQuantityMap remaining = new ItemQuantityMap(basket);
+		long price = 0;
+		for (int i = 0; i < candidateCount; i++) {
+			final int bundle = candidates[i];
+			final int[] members = bundleOrdinals(bundle);
+			final long[] quantities = bundleQuantities(bundle);
+			final long times = timesOf(bundle, remaining);
+			if (times > 0) {
+				bundleAt(bundle).fillUnit(times, unit);
+				price = Money.addPence(price, unit.getPrice());
+				if (metrics != null) {
+					metrics.ruleApplied(bundleAt(bundle).getClass(), 1);
+				}
+				if (receipt != null) {
+					receipt.add(bundleAt(bundle).getItem(), bundleAt(bundle), times, unit.getPrice(), bundleSavingOf(bundle, times, unit.getPrice()));
+				}
+				for (int member = 0; member < members.length; member++) {
+					remaining.add(members[member], -times * quantities[member]);
+				}
+			}
+		}
+		return Money.addPence(price, priceOfItems(remaining, pricingStrategy, unit, metrics, receipt));
+	}
+
+	/**
+	 * Gives you the price of the basket's items that are in bundles, the part of the
+	 * price of the basket a scan of one of them can change: the given bundles applied
+	 * as {@link #priceOf(ItemQuantityMap, PricingStrategy, MutableUnit)} applies them,
+	 * then the rules of the given items on the quantity the bundles have left. The
+	 * other items of the basket are not looked at, and nothing is allocated once the
+	 * scratch map has grown to the bundled items.
+	 * @param basket the quantities of the items in the basket.
+	 * @param ordinals the basket's items that are in a bundle, each once.
+	 * @param ordinalCount the number of these items.
+	 * @param bundles the bundles keyed by these items, in catalog order.
+	 * @param bundleCount the number of these bundles.
+	 * @param remaining emptied and given what the bundles leave of the items.
+	 * @param pricingStrategy how the rules of an item are combined.
+	 * @param unit the caller's unit the rules are applied with.
+	 * @return the price in pence.
+	 */
+	long priceOfBundled(final ItemQuantityMap basket, final int[] ordinals, final int ordinalCount, final int[] bundles, final int bundleCount,
+			final ItemQuantityMap remaining, final PricingStrategy pricingStrategy, final MutableUnit unit) {
+		remaining.clear();
+		for (int i = 0; i < ordinalCount; i++) {
+			remaining.add(ordinals[i], basket.get(ordinals[i]));
+		}
+		long price = 0;
+		for (int i = 0; i < bundleCount; i++) {
+			final int bundle = bundles[i];
+			final long times = timesOf(bundle, remaining);
+			if (times > 0) {
+				bundleAt(bundle).fillUnit(times, unit);
+				price = Money.addPence(price, unit.getPrice());
+				final int[] members = bundleOrdinals(bundle);
+				final long[] quantities = bundleQuantities(bundle);
+				for (int member = 0; member < members.length; member++) {
+					remaining.add(members[member], -times * quantities[member]);
+				}
+			}
+		}
+		for (int i = 0; i < ordinalCount; i++) {
+			final long quantity = remaining.get(ordinals[i]);
+			if (quantity > 0) {
+				price = Money.addPence(price, priceOf(ordinals[i], quantity, pricingStrategy, unit));
+			}
+		}
+		return price;
+	}
+
+	/**
+	 * @return how many times the bundle applies to the remaining quantities.
+	 */
+	private long timesOf(final int bundle, final ItemQuantityMap remaining) {
+		final int[] members = bundleOrdinals(bundle);
+		final long[] quantities = bundleQuantities(bundle);
+		long times = Long.MAX_VALUE;
+		for (int member = 0; member < members.length; member++) {
+			times = Math.min(times, remaining.get(members[member]) / quantities[member]);
+		}
+		return times;
+	}
+
+	private long priceOfItems(final ItemQuantityMap basket, final PricingStrategy pricingStrategy, final MutableUnit unit, final CheckoutMetrics metrics, final Receipt receipt) {
+		if (receipt != null) {
+			return itemisedPriceOfItems(basket, pricingStrategy, unit, metrics, receipt);
+		}
+		if (metrics != null) {
+			return countedPriceOfItems(basket, pricingStrategy, unit, metrics);
+		}
+		long price = 0;
+		for (int slot = 0; slot < basket.capacity(); slot++) {
+			final int ordinal = basket.ordinalAt(slot);
+			if (ordinal >= 0 && basket.quantityAt(slot) > 0) {
+				price = Money.addPence(price, priceOf(ordinal, basket.quantityAt(slot), pricingStrategy, unit));
+			}
+		}
+		return price;
+	}
+
+	// Counts the same lines as the receipt, every rule that priced some of an item once.
+	private long countedPriceOfItems(final ItemQuantityMap basket, final PricingStrategy pricingStrategy, final MutableUnit unit, final CheckoutMetrics metrics) {
+		long[] quantities = new long[4];
+		long[] prices = new long[4];
+		long price = 0;
+		for (int slot = 0; slot < basket.capacity(); slot++) {
+			final int ordinal = basket.ordinalAt(slot);
+			if (ordinal >= 0 && basket.quantityAt(slot) > 0) {
+				final PricingRule[] rules = rulesAt(ordinal);
+				if (quantities.length < rules.length) {
+					quantities = new long[rules.length];
+					prices = new long[rules.length];
+				} else {
+					Arrays.fill(quantities, 0, rules.length, 0);
+					Arrays.fill(prices, 0, rules.length, 0);
+				}
+				price = Money.addPence(price, pricingStrategy.priceOf(rules, basket.quantityAt(slot), unit, quantities, prices));
+				for (int i = 0; i < rules.length; i++) {
+					if (quantities[i] > 0) {
+						metrics.ruleApplied(rules[i].getClass(), 1);
+					}
+				}
+			}
+		}
+		return price;
+	}
+
+	private long itemisedPriceOfItems(final ItemQuantityMap basket, final PricingStrategy pricingStrategy, final MutableUnit unit, final CheckoutMetrics metrics, final Receipt receipt) {
+		long price = 0;
+		for (int slot = 0; slot < basket.capacity(); slot++) {
+			final int ordinal = basket.ordinalAt(slot);
+			final long quantity = basket.quantityAt(slot);
+			if (ordinal >= 0 && quantity > 0) {
+				final PricingRule[] rules = rulesAt(ordinal);
+				final long[] quantities = receipt.ruleQuantities(rules.length);
+				final long[] prices = receipt.rulePrices();
+				final long itemPrice = pricingStrategy.priceOf(rules, quantity, unit, quantities, prices);
+				price = Money.addPence(price, itemPrice);
+
+				final Item item = itemAt(ordinal);
+				final long regularPrice = regularPriceOf(rules);
+				long itemisedQuantity = 0;
+				long itemisedPrice = 0;
+				for (int i = 0; i < rules.length; i++) {
+					if (quantities[i] > 0 || prices[i] != 0) {
+						receipt.add(item, rules[i], quantities[i], prices[i], savingOf(regularPrice, quantities[i], prices[i]));
+						itemisedQuantity += quantities[i];
+						itemisedPrice = Money.addPence(itemisedPrice, prices[i]);
+						if (metrics != null && quantities[i] > 0) {
+							metrics.ruleApplied(rules[i].getClass(), 1);
+						}
+					}
+				}
+				// Whatever the strategy did not tell about.
+				if (itemisedQuantity < quantity || itemisedPrice != itemPrice) {
+					receipt.add(item, null, Math.max(0, quantity - itemisedQuantity), itemPrice - itemisedPrice, 0);
+				}
+			}
+		}
+		return price;
+	}
+
+	/**
+	 * @return the price in pence of one item at its individual price, -1 if it has none.
+	 */
+	static long regularPriceOf(final PricingRule[] rules) {
+		for (PricingRule rule : rules) {
+			if (rule instanceof IndividualPricingRule) {
+				return ((IndividualPricingRule) rule).getPrice().getPence();
+			}
+		}
+		return -1;
+	}
+
+	private static long savingOf(final long regularPrice, final long quantity, final long price) {
+		return regularPrice < 0 ? 0 : Math.max(0, Money.multiplyPence(regularPrice, quantity) - price);
+	}
+
+	private long bundleSavingOf(final int bundle, final long times, final long price) {
+		final int[] members = bundleOrdinals(bundle);
+		final long[] quantities = bundleQuantities(bundle);
+		long regularPrice = 0;
+		for (int member = 0; member < members.length; member++) {
+			final long memberPrice = regularPriceOf(rulesAt(members[member]));
+			if (memberPrice < 0) {
+				return 0;
+			}
+			regularPrice = Money.addPence(regularPrice, Money.multiplyPence(memberPrice, Money.multiplyPence(quantities[member], times)));
+		}
+		return Math.max(0, regularPrice - price);
+	}
+
+	/**
+	 * Returns true if this catalog was compiled from rules equal to the given ones.
+	 * @param pricingRules the pricing rules.
+	 * @return true if the given rules are the rules of this catalog.
+	 */
+	public boolean isCompiledFrom(final Set<PricingRule> pricingRules) {
+		return getPricingRules().equals(pricingRules);
+	}
+
+	/**
+	 * @return the version of the rules, 0 unless the catalog was published by a PricingRuleStore.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the number of this catalog, no two catalogs have the same.
+	 */
+	long getSerial() {
+		return serial;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " [version=" + version + ", items=" + size() + "]";
+	}
+
+}
@@ -0,0 +1,229 @@
+package com.itv.kata.checkout;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.pricing.BundlePricingRule;
+import com.itv.kata.pricing.IndividualPricingRule;
+import com.itv.kata.pricing.MultiItemPricingRule;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.pricing.PricingRuleOrders;
+
+/**
+ * PriceCatalogFile writes a compiled PriceCatalog to the binary catalog file
+ * that {@link MappedPriceCatalog} maps, so a till starts without parsing or
+ * compiling the rules again.
+ *
+ * The file is little endian and made of fixed size sections, one after the other:
+ * <pre>
+ * header      magic, format version, catalog version and the size of every section
+ * skus        per SKU: name start, name length, first rule, rule count,
+ *             first bundle key, bundle key count, flags - sorted by SKU
+ * rules       per rule: type, order, price in pence, offer
+ * bundles     per bundle: order, offer, price in pence
+ * bundle keys per SKU, the bundles indexed by it
+ * offers      per offer: its offset in the offer data
+ * offer data  per offer: member count, then SKU index and quantity of every member
+ * names       the chars of every SKU
+ * </pre>
+ * Only the built in rule types can be written.
+ *
+ */
+public final class PriceCatalogFile {
+
+	static final int MAGIC = 0x4B415441;
+	static final int FORMAT_VERSION = 1;
+
+	static final int HEADER_BYTES = 64;
+	static final int SKU_BYTES = 28;
+	static final int RULE_BYTES = 20;
+	static final int BUNDLE_BYTES = 16;
+	static final int BUNDLE_KEY_BYTES = 4;
+	static final int OFFER_BYTES = 4;
+	static final int MEMBER_BYTES = 12;
+
+	static final int INDIVIDUAL = 0;
+	static final int MULTI_ITEM = 1;
+
+	static final int IN_BUNDLE = 1;
+
+	private PriceCatalogFile() {
+	}
+
+	/**
+	 * Compiles the given pricing rules and writes them to the given file.
+	 * @param pricingRules the pricing rules.
+	 * @param file the catalog file, replaced if it exists.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public static void write(final Set<PricingRule> pricingRules, final Path file) throws IOException {
+		write(PriceCatalog.compile(pricingRules), file);
+	}
+
+	/**
+	 * Writes the given catalog to the given file. The file is written next to the
+	 * target and moved over it, so a till mapping the old file never sees half a catalog.
+	 * @param catalog the catalog.
+	 * @param file the catalog file, replaced if it exists.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public static void write(final PriceCatalog catalog, final Path file) throws IOException {
+		final ByteBuffer buffer = encode(catalog);
+		final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	static ByteBuffer encode(final PriceCatalog catalog) {
+		final int skuCount = catalog.size();
+		final int bundleCount = catalog.bundleCount();
+
+		// SKUs are sorted, so a SKU is found by a binary search over the mapped names.
+		final Integer[] sorted = new Integer[skuCount];
+		for (int ordinal = 0; ordinal < skuCount; ordinal++) {
+			if (catalog.itemAt(ordinal).getSku() == null) {
+				throw new InvalidKataRequestException("Sorry! Items without SKU cannot be written to a price catalog file.");
+			}
+			sorted[ordinal] = ordinal;
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				return catalog.itemAt(o1).getSku().compareTo(catalog.itemAt(o2).getSku());
+			}
+		});
+		final int[] skuIndexOf = new int[skuCount];
+		for (int index = 0; index < skuCount; index++) {
+			skuIndexOf[sorted[index]] = index;
+		}
+
+		// A multi item rule is an offer of one member, a bundle an offer of all its items.
+		int ruleCount = 0;
+		int bundleKeyCount = 0;
+		int offerCount = bundleCount;
+		long nameChars = 0;
+		long memberCount = 0;
+		for (int ordinal = 0; ordinal < skuCount; ordinal++) {
+			for (PricingRule rule : catalog.rulesAt(ordinal)) {
+				if (rule instanceof MultiItemPricingRule) {
+					offerCount++;
+					memberCount++;
+				}
+				ruleCount++;
+			}
+			bundleKeyCount += catalog.bundlesKeyedBy(ordinal).length;
+			nameChars += catalog.itemAt(ordinal).getSku().length();
+		}
+		for (int bundle = 0; bundle < bundleCount; bundle++) {
+			memberCount += catalog.bundleOrdinals(bundle).length;
+		}
+
+		final long size = HEADER_BYTES + (long) skuCount * SKU_BYTES + (long) ruleCount * RULE_BYTES
+				+ (long) bundleCount * BUNDLE_BYTES + (long) bundleKeyCount * BUNDLE_KEY_BYTES
+				+ (long) offerCount * (OFFER_BYTES + 4) + memberCount * MEMBER_BYTES + nameChars * 2;
+		if (size > Integer.MAX_VALUE) {
+			throw new InvalidKataRequestException("Sorry! The price catalog is too large for one catalog file.");
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocate((int) size).order(MappedPriceCatalog.ORDER);
+		buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(catalog.getVersion())
+				.putInt(skuCount).putInt(ruleCount).putInt(bundleCount).putInt(offerCount)
+				.putInt(bundleKeyCount).putInt((int) nameChars);
+
+		final int rulesAt = HEADER_BYTES + skuCount * SKU_BYTES;
+		final int bundlesAt = rulesAt + ruleCount * RULE_BYTES;
+		final int bundleKeysAt = bundlesAt + bundleCount * BUNDLE_BYTES;
+		final int offersAt = bundleKeysAt + bundleKeyCount * BUNDLE_KEY_BYTES;
+		final int offerDataAt = offersAt + offerCount * OFFER_BYTES;
+		final int namesAt = (int) (size - nameChars * 2);
+
+		int rule = 0;
+		int bundleKey = 0;
+		int name = 0;
+		int offer = 0;
+		int offerData = 0;
+		for (int index = 0; index < skuCount; index++) {
+			final int ordinal = sorted[index];
+			final String sku = catalog.itemAt(ordinal).getSku();
+			final PricingRule[] rules = catalog.rulesAt(ordinal);
+			final int[] keys = catalog.bundlesKeyedBy(ordinal);
+
+			buffer.putInt(HEADER_BYTES + index * SKU_BYTES, name)
+					.putInt(HEADER_BYTES + index * SKU_BYTES + 4, sku.length())
+					.putInt(HEADER_BYTES + index * SKU_BYTES + 8, rule)
+					.putInt(HEADER_BYTES + index * SKU_BYTES + 12, rules.length)
+					.putInt(HEADER_BYTES + index * SKU_BYTES + 16, bundleKey)
+					.putInt(HEADER_BYTES + index * SKU_BYTES + 20, keys.length)
+					.putInt(HEADER_BYTES + index * SKU_BYTES + 24, catalog.isInBundle(ordinal) ? IN_BUNDLE : 0);
+
+			for (int i = 0; i < sku.length(); i++) {
+				buffer.putChar(namesAt + (name + i) * 2, sku.charAt(i));
+			}
+			name += sku.length();
+
+			for (PricingRule pricingRule : rules) {
+				final int at = rulesAt + rule * RULE_BYTES;
+				buffer.putInt(at + 4, PricingRuleOrders.orderOf(pricingRule));
+				if (pricingRule instanceof IndividualPricingRule) {
+					buffer.putInt(at, INDIVIDUAL)
+							.putLong(at + 8, ((IndividualPricingRule) pricingRule).getPrice().getPence())
+							.putInt(at + 16, -1);
+				} else if (pricingRule instanceof MultiItemPricingRule) {
+					final MultiItemPricingRule multiItem = (MultiItemPricingRule) pricingRule;
+					buffer.putInt(at, MULTI_ITEM)
+							.putLong(at + 8, multiItem.getPrice().getPence())
+							.putInt(at + 16, offer);
+					buffer.putInt(offersAt + offer * OFFER_BYTES, offerData);
+					buffer.putInt(offerDataAt + offerData, 1)
+							.putInt(offerDataAt + offerData + 4, index)
+							.putLong(offerDataAt + offerData + 8, multiItem.getQuantity());
+					offerData += 4 + MEMBER_BYTES;
+					offer++;
+				} else {
+					throw new InvalidKataRequestException("Sorry! " + pricingRule.getClass().getName() + " cannot be written to a price catalog file.");
+				}
+				rule++;
+			}
+
+			for (int key : keys) {
+				buffer.putInt(bundleKeysAt + bundleKey * BUNDLE_KEY_BYTES, key);
+				bundleKey++;
+			}
+		}
+
+		for (int bundle = 0; bundle < bundleCount; bundle++) {
+			final BundlePricingRule bundleRule = (BundlePricingRule) catalog.bundleAt(bundle);
+			final int[] members = catalog.bundleOrdinals(bundle);
+			final long[] quantities = catalog.bundleQuantities(bundle);
+			final int at = bundlesAt + bundle * BUNDLE_BYTES;
+			buffer.putInt(at, PricingRuleOrders.orderOf(bundleRule))
+					.putInt(at + 4, offer)
+					.putLong(at + 8, bundleRule.getPrice().getPence());
+			buffer.putInt(offersAt + offer * OFFER_BYTES, offerData);
+			buffer.putInt(offerDataAt + offerData, members.length);
+			for (int member = 0; member < members.length; member++) {
+				buffer.putInt(offerDataAt + offerData + 4 + member * MEMBER_BYTES, skuIndexOf[members[member]])
+						.putLong(offerDataAt + offerData + 8 + member * MEMBER_BYTES, quantities[member]);
+			}
+			offerData += 4 + members.length * MEMBER_BYTES;
+			offer++;
+		}
+
+		buffer.clear();
+		return buffer;
+	}
+
+}
@@ -0,0 +1,343 @@
+package com.itv.kata.checkout;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.metrics.CheckoutMetrics;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.pricing.PricingRule.MutableUnit;
+import com.itv.kata.pricing.PricingStrategy;
+
+/**
+ * PriceResultCache remembers the totals of recent baskets, so a basket identical
+ * to one already priced, such as the same meal deal or coffee order, is totalled
+ * without applying any rule.
+ *
+ * A basket is keyed by its items and quantities in ordinal order together with
+ * the catalog it was priced with. Every compiled, published or mapped catalog
+ * has its own key, so a total is never served for prices other than the ones it
+ * was calculated with, and the totals of replaced catalogs are evicted like any
+ * other least recently used entry.
+ *
+ * The baskets are spread over stripes, each a least recently used map under a
+ * lock of its own, so tills totalling at the same time seldom wait for each
+ * other. A lookup takes one lock and builds its key in a buffer of the thread.
+ * A total from the cache tells the metrics about the same rule applications as
+ * pricing the basket did.
+ *
+ * A cache is only used by checkouts of one pricing strategy, as its totals
+ * depend on it.
+ *
+ */
+public final class PriceResultCache {
+
+	public static final int DEFAULT_MAX_BASKET_ITEMS = 32;
+
+	// At most this many stripes, and at least this many baskets per stripe, so small caches evict in exact LRU order.
+	private static final int MAX_STRIPES = 16;
+	private static final int MIN_STRIPE_SIZE = 64;
+
+	// Items and quantities of a basket, in ordinal order, with the catalog they were priced with.
+	private static final class BasketKey {
+		private long catalog;
+		private long[] entries;
+		private int length;
+		private int hash;
+
+		// The key of one thread's lookups, filled in for every basket.
+		private BasketKey() {
+			this.entries = new long[16];
+		}
+
+		private BasketKey(final long catalog, final long[] entries, final int hash) {
+			this.catalog = catalog;
+			this.entries = entries;
+			this.length = entries.length;
+			this.hash = hash;
+		}
+
+		private BasketKey copy() {
+			return new BasketKey(catalog, Arrays.copyOf(entries, length), hash);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof BasketKey))
+				return false;
+			final BasketKey other = (BasketKey) obj;
+			if (hash != other.hash || catalog != other.catalog || length != other.length)
+				return false;
+			for (int i = 0; i < length; i++) {
+				if (entries[i] != other.entries[i])
+					return false;
+			}
+			return true;
+		}
+	}
+
+	// A total with the rule applications pricing it told the metrics about.
+	private static final class Total {
+		private final long pence;
+		private final Class<? extends PricingRule>[] ruleTypes;
+		private final long[] applications;
+
+		private Total(final long pence, final Class<? extends PricingRule>[] ruleTypes, final long[] applications) {
+			this.pence = pence;
+			this.ruleTypes = ruleTypes;
+			this.applications = applications;
+		}
+
+		private void replay(final CheckoutMetrics metrics) {
+			for (int i = 0; i < ruleTypes.length; i++) {
+				metrics.ruleApplied(ruleTypes[i], applications[i]);
+			}
+		}
+	}
+
+	// Remembers the rule applications of a basket priced on a miss, and passes them on.
+	private static final class Recorder implements CheckoutMetrics {
+		private final CheckoutMetrics metrics;
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Class<? extends PricingRule>[] ruleTypes = new Class[4];
+		private long[] applications = new long[4];
+		private int size;
+
+		private Recorder(final CheckoutMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		public void scanned(final long quantity) {
+			metrics.scanned(quantity);
+		}
+
+		public void totalled(final long nanos) {
+			metrics.totalled(nanos);
+		}
+
+		public void ruleApplied(final Class<? extends PricingRule> ruleType, final long count) {
+			metrics.ruleApplied(ruleType, count);
+			if (size == ruleTypes.length) {
+				ruleTypes = Arrays.copyOf(ruleTypes, size * 2);
+				applications = Arrays.copyOf(applications, size * 2);
+			}
+			ruleTypes[size] = ruleType;
+			applications[size++] = count;
+		}
+
+		public void validationFailed() {
+			metrics.validationFailed();
+		}
+
+		private Total totalOf(final long pence) {
+			return new Total(pence, Arrays.copyOf(ruleTypes, size), Arrays.copyOf(applications, size));
+		}
+	}
+
+	private static final ThreadLocal<BasketKey> LOOKUPS = ThreadLocal.withInitial(BasketKey::new);
+	private static final ThreadLocal<int[]> ORDINALS = ThreadLocal.withInitial(() -> new int[16]);
+
+	private final int maximumSize;
+	private final int maxBasketItems;
+	// Least recently used first in every stripe.
+	private final LinkedHashMap<BasketKey, Total>[] stripes;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	// The strategy of the checkouts using this cache, set by the first of them.
+	private PricingStrategy pricingStrategy;
+
+	/**
+	 * @param maximumSize the number of baskets to remember.
+	 */
+	public PriceResultCache(final int maximumSize) {
+		this(maximumSize, DEFAULT_MAX_BASKET_ITEMS);
+	}
+
+	/**
+	 * @param maximumSize the number of baskets to remember.
+	 * @param maxBasketItems baskets with more different items are always priced, they are seldom repeated.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public PriceResultCache(final int maximumSize, final int maxBasketItems) {
+		if (maximumSize <= 0 || maxBasketItems <= 0) {
+			throw new InvalidKataRequestException("Sorry! Cache size and basket items must be positive.");
+		}
+		this.maximumSize = maximumSize;
+		this.maxBasketItems = maxBasketItems;
+		final int stripeCount = Math.max(1, Integer.highestOneBit(Math.min(MAX_STRIPES, maximumSize / MIN_STRIPE_SIZE)));
+		this.stripes = new LinkedHashMap[stripeCount];
+		for (int stripe = 0; stripe < stripeCount; stripe++) {
+			// The first stripes take what does not divide evenly.
+			final int stripeSize = maximumSize / stripeCount + (stripe < maximumSize % stripeCount ? 1 : 0);
+			stripes[stripe] = new LinkedHashMap<BasketKey, Total>(Math.min(stripeSize, 1 << 16) * 4 / 3 + 1, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<BasketKey, Total> eldest) {
+					if (size() > stripeSize) {
+						evictions.increment();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Binds the cache to the pricing strategy of a checkout.
+	 * @throws InvalidKataRequestException if checkouts of another strategy use the cache already.
+	 */
+	synchronized void bindTo(final PricingStrategy pricingStrategy) {
+		if (this.pricingStrategy == null) {
+			this.pricingStrategy = pricingStrategy;
+		} else if (this.pricingStrategy != pricingStrategy) {
+			throw new InvalidKataRequestException("Sorry! A PriceResultCache is only shared by checkouts of the same pricing strategy.");
+		}
+	}
+
+	/**
+	 * Gives you the total of the basket, from the cache if the same basket was
+	 * priced with the same catalog, else priced and remembered.
+	 * @param catalog the catalog of the basket.
+	 * @param basket the quantities of the items in the basket.
+	 * @param pricingStrategy how the rules of an item are combined, the one the cache is bound to.
+	 * @param unit the caller's unit the rules are applied with.
+	 * @param metrics told about the rules applied, null if they are not counted.
+	 * @return the price in pence.
+	 */
+	long priceOf(final PriceCatalog catalog, final ItemQuantityMap basket, final PricingStrategy pricingStrategy, final MutableUnit unit, final CheckoutMetrics metrics) {
+		if (basket.size() > maxBasketItems) {
+			return catalog.priceOf(basket, pricingStrategy, unit, metrics);
+		}
+		final BasketKey lookup = lookupOf(catalog, basket);
+		final LinkedHashMap<BasketKey, Total> stripe = stripeOf(lookup.hash);
+		Total total;
+		synchronized (stripe) {
+			total = stripe.get(lookup);
+		}
+		if (total != null) {
+			hits.increment();
+			if (metrics != null) {
+				total.replay(metrics);
+			}
+			return total.pence;
+		}
+		misses.increment();
+		// Priced outside the lock, two threads missing the same basket both price it.
+		final BasketKey key = lookup.copy();
+		final Recorder recorder = new Recorder(metrics == null ? CheckoutMetrics.NOOP : metrics);
+		total = recorder.totalOf(catalog.priceOf(basket, pricingStrategy, unit, recorder));
+		synchronized (stripe) {
+			stripe.put(key, total);
+		}
+		return total.pence;
+	}
+
+	private LinkedHashMap<BasketKey, Total> stripeOf(final int hash) {
+		return stripes[(hash ^ hash >>> 16) & (stripes.length - 1)];
+	}
+
+	/**
+	 * Fills the lookup key of the thread with the basket.
+	 */
+	private static BasketKey lookupOf(final PriceCatalog catalog, final ItemQuantityMap basket) {
+		int[] ordinals = ORDINALS.get();
+		if (ordinals.length < basket.size()) {
+			ordinals = new int[basket.size() * 2];
+			ORDINALS.set(ordinals);
+		}
+		int items = 0;
+		for (int slot = 0; slot < basket.capacity(); slot++) {
+			if (basket.ordinalAt(slot) >= 0 && basket.quantityAt(slot) != 0) {
+				ordinals[items++] = basket.ordinalAt(slot);
+			}
+		}
+		Arrays.sort(ordinals, 0, items);
+		final BasketKey lookup = LOOKUPS.get();
+		if (lookup.entries.length < items * 2) {
+			lookup.entries = new long[items * 4];
+		}
+		int hash = 1;
+		for (int i = 0; i < items; i++) {
+			lookup.entries[i * 2] = ordinals[i];
+			lookup.entries[i * 2 + 1] = basket.get(ordinals[i]);
+			hash = 31 * (31 * hash + Long.hashCode(ordinals[i])) + Long.hashCode(lookup.entries[i * 2 + 1]);
+		}
+		lookup.catalog = catalog.getSerial();
+		lookup.length = items * 2;
+		lookup.hash = 31 * Long.hashCode(lookup.catalog) + hash;
+		return lookup;
+	}
+
+	/**
+	 * @return the number of baskets totalled from the cache.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of baskets that had to be priced, without the ones too large to cache.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of totals evicted to keep the cache within its size.
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the share of baskets totalled from the cache, 0 before any basket.
+	 */
+	public double getHitRate() {
+		final long hitCount = hits.sum();
+		final long lookups = hitCount + misses.sum();
+		return lookups == 0 ? 0 : (double) hitCount / lookups;
+	}
+
+	/**
+	 * @return the number of baskets remembered.
+	 */
+	public int size() {
+		int size = 0;
+		for (LinkedHashMap<BasketKey, Total> stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Forgets every total, the statistics are kept.
+	 */
+	public void clear() {
+		for (LinkedHashMap<BasketKey, Total> stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PriceResultCache [size=" + size() + "/" + maximumSize + ", stripes=" + stripes.length + ", hits=" + hits.sum() + ", misses=" + misses.sum()
+				+ ", evictions=" + evictions.sum() + "]";
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.itv.kata.checkout;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.itv.kata.pricing.PricingRule;
+
+/**
+ * PricingRuleStore holds the current prices of a store as versioned, compiled
+ * snapshots, so prices can change during trading.
+ *
+ * Every update compiles a new PriceCatalog from a copy of the current rules and
+ * publishes it with one atomic write. New transactions take the latest catalog
+ * without locking, and transactions already started keep the catalog they were
+ * started with. Only updates are serialized, so checkout is never paused.
+ *
+ */
+public final class PricingRuleStore {
+
+	/**
+	 * A set of rule changes applied to the store as one update.
+	 */
+	public static final class Delta {
+
+		private final Set<PricingRule> added = new LinkedHashSet<PricingRule>();
+		private final Set<PricingRule> removed = new LinkedHashSet<PricingRule>();
+
+		public Delta add(final PricingRule rule) {
+			removed.remove(rule);
+			added.add(rule);
+			return this;
+		}
+
+		public Delta addAll(final Collection<? extends PricingRule> rules) {
+			for (PricingRule rule : rules) {
+				add(rule);
+			}
+			return this;
+		}
+
+		public Delta remove(final PricingRule rule) {
+			added.remove(rule);
+			removed.add(rule);
+			return this;
+		}
+
+		public Delta removeAll(final Collection<? extends PricingRule> rules) {
+			for (PricingRule rule : rules) {
+				remove(rule);
+			}
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "Delta [added=" + added.size() + ", removed=" + removed.size() + "]";
+		}
+	}
+
+	/**
+	 * @return an empty delta to fill in.
+	 */
+	public static Delta delta() {
+		return new Delta();
+	}
+
+	private final AtomicReference<PriceCatalog> catalog;
+
+	/**
+	 * @param pricingRules the initial pricing rules, published as version 1.
+	 */
+	public PricingRuleStore(final Set<PricingRule> pricingRules) {
+		this.catalog = new AtomicReference<PriceCatalog>(PriceCatalog.compile(pricingRules, 1));
+	}
+
+	/**
+	 * Gives you the latest published catalog, without locking.
+	 * @return the current catalog.
+	 */
+	public PriceCatalog getCatalog() {
+		return catalog.get();
+	}
+
+	/**
+	 * @return the version of the current catalog.
+	 */
+	public long getVersion() {
+		return catalog.get().getVersion();
+	}
+
+	/**
+	 * Replaces all the rules of the store.
+	 * @param pricingRules the new pricing rules.
+	 * @return the published catalog.
+	 */
+	public synchronized PriceCatalog publish(final Set<PricingRule> pricingRules) {
+		final PriceCatalog published = PriceCatalog.compile(pricingRules, catalog.get().getVersion() + 1);
+		catalog.set(published);
+		return published;
+	}
+
+	/**
+	 * Applies all the changes of the delta as one new version. The new catalog is
+	 * compiled aside while checkout carries on with the current one.
+	 * @param delta the rules to add and remove.
+	 * @return the published catalog.
+	 */
+	public synchronized PriceCatalog apply(final Delta delta) {
+		final Set<PricingRule> pricingRules = new HashSet<PricingRule>(catalog.get().getPricingRules());
+		pricingRules.removeAll(delta.removed);
+		pricingRules.addAll(delta.added);
+		return publish(pricingRules);
+	}
+
+	@Override
+	public String toString() {
+		return "PricingRuleStore [" + catalog.get() + "]";
+	}
+
+}
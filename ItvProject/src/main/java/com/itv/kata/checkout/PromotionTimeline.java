@@ -0,0 +1,283 @@
+package com.itv.kata.checkout;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.pricing.BundlePricingRule;
+import com.itv.kata.pricing.PricingRule;
+
+/**
+ * PromotionTimeline holds the prices of every moment: the rules always on sale,
+ * and promotions such as a happy hour or a weekend offer that are only valid
+ * within their windows.
+ *
+ * Every change of the active promotions is found and compiled when the timeline
+ * is built, so the catalog of a moment is picked by a binary search over the
+ * changes, without looking at a rule. The same active promotions share one
+ * catalog however often they recur, and each such catalog is the always on
+ * catalog with the promotions laid over it, as small as the promotions.
+ *
+ * While a promotion runs it replaces the always on rules of its item of the
+ * same type, a happy hour price the everyday price, and the item keeps its other
+ * rules, so a multi-buy promotion still has the everyday price for the rest.
+ * Two promotions of the same type for the same item can not run at the same
+ * time, the timeline is not built if their windows overlap.
+ * Transactions of any moment, now or back-dated for re-pricing, take their
+ * catalog from the same timeline.
+ *
+ */
+public final class PromotionTimeline {
+
+	// A promotion valid from from, inclusive, to to, exclusive, in epoch milliseconds.
+	private static final class Window {
+		private final PricingRule rule;
+		private final long from;
+		private final long to;
+
+		private Window(final PricingRule rule, final long from, final long to) {
+			this.rule = rule;
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	/**
+	 * Collects the promotions of a timeline.
+	 */
+	public static final class Builder {
+
+		private final Set<PricingRule> alwaysOn;
+		private final List<Window> windows = new ArrayList<Window>();
+
+		private Builder(final Set<PricingRule> alwaysOn) {
+			ValidationUtil.validatePricingRules(alwaysOn);
+			this.alwaysOn = new HashSet<PricingRule>(alwaysOn);
+		}
+
+		/**
+		 * @param rule the promotion.
+		 * @param from the first moment it is valid, in epoch milliseconds.
+		 * @param to the moment it ends, in epoch milliseconds.
+		 * @return Builder
+		 */
+		public Builder during(final PricingRule rule, final long from, final long to) {
+			if (rule == null) {
+				throw new InvalidKataRequestException("Sorry! Please provide the promotion.");
+			}
+			if (from >= to) {
+				throw new InvalidKataRequestException("Sorry! A promotion must end after it starts.");
+			}
+			windows.add(new Window(rule, from, to));
+			return this;
+		}
+
+		/**
+		 * Adds a promotion valid at the same time of the day, every day or on the given days of the week.
+		 * @param rule the promotion.
+		 * @param first the first day of the promotion.
+		 * @param last the last day of the promotion.
+		 * @param start the time it starts every day.
+		 * @param end the time it ends, the next day if not after the start.
+		 * @param zone the time zone of the store.
+		 * @param days the days of the week it starts on, every day if none.
+		 * @return Builder
+		 */
+		public Builder recurring(final PricingRule rule, final LocalDate first, final LocalDate last, final LocalTime start, final LocalTime end, final ZoneId zone,
+				final DayOfWeek... days) {
+			final Set<DayOfWeek> on = days.length == 0 ? EnumSet.allOf(DayOfWeek.class) : EnumSet.copyOf(Arrays.asList(days));
+			for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+				if (on.contains(day.getDayOfWeek())) {
+					final LocalDate endDay = end.isAfter(start) ? day : day.plusDays(1);
+					during(rule, day.atTime(start).atZone(zone).toInstant().toEpochMilli(), endDay.atTime(end).atZone(zone).toInstant().toEpochMilli());
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Compiles the catalog of every change of the active promotions.
+		 * @return PromotionTimeline
+		 * @throws InvalidKataRequestException if promotions of the same type for the same item overlap.
+		 */
+		public PromotionTimeline build() {
+			return new PromotionTimeline(alwaysOn, windows);
+		}
+	}
+
+	/**
+	 * @param alwaysOn the rules on sale at any time.
+	 * @return a builder to add the promotions to.
+	 */
+	public static Builder builder(final Set<PricingRule> alwaysOn) {
+		return new Builder(alwaysOn);
+	}
+
+	private final PriceCatalog alwaysOn;
+	// The moment every catalog starts to apply, ascending, the first one applies since ever.
+	private final long[] starts;
+	private final PriceCatalog[] catalogs;
+
+	private PromotionTimeline(final Set<PricingRule> alwaysOnRules, final List<Window> windows) {
+		this.alwaysOn = PriceCatalog.compile(alwaysOnRules);
+
+		// Net change of every promotion at every moment one starts or ends.
+		final TreeMap<Long, Map<PricingRule, Integer>> changes = new TreeMap<Long, Map<PricingRule, Integer>>();
+		for (Window window : windows) {
+			change(changes, window.from, window.rule, 1);
+			change(changes, window.to, window.rule, -1);
+		}
+
+		final Map<Item, List<PricingRule>> alwaysOnByItem = new HashMap<Item, List<PricingRule>>();
+		for (PricingRule rule : alwaysOnRules) {
+			if (!(rule instanceof BundlePricingRule)) {
+				List<PricingRule> itemRules = alwaysOnByItem.get(rule.getItem());
+				if (itemRules == null) {
+					itemRules = new ArrayList<PricingRule>(2);
+					alwaysOnByItem.put(rule.getItem(), itemRules);
+				}
+				itemRules.add(rule);
+			}
+		}
+
+		final Map<Set<PricingRule>, PriceCatalog> byPromotions = new HashMap<Set<PricingRule>, PriceCatalog>();
+		byPromotions.put(Collections.<PricingRule>emptySet(), alwaysOn);
+		final Map<PricingRule, Integer> active = new LinkedHashMap<PricingRule, Integer>();
+		final long[] starts = new long[changes.size() + 1];
+		final PriceCatalog[] catalogs = new PriceCatalog[changes.size() + 1];
+		starts[0] = Long.MIN_VALUE;
+		catalogs[0] = alwaysOn;
+		int count = 1;
+		for (Map.Entry<Long, Map<PricingRule, Integer>> change : changes.entrySet()) {
+			for (Map.Entry<PricingRule, Integer> promotion : change.getValue().entrySet()) {
+				final int windowsOpen = active.getOrDefault(promotion.getKey(), 0) + promotion.getValue();
+				if (windowsOpen == 0) {
+					active.remove(promotion.getKey());
+				} else {
+					active.put(promotion.getKey(), windowsOpen);
+				}
+			}
+			final Set<PricingRule> promotions = new HashSet<PricingRule>(active.keySet());
+			PriceCatalog catalog = byPromotions.get(promotions);
+			if (catalog == null) {
+				validateNoConflict(promotions, change.getKey());
+				catalog = layer(promotions, alwaysOnByItem);
+				byPromotions.put(promotions, catalog);
+			}
+			// Overlapping windows of the same promotions change nothing.
+			if (catalog != catalogs[count - 1]) {
+				starts[count] = change.getKey();
+				catalogs[count++] = catalog;
+			}
+		}
+		this.starts = Arrays.copyOf(starts, count);
+		this.catalogs = Arrays.copyOf(catalogs, count);
+	}
+
+	private static void change(final TreeMap<Long, Map<PricingRule, Integer>> changes, final long time, final PricingRule rule, final int delta) {
+		Map<PricingRule, Integer> change = changes.get(time);
+		if (change == null) {
+			change = new LinkedHashMap<PricingRule, Integer>();
+			changes.put(time, change);
+		}
+		change.merge(rule, delta, Integer::sum);
+	}
+
+	/**
+	 * Lays the promotions over the always on catalog. An item of the overlay keeps
+	 * only its overlay rules, so the always on rules of the item that no promotion
+	 * replaces are added to the overlay as well.
+	 */
+	private PriceCatalog layer(final Set<PricingRule> promotions, final Map<Item, List<PricingRule>> alwaysOnByItem) {
+		final Set<PricingRule> overlay = new HashSet<PricingRule>(promotions);
+		for (PricingRule promotion : promotions) {
+			if (!(promotion instanceof BundlePricingRule)) {
+				final List<PricingRule> itemRules = alwaysOnByItem.get(promotion.getItem());
+				if (itemRules != null) {
+					for (PricingRule rule : itemRules) {
+						if (!replaced(rule, promotions)) {
+							overlay.add(rule);
+						}
+					}
+				}
+			}
+		}
+		return new LayeredPriceCatalog(alwaysOn, PriceCatalog.compile(overlay));
+	}
+
+	private static void validateNoConflict(final Set<PricingRule> promotions, final long time) {
+		final Set<List<Object>> running = new HashSet<List<Object>>();
+		for (PricingRule promotion : promotions) {
+			if (!(promotion instanceof BundlePricingRule) && !running.add(Arrays.<Object>asList(promotion.getItem(), promotion.getClass()))) {
+				throw new InvalidKataRequestException("Sorry! Two " + promotion.getClass().getSimpleName() + " promotions of " + promotion.getItem()
+						+ " overlap at " + time + ".");
+			}
+		}
+	}
+
+	private static boolean replaced(final PricingRule rule, final Set<PricingRule> promotions) {
+		for (PricingRule promotion : promotions) {
+			if (promotion.getClass() == rule.getClass() && !(promotion instanceof BundlePricingRule) && promotion.getItem().equals(rule.getItem())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gives you the catalog of the given moment, by a binary search over the changes.
+	 * @param time the moment, in epoch milliseconds.
+	 * @return the catalog.
+	 */
+	public PriceCatalog catalogAt(final long time) {
+		return catalogs[indexOf(time)];
+	}
+
+	/**
+	 * @param time the moment, in epoch milliseconds.
+	 * @return the next moment the active promotions change, Long.MAX_VALUE if they never do again.
+	 */
+	public long nextChangeAfter(final long time) {
+		final int index = indexOf(time) + 1;
+		return index < starts.length ? starts[index] : Long.MAX_VALUE;
+	}
+
+	private int indexOf(final long time) {
+		final int index = Arrays.binarySearch(starts, time);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	/**
+	 * @return the catalog of the rules always on sale.
+	 */
+	public PriceCatalog getAlwaysOn() {
+		return alwaysOn;
+	}
+
+	/**
+	 * @return the number of times the active promotions change, and the start.
+	 */
+	public int size() {
+		return starts.length;
+	}
+
+	@Override
+	public String toString() {
+		return "PromotionTimeline [alwaysOn=" + alwaysOn + ", changes=" + (starts.length - 1) + "]";
+	}
+
+}
@@ -0,0 +1,199 @@
+package com.itv.kata.checkout;
+
+import java.util.Arrays;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule;
+
+/**
+ * Receipt is the line by line breakdown of a total: every rule applied, the
+ * quantity it priced, the price charged and the saving against the individual
+ * price of the items.
+ *
+ * It is filled by {@link KataSupermarketCheckout#calculateTotal(KataSupermarketCheckout.Transaction, Receipt)}
+ * in the same pass that calculates the total. The lines are kept in flat arrays
+ * that only ever grow, so a till reusing one receipt for every basket itemises
+ * its totals without allocating. A receipt is used by one thread at a time.
+ *
+ * A bundle is one line: the item the bundle was built for, the number of
+ * bundles and their price. A quantity no rule priced is a line without rule.
+ *
+ */
+public final class Receipt {
+
+	private Item[] items;
+	private PricingRule[] rules;
+	private long[] quantities;
+	private long[] prices;
+	private long[] savings;
+	private int lines;
+	private long total;
+	private long totalSavings;
+
+	// What every rule of one item priced, handed to the pricing strategy.
+	private long[] ruleQuantities = new long[4];
+	private long[] rulePrices = new long[4];
+
+	public Receipt() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity the number of lines to make room for up front.
+	 */
+	public Receipt(final int capacity) {
+		if (capacity < 0) {
+			throw new InvalidKataRequestException("Sorry! Receipt capacity can not be negative.");
+		}
+		items = new Item[capacity];
+		rules = new PricingRule[capacity];
+		quantities = new long[capacity];
+		prices = new long[capacity];
+		savings = new long[capacity];
+	}
+
+	/**
+	 * Empties the receipt for the next basket, keeping room for at least the given lines.
+	 */
+	void reset(final int capacity) {
+		Arrays.fill(items, 0, lines, null);
+		Arrays.fill(rules, 0, lines, null);
+		lines = 0;
+		total = 0;
+		totalSavings = 0;
+		if (items.length < capacity) {
+			grow(capacity);
+		}
+	}
+
+	void add(final Item item, final PricingRule rule, final long quantity, final long price, final long saving) {
+		if (lines == items.length) {
+			grow(Math.max(8, lines * 2));
+		}
+		items[lines] = item;
+		rules[lines] = rule;
+		quantities[lines] = quantity;
+		prices[lines] = price;
+		savings[lines] = saving;
+		totalSavings = Money.addPence(totalSavings, saving);
+		lines++;
+	}
+
+	void setTotal(final long total) {
+		this.total = total;
+	}
+
+	/**
+	 * Gives you the scratch quantities, one per rule of an item, cleared.
+	 */
+	long[] ruleQuantities(final int ruleCount) {
+		if (ruleQuantities.length < ruleCount) {
+			ruleQuantities = new long[ruleCount];
+			rulePrices = new long[ruleCount];
+		} else {
+			Arrays.fill(ruleQuantities, 0, ruleCount, 0);
+			Arrays.fill(rulePrices, 0, ruleCount, 0);
+		}
+		return ruleQuantities;
+	}
+
+	/**
+	 * Gives you the scratch prices, cleared by {@link #ruleQuantities(int)}.
+	 */
+	long[] rulePrices() {
+		return rulePrices;
+	}
+
+	private void grow(final int capacity) {
+		items = Arrays.copyOf(items, capacity);
+		rules = Arrays.copyOf(rules, capacity);
+		quantities = Arrays.copyOf(quantities, capacity);
+		prices = Arrays.copyOf(prices, capacity);
+		savings = Arrays.copyOf(savings, capacity);
+	}
+
+	/**
+	 * @return the number of lines.
+	 */
+	public int size() {
+		return lines;
+	}
+
+	/**
+	 * @param line the index of the line.
+	 * @return the item of the line, for a bundle the item it was built for.
+	 */
+	public Item getItem(final int line) {
+		return items[checked(line)];
+	}
+
+	/**
+	 * @param line the index of the line.
+	 * @return the rule applied, null if no rule priced the quantity.
+	 */
+	public PricingRule getRule(final int line) {
+		return rules[checked(line)];
+	}
+
+	/**
+	 * @param line the index of the line.
+	 * @return the quantity the rule priced, for a bundle the number of bundles.
+	 */
+	public long getQuantity(final int line) {
+		return quantities[checked(line)];
+	}
+
+	/**
+	 * @param line the index of the line.
+	 * @return the price charged, in pence.
+	 */
+	public long getPence(final int line) {
+		return prices[checked(line)];
+	}
+
+	/**
+	 * @param line the index of the line.
+	 * @return the saving against the individual price of the items, in pence, 0 if they have none.
+	 */
+	public long getSavingPence(final int line) {
+		return savings[checked(line)];
+	}
+
+	/**
+	 * @return the total of the basket.
+	 */
+	public Money getTotal() {
+		return Money.ofPence(total);
+	}
+
+	/**
+	 * @return the savings of every line.
+	 */
+	public Money getSavings() {
+		return Money.ofPence(totalSavings);
+	}
+
+	private int checked(final int line) {
+		if (line < 0 || line >= lines) {
+			throw new IndexOutOfBoundsException("Line " + line + " of a receipt of " + lines + " lines");
+		}
+		return line;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder receipt = new StringBuilder();
+		for (int line = 0; line < lines; line++) {
+			receipt.append(items[line]).append(" x").append(quantities[line]).append(' ')
+					.append(Money.ofPence(prices[line]));
+			if (savings[line] > 0) {
+				receipt.append(" (saving ").append(Money.ofPence(savings[line])).append(')');
+			}
+			receipt.append('\n');
+		}
+		return receipt.append("Total ").append(Money.ofPence(total)).append(", saving ").append(Money.ofPence(totalSavings)).toString();
+	}
+
+}
@@ -0,0 +1,33 @@
+package com.itv.kata.checkout;
+
+/**
+ * The outcome of a scan that does not throw, see
+ * {@link KataSupermarketCheckout.Transaction#tryScan(com.itv.kata.model.Item)}.
+ *
+ */
+public enum ScanResult {
+
+	/**
+	 * The item was added to the basket.
+	 */
+	ACCEPTED,
+
+	/**
+	 * The item has not been priced, for example a misread barcode. Nothing was added.
+	 */
+	UNKNOWN_SKU,
+
+	/**
+	 * The scan was invalid, for example no item or a quantity that is not positive,
+	 * or the total of the basket would be too large. Nothing was added.
+	 */
+	REJECTED;
+
+	/**
+	 * @return true if the item was added to the basket.
+	 */
+	public boolean isAccepted() {
+		return this == ACCEPTED;
+	}
+
+}
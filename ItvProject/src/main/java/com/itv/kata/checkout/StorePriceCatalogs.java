@@ -0,0 +1,100 @@
+package com.itv.kata.checkout;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.pricing.PricingRule;
+
+/**
+ * StorePriceCatalogs gives every store its view of the prices: the national
+ * catalog of a PricingRuleStore with the store's own rules laid over it.
+ *
+ * The overrides of a store are compiled once, when they are set. The layer
+ * over the national catalog is built when the store first asks for it and again
+ * only after the national prices are published, so memory grows with the
+ * overrides of the stores, not with the number of stores times the catalog.
+ *
+ */
+public final class StorePriceCatalogs {
+
+	// The compiled overrides of one store and its last layer over the national catalog.
+	private static final class Store {
+		private final PriceCatalog overrides;
+		private volatile LayeredPriceCatalog catalog;
+
+		private Store(final PriceCatalog overrides) {
+			this.overrides = overrides;
+		}
+	}
+
+	private final PricingRuleStore national;
+	private final ConcurrentMap<String, Store> stores = new ConcurrentHashMap<String, Store>();
+
+	/**
+	 * @param national the prices every store starts from.
+	 */
+	public StorePriceCatalogs(final PricingRuleStore national) {
+		this.national = national;
+	}
+
+	/**
+	 * Replaces the overrides of the store, new transactions of the store price with them.
+	 * @param store the id of the store.
+	 * @param overrides the store's own pricing rules, empty if it sells at national prices.
+	 */
+	public void setOverrides(final String store, final Set<PricingRule> overrides) {
+		if (store == null) {
+			throw new InvalidKataRequestException("Sorry! Please provide the store.");
+		}
+		if (overrides == null || overrides.isEmpty()) {
+			stores.remove(store);
+		} else {
+			stores.put(store, new Store(PriceCatalog.compile(overrides)));
+		}
+	}
+
+	/**
+	 * @param store the id of the store.
+	 * @return the store's own pricing rules, empty if it sells at national prices.
+	 */
+	public Set<PricingRule> getOverrides(final String store) {
+		final Store overrides = stores.get(store);
+		return overrides == null ? Collections.<PricingRule>emptySet() : overrides.overrides.getPricingRules();
+	}
+
+	/**
+	 * Gives you the current prices of the store, without locking once its layer is built.
+	 * @param store the id of the store.
+	 * @return the store's catalog, the national one if the store has no overrides.
+	 */
+	public PriceCatalog getCatalog(final String store) {
+		final PriceCatalog base = national.getCatalog();
+		final Store overrides = stores.get(store);
+		if (overrides == null) {
+			return base;
+		}
+		LayeredPriceCatalog catalog = overrides.catalog;
+		if (catalog == null || catalog.getBase() != base) {
+			// Two tills of the store may both build it, either layer is correct.
+			catalog = new LayeredPriceCatalog(base, overrides.overrides);
+			overrides.catalog = catalog;
+		}
+		return catalog;
+	}
+
+	/**
+	 * @return the number of stores with overrides.
+	 */
+	public int size() {
+		return stores.size();
+	}
+
+	@Override
+	public String toString() {
+		return "StorePriceCatalogs [national=" + national.getCatalog() + ", stores=" + stores.size() + "]";
+	}
+
+}
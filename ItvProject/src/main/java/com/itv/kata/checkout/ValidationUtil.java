@@ -43,5 +43,55 @@ public final class ValidationUtil {
 		
 		return true;
     }
-    
+
+    /**
+     * Return true if item in basket has valid pricing rule in the compiled catalog. Else should throw the exception.
+     * @param item - item to put in basket.
+     * @param catalog the compiled pricing rules.
+     * @return  true if item has pricing rules.
+     */
+    public static boolean validateItem(Item item, final PriceCatalog catalog) {
+		// If item is in the catalog, then fine. Else tell the customer to remove the item.
+		if(!catalog.contains(item)) {
+			throw notPriced(item);
+		}
+
+		return true;
+    }
+
+    /**
+     * Return true if the quantity to put in basket is positive. Else should throw the exception.
+     * @param quantity the quantity of an item.
+     * @return true if the quantity is positive.
+     */
+    public static boolean validateQuantity(final long quantity) {
+		if(quantity <= 0) {
+			throw new InvalidKataRequestException("Please provide a positive quantity, " + quantity + " is not allowed.");
+		}
+
+		return true;
+    }
+
+    /**
+     * Gives you the ordinal of the item in the compiled catalog. Throws the exception if the item has no pricing rule.
+     * @param item - item to put in basket.
+     * @param catalog the compiled pricing rules.
+     * @return the ordinal of the item in the catalog.
+     */
+    public static int validateItemOrdinal(Item item, final PriceCatalog catalog) {
+		final int ordinal = catalog.pricedOrdinalOf(item);
+		if(ordinal < 0) {
+			throw notPriced(item);
+		}
+
+		return ordinal;
+    }
+
+    /**
+     * Unknown SKUs are common at a busy till, they are rejected without a stack trace.
+     */
+    private static InvalidKataRequestException notPriced(final Item item) {
+    	return new InvalidKataRequestException("Sorry!" + item + " has not been priced yet. Please remove this item from basket.", false);
+    }
+
 }
@@ -15,6 +15,16 @@ public class InvalidKataRequestException extends RuntimeException {
         this.message = message;
     }
 
+    /**
+     * @param message
+     * @param writableStackTrace false for expected rejections, such as an unknown SKU, that
+     *        are thrown often and need no stack trace, which is the costly part of throwing.
+     */
+    public InvalidKataRequestException(String message, boolean writableStackTrace) {
+        super(null, null, false, writableStackTrace);
+        this.message = message;
+    }
+
     /**
      * @return
      */
@@ -0,0 +1,62 @@
+package com.itv.kata.metrics;
+
+import com.itv.kata.pricing.PricingRule;
+
+/**
+ * CheckoutMetrics is told what happens inside the checkout: scans, totals and
+ * their latency, the rules applied and the requests rejected by validation.
+ *
+ * It is called on the hot path of every scanner and till, so implementations
+ * must be thread safe, must not block and should not allocate. The checkout
+ * uses {@link #NOOP} unless it is given other metrics, and does not even read
+ * the clock then.
+ *
+ */
+public interface CheckoutMetrics {
+
+	/**
+	 * Metrics that record nothing.
+	 */
+	CheckoutMetrics NOOP = new CheckoutMetrics() {
+		public void scanned(long quantity) {
+		}
+
+		public void totalled(long nanos) {
+		}
+
+		public void ruleApplied(Class<? extends PricingRule> ruleType, long applications) {
+		}
+
+		public void validationFailed() {
+		}
+
+		@Override
+		public String toString() {
+			return "CheckoutMetrics.NOOP";
+		}
+	};
+
+	/**
+	 * @param quantity the quantity of an item added to a basket.
+	 */
+	void scanned(long quantity);
+
+	/**
+	 * @param nanos how long calculating the total of a basket took.
+	 */
+	void totalled(long nanos);
+
+	/**
+	 * @param ruleType the type of the rule.
+	 * @param applications the number of basket lines the rules of this type priced part of: every
+	 *        rule counts once for each item it priced some of, and a bundle once however many
+	 *        times it applied, whether the total is itemised, cached or not.
+	 */
+	void ruleApplied(Class<? extends PricingRule> ruleType, long applications);
+
+	/**
+	 * A scan was rejected with an InvalidKataRequestException.
+	 */
+	void validationFailed();
+
+}
@@ -0,0 +1,185 @@
+package com.itv.kata.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.pricing.PricingRule;
+
+/**
+ * CheckoutMetrics that keep the statistics in memory, for JMX or an exporter.
+ *
+ * Counters are LongAdders and the latency of totals a LatencyHistogram, so
+ * recording never takes a lock. Reading the statistics goes on while they are
+ * recorded, and may miss the events recorded at the same time.
+ *
+ */
+public final class CheckoutStatistics implements CheckoutMetrics, CheckoutStatisticsMXBean {
+
+	public static final String DEFAULT_OBJECT_NAME = "com.itv.kata:type=CheckoutStatistics";
+
+	private final LongAdder scans = new LongAdder();
+	private final LongAdder totals = new LongAdder();
+	private final LongAdder validationFailures = new LongAdder();
+	private final LatencyHistogram totalLatency = new LatencyHistogram();
+	private final ConcurrentHashMap<Class<? extends PricingRule>, LongAdder> ruleApplications = new ConcurrentHashMap<Class<? extends PricingRule>, LongAdder>();
+	private final ExponentialRate scanRate;
+
+	public CheckoutStatistics() {
+		this(System::nanoTime);
+	}
+
+	/**
+	 * @param clock the time in nanoseconds the scan rate is measured with.
+	 */
+	CheckoutStatistics(final LongSupplier clock) {
+		this.scanRate = new ExponentialRate(scans::sum, clock);
+	}
+
+	@Override
+	public void scanned(final long quantity) {
+		scans.add(quantity);
+	}
+
+	@Override
+	public void totalled(final long nanos) {
+		totals.increment();
+		totalLatency.record(nanos);
+	}
+
+	@Override
+	public void ruleApplied(final Class<? extends PricingRule> ruleType, final long applications) {
+		LongAdder count = ruleApplications.get(ruleType);
+		if (count == null) {
+			count = ruleApplications.computeIfAbsent(ruleType, type -> new LongAdder());
+		}
+		count.add(applications);
+	}
+
+	@Override
+	public void validationFailed() {
+		validationFailures.increment();
+	}
+
+	@Override
+	public long getScanCount() {
+		return scans.sum();
+	}
+
+	@Override
+	public double getOneMinuteScansPerSecond() {
+		return scanRate.getRatePerSecond();
+	}
+
+	@Override
+	public long getTotalCount() {
+		return totals.sum();
+	}
+
+	@Override
+	public long getTotalLatencyP50Nanos() {
+		return totalLatency.getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getTotalLatencyP99Nanos() {
+		return totalLatency.getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getTotalLatencyP999Nanos() {
+		return totalLatency.getValueAtPercentile(99.9);
+	}
+
+	@Override
+	public long getTotalLatencyMaxNanos() {
+		return totalLatency.getMaxValue();
+	}
+
+	/**
+	 * @return the latency of totals.
+	 */
+	public LatencyHistogram getTotalLatency() {
+		return totalLatency;
+	}
+
+	@Override
+	public long getValidationFailureCount() {
+		return validationFailures.sum();
+	}
+
+	/**
+	 * @param ruleType the type of the rule.
+	 * @return the number of basket lines the rules of this type priced part of.
+	 */
+	public long getRuleApplicationCount(final Class<? extends PricingRule> ruleType) {
+		final LongAdder count = ruleApplications.get(ruleType);
+		return count == null ? 0 : count.sum();
+	}
+
+	@Override
+	public Map<String, Long> getRuleApplicationCounts() {
+		final Map<String, Long> counts = new TreeMap<String, Long>();
+		for (Map.Entry<Class<? extends PricingRule>, LongAdder> entry : ruleApplications.entrySet()) {
+			counts.put(entry.getKey().getSimpleName(), entry.getValue().sum());
+		}
+		return counts;
+	}
+
+	@Override
+	public void reset() {
+		scans.reset();
+		totals.reset();
+		validationFailures.reset();
+		totalLatency.reset();
+		ruleApplications.clear();
+		scanRate.reset();
+	}
+
+	/**
+	 * Hands every statistic to the given exporter.
+	 * @param exporter the exporter.
+	 */
+	public void exportTo(final MetricsExporter exporter) {
+		exporter.counter("checkout.scans", getScanCount());
+		exporter.gauge("checkout.scans.per.second.1m", getOneMinuteScansPerSecond());
+		exporter.counter("checkout.totals", getTotalCount());
+		exporter.gauge("checkout.total.latency.p50", getTotalLatencyP50Nanos());
+		exporter.gauge("checkout.total.latency.p99", getTotalLatencyP99Nanos());
+		exporter.gauge("checkout.total.latency.p999", getTotalLatencyP999Nanos());
+		exporter.gauge("checkout.total.latency.max", getTotalLatencyMaxNanos());
+		exporter.counter("checkout.validation.failures", getValidationFailureCount());
+		for (Map.Entry<String, Long> entry : getRuleApplicationCounts().entrySet()) {
+			exporter.counter("checkout.rules." + entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Registers these statistics with the platform MBean server.
+	 * @param objectName the JMX name, for example {@link #DEFAULT_OBJECT_NAME}.
+	 * @return the registered name.
+	 */
+	public ObjectName registerMBean(final String objectName) {
+		try {
+			final ObjectName name = new ObjectName(objectName);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			return name;
+		} catch (JMException e) {
+			throw new InvalidKataRequestException("Sorry! Checkout statistics can not be registered as " + objectName + ": " + e.getMessage());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CheckoutStatistics [scans=" + getScanCount() + ", totals=" + getTotalCount() + ", p99=" + getTotalLatencyP99Nanos()
+				+ "ns, validationFailures=" + getValidationFailureCount() + ", rules=" + getRuleApplicationCounts() + "]";
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.itv.kata.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link CheckoutStatistics}.
+ *
+ */
+public interface CheckoutStatisticsMXBean {
+
+	long getScanCount();
+
+	/**
+	 * @return the number of scanned items per second, exponentially weighted over the last minute.
+	 *         Use the scan count for the rate over another window.
+	 */
+	double getOneMinuteScansPerSecond();
+
+	long getTotalCount();
+
+	long getTotalLatencyP50Nanos();
+
+	long getTotalLatencyP99Nanos();
+
+	long getTotalLatencyP999Nanos();
+
+	long getTotalLatencyMaxNanos();
+
+	long getValidationFailureCount();
+
+	/**
+	 * @return the applications by the simple name of the rule type.
+	 */
+	Map<String, Long> getRuleApplicationCounts();
+
+	void reset();
+
+}
@@ -0,0 +1,75 @@
+package com.itv.kata.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate per second of a growing count, exponentially weighted over the last
+ * minute in the manner of the Unix load average. Traffic that stops shows in
+ * the rate within a minute, however long the count has been running.
+ *
+ * The count is sampled every five seconds, when the rate is read, so counting
+ * costs nothing more than the count itself. Only reading takes a lock.
+ *
+ */
+public final class ExponentialRate {
+
+	static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(5);
+	private static final double TICKS_PER_SECOND = 1e9 / TICK_NANOS;
+	// Weight of the latest tick, so a tick weighs 1/e of what it did after a minute.
+	private static final double ALPHA = 1 - Math.exp(-5.0 / 60);
+	// After this many ticks the weight of the rate before them is below 1e-36.
+	private static final long MAX_TICKS = 1000;
+
+	private final LongSupplier count;
+	private final LongSupplier clock;
+	private long lastTick;
+	private long lastCount;
+	private double rate;
+	private boolean sampled;
+
+	/**
+	 * @param count the count, only ever growing until it is reset.
+	 * @param clock the time in nanoseconds, for example System::nanoTime.
+	 */
+	public ExponentialRate(final LongSupplier count, final LongSupplier clock) {
+		this.count = count;
+		this.clock = clock;
+		this.lastTick = clock.getAsLong();
+		this.lastCount = count.getAsLong();
+	}
+
+	/**
+	 * @return the rate per second over the last minute, as of the last five seconds.
+	 */
+	public synchronized double getRatePerSecond() {
+		final long ticks = (clock.getAsLong() - lastTick) / TICK_NANOS;
+		if (ticks > 0) {
+			final long current = count.getAsLong();
+			// What was counted since the last tick is spread over the ticks it took.
+			final double sample = (current - lastCount) * TICKS_PER_SECOND / ticks;
+			if (!sampled || ticks >= MAX_TICKS) {
+				rate = sample;
+				sampled = true;
+			} else {
+				for (long tick = 0; tick < ticks; tick++) {
+					rate += ALPHA * (sample - rate);
+				}
+			}
+			lastTick += ticks * TICK_NANOS;
+			lastCount = current;
+		}
+		return rate;
+	}
+
+	/**
+	 * Starts again from a rate of 0, after the count was reset.
+	 */
+	public synchronized void reset() {
+		lastTick = clock.getAsLong();
+		lastCount = count.getAsLong();
+		rate = 0;
+		sampled = false;
+	}
+
+}
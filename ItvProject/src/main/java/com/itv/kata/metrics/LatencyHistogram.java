@@ -0,0 +1,106 @@
+package com.itv.kata.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations in nanoseconds, in the manner of HdrHistogram.
+ *
+ * Values below 32 have a bucket each, larger values share buckets of 16 per
+ * power of two, so every value is recorded with a relative error below 1/16
+ * across the whole range of a long, in a fixed array of counters.
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int EXACT = 32;
+	private static final int SUB_BUCKETS = 16;
+	private static final int BUCKETS = EXACT + (63 - 5 + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * @param nanos the duration, negative durations are recorded as 0.
+	 */
+	public void record(final long nanos) {
+		counts.incrementAndGet(bucketOf(Math.max(0, nanos)));
+	}
+
+	static int bucketOf(final long value) {
+		if (value < EXACT) {
+			return (int) value;
+		}
+		final int shift = 63 - Long.numberOfLeadingZeros(value) - 4;
+		return EXACT + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	// The largest value recorded into the bucket.
+	static long highestValueOf(final int bucket) {
+		if (bucket < EXACT) {
+			return bucket;
+		}
+		final int shift = (bucket - EXACT) / SUB_BUCKETS + 1;
+		final long subBucket = (bucket - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+		final long highest = ((subBucket + 1) << shift) - 1;
+		return highest < 0 ? Long.MAX_VALUE : highest;
+	}
+
+	/**
+	 * @return the number of recorded durations.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			count += counts.get(bucket);
+		}
+		return count;
+	}
+
+	/**
+	 * Gives you the duration the given percentage of the recorded durations are at most,
+	 * up to the precision of the buckets. Recording goes on while it is read.
+	 * @param percentile the percentage, for example 99.9.
+	 * @return the duration in nanoseconds, 0 if nothing was recorded.
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		final long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			snapshot[bucket] = counts.get(bucket);
+			count += snapshot[bucket];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += snapshot[bucket];
+			if (seen >= rank) {
+				return highestValueOf(bucket);
+			}
+		}
+		return highestValueOf(BUCKETS - 1);
+	}
+
+	/**
+	 * @return the largest recorded duration, up to the precision of the buckets.
+	 */
+	public long getMaxValue() {
+		for (int bucket = BUCKETS - 1; bucket >= 0; bucket--) {
+			if (counts.get(bucket) > 0) {
+				return highestValueOf(bucket);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Forgets every recorded duration.
+	 */
+	public void reset() {
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			counts.set(bucket, 0);
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.itv.kata.metrics;
+
+/**
+ * MetricsExporter publishes checkout metrics to a monitoring system, one call per
+ * metric, see {@link CheckoutStatistics#exportTo(MetricsExporter)}.
+ *
+ */
+public interface MetricsExporter {
+
+	/**
+	 * @param name the name of the metric, for example checkout.scans.
+	 * @param value the count since the statistics were started.
+	 */
+	void counter(String name, long value);
+
+	/**
+	 * @param name the name of the metric, for example checkout.total.latency.p99.
+	 * @param value the current value.
+	 */
+	void gauge(String name, double value);
+
+}
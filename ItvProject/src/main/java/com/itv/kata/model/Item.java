@@ -3,32 +3,56 @@ package com.itv.kata.model;
 public final class Item {
 
     private final String sku;
+    // Hash of the sku, computed once as every scan looks the item up.
+    private final int hash;
+    // Dense id given by the ItemRegistry, -1 if the item is not interned.
+    private final int id;
 
     public Item(String sku) {
+        this(sku, -1);
+    }
+
+    Item(String sku, int id) {
         this.sku = sku;
+        this.id = id;
+        this.hash = 31 + ((sku == null) ? 0 : sku.hashCode());
     }
 
     public String getSku() {
         return sku;
     }
 
+    /**
+     * @return the id of the item in the ItemRegistry, -1 if the item is not interned.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return true if this is the canonical instance of the item in the ItemRegistry.
+     */
+    public boolean isInterned() {
+        return id >= 0;
+    }
+
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((sku == null) ? 0 : sku.hashCode());
-        return result;
+        return hash;
     }
 
     @Override
     public boolean equals(Object obj) {
         if (this == obj)
             return true;
-        if (obj == null)
-            return false;
-        if (getClass() != obj.getClass())
+        if (!(obj instanceof Item))
             return false;
         Item other = (Item) obj;
+        // There is only one interned instance of a sku.
+        if (id >= 0 && other.id >= 0)
+            return false;
+        if (hash != other.hash)
+            return false;
         if (sku == null) {
             if (other.sku != null)
                 return false;
@@ -0,0 +1,90 @@
+package com.itv.kata.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+
+/**
+ * ItemRegistry keeps one canonical Item per SKU and gives it a dense int id.
+ *
+ * Interned items are equal only to themselves, so comparing two of them is an
+ * identity check, and their id can index arrays, as the price catalogs do for
+ * the items they price. Items created from barcodes are interned once, and the
+ * duplicates are left to the garbage collector.
+ *
+ * The registry is shared by the whole application and never forgets a SKU, so
+ * only SKUs that are known to be sold should be interned, not every scanned barcode.
+ *
+ */
+public final class ItemRegistry {
+
+	private static final ConcurrentHashMap<String, Item> ITEMS = new ConcurrentHashMap<String, Item>();
+	// Items by id, only grown while holding the lock of the registry.
+	private static volatile Item[] byId = new Item[1024];
+	private static int size;
+
+	private ItemRegistry() {
+	}
+
+	/**
+	 * Gives you the canonical item of the given SKU, interning it the first time.
+	 * @param sku the SKU.
+	 * @return the interned item.
+	 */
+	public static Item intern(final String sku) {
+		if (sku == null) {
+			throw new InvalidKataRequestException("Sorry! Items without SKU can not be interned.");
+		}
+		final Item item = ITEMS.get(sku);
+		return item != null ? item : register(sku);
+	}
+
+	/**
+	 * Gives you the canonical instance of the given item, interning it the first time.
+	 * Items without SKU are returned as they are.
+	 * @param item the item.
+	 * @return the interned item.
+	 */
+	public static Item intern(final Item item) {
+		if (item.isInterned() || item.getSku() == null) {
+			return item;
+		}
+		return intern(item.getSku());
+	}
+
+	/**
+	 * @param id the id of an interned item.
+	 * @return the interned item with the given id.
+	 */
+	public static Item itemOf(final int id) {
+		final Item[] items = byId;
+		if (id < 0 || id >= items.length || items[id] == null) {
+			throw new InvalidKataRequestException("Sorry! No item has the id " + id + ".");
+		}
+		return items[id];
+	}
+
+	/**
+	 * @return the number of interned items, ids are below it.
+	 */
+	public static synchronized int size() {
+		return size;
+	}
+
+	private static synchronized Item register(final String sku) {
+		Item item = ITEMS.get(sku);
+		if (item == null) {
+			item = new Item(sku, size);
+			Item[] items = byId;
+			if (size == items.length) {
+				items = Arrays.copyOf(items, size * 2);
+			}
+			items[size++] = item;
+			byId = items;
+			ITEMS.put(sku, item);
+		}
+		return item;
+	}
+
+}
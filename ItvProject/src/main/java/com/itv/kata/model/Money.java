@@ -0,0 +1,133 @@
+package com.itv.kata.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+
+/**
+ * Money is an immutable amount in pence.
+ *
+ * Prices are held and added up as long pence everywhere in the checkout, and
+ * only converted to GBP when they are given or shown. The arithmetic is checked,
+ * so a total too large for a long is rejected instead of silently wrapping.
+ *
+ */
+public final class Money implements Comparable<Money> {
+
+	public static final Money ZERO = new Money(0);
+
+	private static final BigDecimal PENCE_IN_POUND = new BigDecimal(100);
+
+	/**
+	 * @param pence the amount in pence.
+	 * @return Money of the given pence.
+	 */
+	public static Money ofPence(final long pence) {
+		return pence == 0 ? ZERO : new Money(pence);
+	}
+
+	/**
+	 * @param gbp the amount in GBP, fractions of a penny are dropped.
+	 * @return Money of the given GBP.
+	 */
+	public static Money ofGBP(final BigDecimal gbp) {
+		return ofPence(gbp.multiply(PENCE_IN_POUND).setScale(2, RoundingMode.CEILING).longValue());
+	}
+
+	/**
+	 * Adds two amounts in pence.
+	 * @param pence the amount in pence.
+	 * @param otherPence the amount in pence to add.
+	 * @return the sum in pence.
+	 * @throws InvalidKataRequestException if the sum is too large.
+	 */
+	public static long addPence(final long pence, final long otherPence) {
+		try {
+			return Math.addExact(pence, otherPence);
+		} catch (ArithmeticException e) {
+			throw new InvalidKataRequestException("Sorry! The total of " + pence + "p and " + otherPence + "p is too large.");
+		}
+	}
+
+	/**
+	 * Multiplies an amount in pence by a quantity.
+	 * @param pence the amount in pence.
+	 * @param quantity the quantity.
+	 * @return the product in pence.
+	 * @throws InvalidKataRequestException if the product is too large.
+	 */
+	public static long multiplyPence(final long pence, final long quantity) {
+		try {
+			return Math.multiplyExact(pence, quantity);
+		} catch (ArithmeticException e) {
+			throw new InvalidKataRequestException("Sorry! " + quantity + " at " + pence + "p is too large.");
+		}
+	}
+
+	private final long pence;
+
+	private Money(final long pence) {
+		this.pence = pence;
+	}
+
+	/**
+	 * @return the amount in pence.
+	 */
+	public long getPence() {
+		return pence;
+	}
+
+	/**
+	 * @param other the amount to add.
+	 * @return the sum.
+	 */
+	public Money plus(final Money other) {
+		return ofPence(addPence(pence, other.pence));
+	}
+
+	/**
+	 * @param quantity the quantity.
+	 * @return this amount multiplied by the quantity.
+	 */
+	public Money times(final long quantity) {
+		return ofPence(multiplyPence(pence, quantity));
+	}
+
+	/**
+	 * @return the amount in GBP with two decimals.
+	 */
+	public BigDecimal toGBP() {
+		BigDecimal gbp = new BigDecimal(pence).setScale(2, RoundingMode.CEILING);
+		gbp = gbp.divide(PENCE_IN_POUND).setScale(2, RoundingMode.CEILING);
+		return gbp;
+	}
+
+	@Override
+	public int compareTo(final Money other) {
+		return Long.compare(pence, other.pence);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (pence ^ (pence >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		Money other = (Money) obj;
+		return pence == other.pence;
+	}
+
+	@Override
+	public String toString() {
+		return pence + "p";
+	}
+
+}
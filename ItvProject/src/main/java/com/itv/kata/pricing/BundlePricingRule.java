@@ -0,0 +1,205 @@
+package com.itv.kata.pricing;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+
+/**
+ * This class contains the builder to build a bundle price rule across
+ * different items, for example a meal deal.
+ *
+ * Example you can - Buy items x, y and z together at special price p. so you
+ * need to build a price rule using rule(x).and(y).and(z).atPrice(p);
+ *
+ * Bundles are applied before the rules of the single items, and the items they
+ * use are not priced again.
+ *
+ */
+@PricingRuleOrder(2)
+public final class BundlePricingRule implements PricingRule {
+
+    /**
+     * Build the bundle price rule configuration for given items and price.
+     */
+    public static class BundlePricingRuleBuilder {
+
+        private final Map<Item, Long> quantities = new LinkedHashMap<Item, Long>();
+
+        public BundlePricingRuleBuilder(final Item item) {
+            and(item);
+        }
+
+        public BundlePricingRuleBuilder(final Item item, final long quantity) {
+            and(item, quantity);
+        }
+
+        /**
+         * Adds one more of the item to the bundle.
+         * @param item - item in the bundle.
+         * @return BundlePricingRuleBuilder
+         */
+        public BundlePricingRuleBuilder and(final Item item) {
+            return and(item, 1);
+        }
+
+        /**
+         * Adds the quantity of the item to the bundle.
+         * @param item - item in the bundle.
+         * @param quantity - quantity of the item in the bundle.
+         * @return BundlePricingRuleBuilder
+         * @throws InvalidKataRequestException if the quantity is not positive.
+         */
+        public BundlePricingRuleBuilder and(final Item item, final long quantity) {
+            if (quantity <= 0) {
+                throw new InvalidKataRequestException("Sorry! A bundle needs a positive quantity of " + item + ", " + quantity + " is not allowed.");
+            }
+            final Long current = quantities.get(item);
+            quantities.put(item, current == null ? quantity : current + quantity);
+            return this;
+        }
+
+        public BundlePricingRule atPrice(final BigDecimal price) {
+            return atPrice(Money.ofGBP(price));
+        }
+
+        public BundlePricingRule atPrice(final Money price) {
+            final Item[] items = quantities.keySet().toArray(new Item[quantities.size()]);
+            final long[] itemQuantities = new long[items.length];
+            for (int i = 0; i < items.length; i++) {
+                itemQuantities[i] = quantities.get(items[i]);
+            }
+            return new BundlePricingRule(items, itemQuantities, price.getPence());
+        }
+    }
+
+    /**
+     * Gives you bundle price builder starting with the given item.
+     * @param item - first item of the bundle.
+     * @return BundlePricingRuleBuilder
+     */
+    public static BundlePricingRuleBuilder bundlePricingRuleFor(final Item item) {
+        return new BundlePricingRuleBuilder(item);
+    }
+
+    /**
+     * Gives you bundle price builder starting with the quantity of the given item.
+     * @param item - first item of the bundle.
+     * @param quantity - quantity of the item in the bundle.
+     * @return BundlePricingRuleBuilder
+     */
+    public static BundlePricingRuleBuilder bundlePricingRuleFor(final Item item, final long quantity) {
+        return new BundlePricingRuleBuilder(item, quantity);
+    }
+
+    private final Item[] items;
+    private final long[] quantities;
+    // Price is in pence.
+    private final long price;
+
+    /**
+     * Constructor for given items, their quantities and the price of the bundle.
+     * @param items - the items in the bundle.
+     * @param quantities - the quantity of every item in the bundle.
+     * @param price - the price of the bundle in pence.
+     */
+    private BundlePricingRule(final Item[] items, final long[] quantities, final long price) {
+        this.items = items;
+        this.quantities = quantities;
+        this.price = price;
+    }
+
+    /**
+     * @return the first item of the bundle.
+     */
+    @Override
+    public Item getItem() {
+        return items[0];
+    }
+
+    /**
+     * @return the items in the bundle.
+     */
+    public List<Item> getItems() {
+        return Collections.unmodifiableList(Arrays.asList(items));
+    }
+
+    /**
+     * @param item the item.
+     * @return the quantity of the item in the bundle, 0 if it is not in the bundle.
+     */
+    public long getQuantityOf(final Item item) {
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].equals(item)) {
+                return quantities[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the price of the bundle.
+     */
+    public Money getPrice() {
+        return Money.ofPence(price);
+    }
+
+    /**
+     * Returns Unit for the given number of complete bundles, the quantity is the number of bundles.
+     * @param bundles the number of complete bundles in the basket.
+     */
+    @Override
+    public Unit getUnit(final long bundles) {
+        return new Unit(Money.multiplyPence(price, bundles), bundles);
+    }
+
+    @Override
+    public void fillUnit(final long bundles, final MutableUnit unit) {
+        unit.set(Money.multiplyPence(price, bundles), bundles);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(items);
+        result = prime * result + Arrays.hashCode(quantities);
+        result = prime * result + (int) (price ^ (price >>> 32));
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        BundlePricingRule other = (BundlePricingRule) obj;
+        if (!Arrays.equals(items, other.items))
+            return false;
+        if (!Arrays.equals(quantities, other.quantities))
+            return false;
+        if (price != other.price)
+            return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        final List<String> members = new ArrayList<String>(items.length);
+        for (int i = 0; i < items.length; i++) {
+            members.add(quantities[i] + " x " + items[i]);
+        }
+        return "bundle " + members + " at " + price + "p";
+    }
+
+}
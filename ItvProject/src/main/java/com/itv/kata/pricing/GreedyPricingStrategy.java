@@ -0,0 +1,49 @@
+package com.itv.kata.pricing;
+
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule.MutableUnit;
+
+/**
+ * The default PricingStrategy: every rule is applied once, in PricingRuleOrder,
+ * to the quantity the rules before it have left.
+ *
+ */
+public final class GreedyPricingStrategy implements PricingStrategy {
+
+	@Override
+	public long priceOf(final PricingRule[] rules, final long quantity, final MutableUnit unit) {
+		long price = 0;
+		long remainingQty = quantity;
+		for (int i = 0; i < rules.length; i++) {
+			rules[i].fillUnit(remainingQty, unit);
+			price = Money.addPence(price, unit.getPrice());
+			// A single remaining item is left in the basket for the next rule.
+			if (remainingQty != 1) {
+				remainingQty = remainingQty - unit.getQuantity();
+			}
+		}
+		return price;
+	}
+
+	@Override
+	public long priceOf(final PricingRule[] rules, final long quantity, final MutableUnit unit, final long[] quantities, final long[] prices) {
+		long price = 0;
+		long remainingQty = quantity;
+		for (int i = 0; i < rules.length; i++) {
+			rules[i].fillUnit(remainingQty, unit);
+			price = Money.addPence(price, unit.getPrice());
+			quantities[i] += unit.getQuantity();
+			prices[i] = Money.addPence(prices[i], unit.getPrice());
+			if (remainingQty != 1) {
+				remainingQty = remainingQty - unit.getQuantity();
+			}
+		}
+		return price;
+	}
+
+	@Override
+	public String toString() {
+		return "GreedyPricingStrategy";
+	}
+
+}
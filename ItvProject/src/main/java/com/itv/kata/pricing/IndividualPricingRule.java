@@ -1,9 +1,9 @@
 package com.itv.kata.pricing;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 
 import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
 
 /**
  * This class contains the builder to build an individual item purchase price rule.
@@ -28,8 +28,16 @@ public final class IndividualPricingRule implements PricingRule {
          * @return IndividualPricingRule
          */
         public IndividualPricingRule atPrice(final BigDecimal price) {
-        	long tempPrice = price.multiply(new BigDecimal(100)).setScale(2, RoundingMode.CEILING).longValue();
-            return new IndividualPricingRule(item, tempPrice);
+            return atPrice(Money.ofGBP(price));
+        }
+
+        /**
+         * IndividualPricingRule
+         * @param price price of the item.
+         * @return IndividualPricingRule
+         */
+        public IndividualPricingRule atPrice(final Money price) {
+            return new IndividualPricingRule(item, price.getPence());
         }
     }
 
@@ -70,7 +78,19 @@ public final class IndividualPricingRule implements PricingRule {
     
     @Override
     public Unit getUnit(final long quantity) {
-        return new Unit(quantity * price, quantity);
+        return new Unit(Money.multiplyPence(price, quantity), quantity);
+    }
+
+    @Override
+    public void fillUnit(final long quantity, final MutableUnit unit) {
+        unit.set(Money.multiplyPence(price, quantity), quantity);
+    }
+
+    /**
+     * @return the price of one item.
+     */
+    public Money getPrice() {
+        return Money.ofPence(price);
     }
 
     @Override
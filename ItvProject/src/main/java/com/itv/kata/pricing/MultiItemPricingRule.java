@@ -1,9 +1,9 @@
 package com.itv.kata.pricing;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 
 import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
 
 /**
  * This class contains the builder to build a multiple item purchase price
@@ -35,8 +35,11 @@ public final class MultiItemPricingRule implements PricingRule {
         }
 
         public MultiItemPricingRule atPrice(final BigDecimal specialPrice) {
-        	long tempSpecialPrice = specialPrice.multiply(new BigDecimal(100)).setScale(2, RoundingMode.CEILING).longValue();
-            return new MultiItemPricingRule(item, tempSpecialPrice, specialQty);
+            return atPrice(Money.ofGBP(specialPrice));
+        }
+
+        public MultiItemPricingRule atPrice(final Money specialPrice) {
+            return new MultiItemPricingRule(item, specialPrice.getPence(), specialQty);
         }
         
     }
@@ -81,11 +84,36 @@ public final class MultiItemPricingRule implements PricingRule {
     public Unit getUnit(final long inputQuantity) {
     	final long applicableCount = inputQuantity / quantity;
         
-        final long tempPrice = price * applicableCount;
+        final long tempPrice = Money.multiplyPence(price, applicableCount);
         final long tempQty = quantity* applicableCount;
         return new Unit(tempPrice, tempQty);
     }
 
+    /**
+     * Same as {@link #getUnit(long)}, written to the given unit instead of a new one.
+     * @param inputQuantity the actual quantity to which you want to apply this rule.
+     * @param unit the unit to write to.
+     */
+    @Override
+    public void fillUnit(final long inputQuantity, final MutableUnit unit) {
+    	final long applicableCount = inputQuantity / quantity;
+        unit.set(Money.multiplyPence(price, applicableCount), quantity * applicableCount);
+    }
+
+    /**
+     * @return the special price of the special quantity.
+     */
+    public Money getPrice() {
+        return Money.ofPence(price);
+    }
+
+    /**
+     * @return the special quantity.
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -0,0 +1,243 @@
+package com.itv.kata.pricing;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule.MutableUnit;
+
+/**
+ * PricingStrategy that finds the cheapest combination of the offers of an item,
+ * for example 3 for 130 and 5 for 200 on the same item, where applying the
+ * rules in order would not.
+ *
+ * Every rule is an offer that can be applied any number of times, each time
+ * consuming the smallest quantity the rule consumes at all. The cheapest price
+ * of every quantity is found by dynamic programming and memoized per item, so
+ * later baskets only extend the table. Combinations that leave fewer items
+ * unpriced are always preferred, then the cheaper one.
+ *
+ * To keep within the till's latency budget, quantities above maxQuantity are
+ * priced by the fallback GreedyPricingStrategy instead. The work of one item is
+ * bounded by maxQuantity times its rules, never by the clock, so a basket is
+ * priced the same every time. The tables are shared by all threads without
+ * locking.
+ *
+ */
+public final class OptimalPricingStrategy implements PricingStrategy {
+
+	public static final int DEFAULT_MAX_QUANTITY = 1000;
+
+	/**
+	 * Cheapest prices of every quantity of one item, up to the solved quantity.
+	 */
+	private static final class Solution {
+		// Offer quantities and prices of the item's rules, 0 quantity if a rule consumes nothing.
+		final long[] offerQuantities;
+		final long[] offerPrices;
+		// Unpriced quantity and price in pence of the cheapest combination per quantity.
+		final long[] unpriced;
+		final long[] prices;
+		// The offer applied last in the cheapest combination per quantity, -1 if one item is left unpriced.
+		final int[] offers;
+
+		Solution(final long[] offerQuantities, final long[] offerPrices, final long[] unpriced, final long[] prices, final int[] offers) {
+			this.offerQuantities = offerQuantities;
+			this.offerPrices = offerPrices;
+			this.unpriced = unpriced;
+			this.prices = prices;
+			this.offers = offers;
+		}
+
+		int solvedQuantity() {
+			return prices.length - 1;
+		}
+	}
+
+	/**
+	 * Weak key of an item's rule array, equal only to the same array.
+	 */
+	private static final class Rules extends WeakReference<PricingRule[]> {
+		private final int hash;
+
+		Rules(final PricingRule[] rules, final ReferenceQueue<PricingRule[]> queue) {
+			super(rules, queue);
+			this.hash = System.identityHashCode(rules);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj == this || obj instanceof Rules && ((Rules) obj).get() != null && ((Rules) obj).get() == get();
+		}
+	}
+
+	/**
+	 * Looks up the key of a rule array without creating a weak reference for every lookup.
+	 */
+	private static final class Lookup {
+		private final PricingRule[] rules;
+
+		Lookup(final PricingRule[] rules) {
+			this.rules = rules;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(rules);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Rules && ((Rules) obj).get() == rules;
+		}
+	}
+
+	private final GreedyPricingStrategy fallback = new GreedyPricingStrategy();
+	private final int maxQuantity;
+	// Keyed by the identity of the item's rule array, dropped with the catalog it belongs to.
+	private final ConcurrentHashMap<Rules, Solution> solutions = new ConcurrentHashMap<Rules, Solution>();
+	private final ReferenceQueue<PricingRule[]> dropped = new ReferenceQueue<PricingRule[]>();
+
+	public OptimalPricingStrategy() {
+		this(DEFAULT_MAX_QUANTITY);
+	}
+
+	/**
+	 * @param maxQuantity the largest quantity of one item priced optimally.
+	 */
+	public OptimalPricingStrategy(final int maxQuantity) {
+		this.maxQuantity = maxQuantity;
+	}
+
+	@Override
+	public long priceOf(final PricingRule[] rules, final long quantity, final MutableUnit unit) {
+		if (quantity > maxQuantity) {
+			return fallback.priceOf(rules, quantity, unit);
+		}
+		return solutionOf(rules, (int) quantity, unit).prices[(int) quantity];
+	}
+
+	@Override
+	public long priceOf(final PricingRule[] rules, final long quantity, final MutableUnit unit, final long[] quantities, final long[] prices) {
+		if (quantity > maxQuantity) {
+			return fallback.priceOf(rules, quantity, unit, quantities, prices);
+		}
+		final Solution solution = solutionOf(rules, (int) quantity, unit);
+		// Walks the cheapest combination back, the items left unpriced are told about by no rule.
+		int q = (int) quantity;
+		while (q > 0) {
+			final int offer = solution.offers[q];
+			if (offer < 0) {
+				q--;
+			} else {
+				quantities[offer] += solution.offerQuantities[offer];
+				prices[offer] = Money.addPence(prices[offer], solution.offerPrices[offer]);
+				q -= (int) solution.offerQuantities[offer];
+			}
+		}
+		return solution.prices[(int) quantity];
+	}
+
+	/**
+	 * Gives you the solution of the item solved at least up to the quantity, extending
+	 * it if needed. Two threads may extend the same solution, the longer one is kept.
+	 */
+	private Solution solutionOf(final PricingRule[] rules, final int quantity, final MutableUnit unit) {
+		final Solution current = solutions.get(new Lookup(rules));
+		if (current != null && current.solvedQuantity() >= quantity) {
+			return current;
+		}
+		final Solution solution = solve(rules, current, quantity, unit);
+		expungeDropped();
+		solutions.merge(new Rules(rules, dropped), solution, (kept, solved) -> kept.solvedQuantity() >= solved.solvedQuantity() ? kept : solved);
+		return solution;
+	}
+
+	private void expungeDropped() {
+		for (Reference<? extends PricingRule[]> rules = dropped.poll(); rules != null; rules = dropped.poll()) {
+			solutions.remove(rules);
+		}
+	}
+
+	/**
+	 * Extends the solution of an item up to the given quantity.
+	 * @return the extended solution.
+	 */
+	private Solution solve(final PricingRule[] rules, final Solution previous, final int quantity, final MutableUnit unit) {
+		final long[] offerQuantities;
+		final long[] offerPrices;
+		if (previous == null) {
+			offerQuantities = new long[rules.length];
+			offerPrices = new long[rules.length];
+			for (int i = 0; i < rules.length; i++) {
+				findOffer(rules[i], i, offerQuantities, offerPrices, unit);
+			}
+		} else {
+			offerQuantities = previous.offerQuantities;
+			offerPrices = previous.offerPrices;
+		}
+
+		// Solve at least twice as far as before, so a growing basket extends the table rarely.
+		final int solvedQuantity = previous == null ? 0 : previous.solvedQuantity();
+		final int target = (int) Math.min(maxQuantity, Math.max(quantity, 2L * solvedQuantity));
+		final long[] unpriced = new long[target + 1];
+		final long[] prices = new long[target + 1];
+		final int[] offers = new int[target + 1];
+		offers[0] = -1;
+		if (previous != null) {
+			System.arraycopy(previous.unpriced, 0, unpriced, 0, solvedQuantity + 1);
+			System.arraycopy(previous.prices, 0, prices, 0, solvedQuantity + 1);
+			System.arraycopy(previous.offers, 0, offers, 0, solvedQuantity + 1);
+		}
+
+		for (int q = solvedQuantity + 1; q <= target; q++) {
+			// Leave one item unpriced, or apply one offer to the cheapest combination of the rest.
+			long bestUnpriced = unpriced[q - 1] + 1;
+			long bestPrice = prices[q - 1];
+			int bestOffer = -1;
+			for (int i = 0; i < offerQuantities.length; i++) {
+				final long offerQuantity = offerQuantities[i];
+				if (offerQuantity > 0 && offerQuantity <= q) {
+					final int rest = (int) (q - offerQuantity);
+					final long price = Money.addPence(prices[rest], offerPrices[i]);
+					if (unpriced[rest] < bestUnpriced || (unpriced[rest] == bestUnpriced && price < bestPrice)) {
+						bestUnpriced = unpriced[rest];
+						bestPrice = price;
+						bestOffer = i;
+					}
+				}
+			}
+			unpriced[q] = bestUnpriced;
+			prices[q] = bestPrice;
+			offers[q] = bestOffer;
+		}
+		return new Solution(offerQuantities, offerPrices, unpriced, prices, offers);
+	}
+
+	/**
+	 * Finds the smallest quantity the rule consumes, and the price of it.
+	 */
+	private void findOffer(final PricingRule rule, final int index, final long[] offerQuantities, final long[] offerPrices, final MutableUnit unit) {
+		for (long quantity = 1; quantity <= maxQuantity; quantity++) {
+			rule.fillUnit(quantity, unit);
+			if (unit.getQuantity() > 0) {
+				offerQuantities[index] = unit.getQuantity();
+				offerPrices[index] = unit.getPrice();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "OptimalPricingStrategy [maxQuantity=" + maxQuantity + "]";
+	}
+
+}
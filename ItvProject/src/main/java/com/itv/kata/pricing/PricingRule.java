@@ -32,8 +32,48 @@ public interface PricingRule {
 		}
 	}
 
+	/**
+	 * Reusable, caller-owned counterpart of Unit, so that applying a rule in a
+	 * loop does not allocate.
+	 */
+	public class MutableUnit {
+		// Price is in pence.
+		private long price;
+		private long quantity;
+
+		public void set(final long price, final long quantity) {
+			this.price = price;
+			this.quantity = quantity;
+		}
+
+		public long getPrice() {
+			return price;
+		}
+
+		public long getQuantity() {
+			return quantity;
+		}
+
+		@Override
+		public String toString() {
+			return "MutableUnit [price=" + price + "p, quantity=" + quantity + "]";
+		}
+	}
+
 	Item getItem();
 
 	Unit getUnit(long quantity);
 
+	/**
+	 * Writes the price and the consumed quantity of applying this rule to the given
+	 * quantity into the given unit, without allocating. Rules that do not override
+	 * it fall back to {@link #getUnit(long)}.
+	 * @param quantity the actual quantity to which you want to apply this rule.
+	 * @param unit the unit to write to.
+	 */
+	default void fillUnit(final long quantity, final MutableUnit unit) {
+		final Unit result = getUnit(quantity);
+		unit.set(result.getPrice(), result.getQuantity());
+	}
+
 }
@@ -0,0 +1,47 @@
+package com.itv.kata.pricing;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+
+/**
+ * PricingRuleOrders resolves the PricingRuleOrder of a pricing rule type once,
+ * the first time the type is registered, and serves it from then on without
+ * reflection.
+ *
+ */
+public final class PricingRuleOrders {
+
+	private static final ClassValue<Integer> ORDERS = new ClassValue<Integer>() {
+		@Override
+		protected Integer computeValue(final Class<?> type) {
+			final PricingRuleOrder order = type.getAnnotation(PricingRuleOrder.class);
+			if (order == null) {
+				throw new InvalidKataRequestException("Sorry! " + type.getName() + " has no PricingRuleOrder.");
+			}
+			return order.value();
+		}
+	};
+
+	private PricingRuleOrders() {
+		super();
+	}
+
+	/**
+	 * Registers the given pricing rule type by resolving its PricingRuleOrder.
+	 * @param type the pricing rule type.
+	 * @return the order of the type.
+	 * @throws InvalidKataRequestException if the type is not annotated with PricingRuleOrder.
+	 */
+	public static int register(final Class<? extends PricingRule> type) {
+		return ORDERS.get(type);
+	}
+
+	/**
+	 * Gives you the order of the given rule, higher orders are applied first.
+	 * @param rule the pricing rule.
+	 * @return the order of the rule's type.
+	 */
+	public static int orderOf(final PricingRule rule) {
+		return ORDERS.get(rule.getClass());
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.itv.kata.pricing;
+
+import com.itv.kata.pricing.PricingRule.MutableUnit;
+
+/**
+ * PricingStrategy decides how the pricing rules of an item are combined to
+ * price a quantity of that item.
+ *
+ */
+public interface PricingStrategy {
+
+	/**
+	 * Gives you the price of the given quantity of an item.
+	 * @param rules the pricing rules of the item ordered by their PricingRuleOrder, must not be modified.
+	 * @param quantity the quantity in the basket.
+	 * @param unit the caller's unit the rules are applied with.
+	 * @return the price in pence.
+	 */
+	long priceOf(PricingRule[] rules, long quantity, MutableUnit unit);
+
+	/**
+	 * Gives you the price of the given quantity of an item, and what every rule priced
+	 * of it: quantities[i] and prices[i] are increased by the quantity rules[i] priced
+	 * and its price in pence. Receipts and the rule applications of the metrics are
+	 * both taken from it. Strategies that do not override it tell nothing, the
+	 * quantity is then itemised as priced by no rule.
+	 * @param rules the pricing rules of the item ordered by their PricingRuleOrder, must not be modified.
+	 * @param quantity the quantity in the basket.
+	 * @param unit the caller's unit the rules are applied with.
+	 * @param quantities one quantity per rule.
+	 * @param prices one price in pence per rule.
+	 * @return the price in pence.
+	 */
+	default long priceOf(PricingRule[] rules, long quantity, MutableUnit unit, long[] quantities, long[] prices) {
+		return priceOf(rules, quantity, unit);
+	}
+
+}
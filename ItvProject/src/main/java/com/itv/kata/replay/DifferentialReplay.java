@@ -0,0 +1,319 @@
+package com.itv.kata.replay;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.itv.kata.checkout.KataSupermarketCheckout;
+import com.itv.kata.checkout.PriceCatalog;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.replay.ScanLogPipeline.BasketTotal;
+
+/**
+ * DifferentialReplay replays a recorded scan log through a baseline and a
+ * candidate checkout side by side, to prove a change of the pricing engine
+ * totals every basket as before, and to compare how fast both are.
+ *
+ * Each engine replays the log in a ScanLogPipeline of its own thread. The
+ * replay is deterministic, so both close the same baskets in the same order,
+ * and their totals are compared basket by basket as they come. A basket whose
+ * totals or rejections differ is a mismatch, reported with its items and the
+ * rules of the catalogs that price them, looked up for these items only.
+ *
+ * The engines share the machine while they are compared, so they are timed
+ * afterwards, each replaying the log again on its own, one after the other.
+ * The comparison has warmed both up by then, yet a single run on a machine
+ * doing other work only gives an indication of the speedup, not a figure to
+ * fail a release on.
+ *
+ */
+public final class DifferentialReplay {
+
+	/**
+	 * Receives every mismatch as soon as it is found.
+	 */
+	public interface MismatchSink {
+		void accept(Mismatch mismatch) throws IOException;
+	}
+
+	/**
+	 * A basket the engines did not agree on.
+	 */
+	public static final class Mismatch {
+
+		private final BasketTotal baseline;
+		private final BasketTotal candidate;
+		private final Map<Item, Long> items;
+		private final Set<PricingRule> rules;
+		private final Set<PricingRule> candidateRules;
+
+		Mismatch(final BasketTotal baseline, final BasketTotal candidate, final Map<Item, Long> items, final Set<PricingRule> rules, final Set<PricingRule> candidateRules) {
+			this.baseline = baseline;
+			this.candidate = candidate;
+			this.items = items;
+			this.rules = rules;
+			this.candidateRules = candidateRules;
+		}
+
+		public String getTransactionId() {
+			return baseline.getTransactionId();
+		}
+
+		/**
+		 * @return the basket as the baseline totalled it.
+		 */
+		public BasketTotal getBaseline() {
+			return baseline;
+		}
+
+		/**
+		 * @return the basket as the candidate totalled it.
+		 */
+		public BasketTotal getCandidate() {
+			return candidate;
+		}
+
+		/**
+		 * @return the items of the basket with their quantities, as the baseline scanned them.
+		 */
+		public Map<Item, Long> getItems() {
+			return items;
+		}
+
+		/**
+		 * @return the rules of the baseline catalog that can price the basket.
+		 */
+		public Set<PricingRule> getRules() {
+			return rules;
+		}
+
+		/**
+		 * @return the rules of the candidate catalog that can price the basket.
+		 */
+		public Set<PricingRule> getCandidateRules() {
+			return candidateRules;
+		}
+
+		@Override
+		public String toString() {
+			return getTransactionId() + ": baseline " + describe(baseline) + ", candidate " + describe(candidate) + ", items " + items + ", rules " + rules
+					+ (candidateRules.equals(rules) ? "" : ", candidate rules " + candidateRules);
+		}
+
+		private static String describe(final BasketTotal basket) {
+			return basket.isRejected() ? "rejected " + basket.getRejection() : basket.getTotal().toString();
+		}
+	}
+
+	/**
+	 * The outcome of one replay.
+	 */
+	public static final class Report {
+
+		private final long baskets;
+		private final long mismatches;
+		private final long baselineNanos;
+		private final long candidateNanos;
+
+		Report(final long baskets, final long mismatches, final long baselineNanos, final long candidateNanos) {
+			this.baskets = baskets;
+			this.mismatches = mismatches;
+			this.baselineNanos = baselineNanos;
+			this.candidateNanos = candidateNanos;
+		}
+
+		public long getBaskets() {
+			return baskets;
+		}
+
+		public long getMismatches() {
+			return mismatches;
+		}
+
+		/**
+		 * @return baskets replayed per second by the baseline.
+		 */
+		public double getBaselineThroughput() {
+			return baskets * 1e9 / Math.max(1, baselineNanos);
+		}
+
+		/**
+		 * @return baskets replayed per second by the candidate.
+		 */
+		public double getCandidateThroughput() {
+			return baskets * 1e9 / Math.max(1, candidateNanos);
+		}
+
+		/**
+		 * @return the throughput of the candidate relative to the baseline, below 1 if it is slower.
+		 * Indicative only, timed over a single run of each engine.
+		 */
+		public double getSpeedup() {
+			return getCandidateThroughput() / Math.max(Double.MIN_VALUE, getBaselineThroughput());
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d baskets, %d mismatches, baseline %.0f baskets/s, candidate %.0f baskets/s (%.2fx)",
+					baskets, mismatches, getBaselineThroughput(), getCandidateThroughput(), getSpeedup());
+		}
+	}
+
+	// Baskets an engine may run ahead of the other.
+	static final int QUEUE_CAPACITY = 4096;
+
+	// Put after the last basket of an engine, or after the failure that stopped it.
+	private static final BasketTotal END = new BasketTotal(null, 0, 0, 0, null, null, null);
+
+	// One engine replaying the log on its own thread.
+	private static final class Engine implements Runnable {
+
+		private final ScanLogPipeline pipeline;
+		private final Path log;
+		private final BlockingQueue<BasketTotal> totals = new ArrayBlockingQueue<BasketTotal>(QUEUE_CAPACITY);
+		private final Thread thread;
+		private volatile Throwable failure;
+
+		private Engine(final String name, final ScanLogPipeline pipeline, final Path log) {
+			this.pipeline = pipeline;
+			this.log = log;
+			this.thread = new Thread(this, name);
+			this.thread.setDaemon(true);
+		}
+
+		public void run() {
+			try {
+				pipeline.replay(log, basket -> {
+					try {
+						totals.put(basket);
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException("Replay was stopped");
+					}
+				});
+			} catch (Throwable e) {
+				failure = e;
+			}
+			try {
+				totals.put(END);
+			} catch (InterruptedException e) {
+				// Stopped, nobody takes the end any more.
+			}
+		}
+
+		private BasketTotal next() throws IOException, InterruptedException {
+			final BasketTotal basket = totals.take();
+			if (basket == END && failure != null) {
+				if (failure instanceof IOException) {
+					throw (IOException) failure;
+				}
+				if (failure instanceof RuntimeException) {
+					throw (RuntimeException) failure;
+				}
+				throw new IOException(failure);
+			}
+			return basket;
+		}
+	}
+
+	private final PriceCatalog baselineCatalog;
+	private final PriceCatalog candidateCatalog;
+	private final ScanLogPipeline baseline;
+	private final ScanLogPipeline candidate;
+
+	/**
+	 * Compares two checkouts pricing with the same catalog.
+	 * @param baseline the engine released today.
+	 * @param candidate the engine about to be released.
+	 * @param catalog the prices the log is replayed with.
+	 * @param idleMillis how long after its last scan a basket is closed, in log time.
+	 */
+	public DifferentialReplay(final KataSupermarketCheckout baseline, final KataSupermarketCheckout candidate, final PriceCatalog catalog, final long idleMillis) {
+		this(baseline, catalog, candidate, catalog, idleMillis);
+	}
+
+	/**
+	 * Compares two checkouts, each pricing with its own catalog, for example a
+	 * compiled catalog and the same rules mapped from a catalog file.
+	 * @param baseline the engine released today.
+	 * @param baselineCatalog the prices of the baseline.
+	 * @param candidate the engine about to be released.
+	 * @param candidateCatalog the prices of the candidate.
+	 * @param idleMillis how long after its last scan a basket is closed, in log time.
+	 */
+	public DifferentialReplay(final KataSupermarketCheckout baseline, final PriceCatalog baselineCatalog, final KataSupermarketCheckout candidate,
+			final PriceCatalog candidateCatalog, final long idleMillis) {
+		this.baselineCatalog = baselineCatalog;
+		this.candidateCatalog = candidateCatalog;
+		this.baseline = new ScanLogPipeline(baseline, baselineCatalog, idleMillis);
+		this.candidate = new ScanLogPipeline(candidate, candidateCatalog, idleMillis);
+	}
+
+	/**
+	 * Replays the log through both engines, then once more through each engine on its own to time it.
+	 * @param log the scan log, see {@link ScanLogPipeline}.
+	 * @param sink receives every mismatch.
+	 * @return Report
+	 * @throws IOException if the log cannot be read or the sink fails.
+	 * @throws InterruptedException if interrupted while the engines run.
+	 */
+	public Report replay(final Path log, final MismatchSink sink) throws IOException, InterruptedException {
+		final Engine baselineEngine = new Engine("replay-baseline", baseline, log);
+		final Engine candidateEngine = new Engine("replay-candidate", candidate, log);
+		baselineEngine.thread.start();
+		candidateEngine.thread.start();
+		long baskets = 0;
+		long mismatches = 0;
+		try {
+			while (true) {
+				final BasketTotal expected = baselineEngine.next();
+				final BasketTotal actual = candidateEngine.next();
+				if (expected == END || actual == END) {
+					if (expected != actual) {
+						throw new InvalidKataRequestException("Sorry! The engines closed a different number of baskets.");
+					}
+					break;
+				}
+				if (!expected.getTransactionId().equals(actual.getTransactionId())) {
+					throw new InvalidKataRequestException("Sorry! The engines closed " + expected.getTransactionId() + " and " + actual.getTransactionId() + " in the same place.");
+				}
+				baskets++;
+				if (!agree(expected, actual)) {
+					mismatches++;
+					final Map<Item, Long> items = expected.getTransaction().getItems();
+					final Set<PricingRule> rules = baselineCatalog.getPricingRulesOf(items.keySet());
+					sink.accept(new Mismatch(expected, actual, items, rules, candidateCatalog == baselineCatalog ? rules : candidateCatalog.getPricingRulesOf(items.keySet())));
+				}
+			}
+			baselineEngine.thread.join();
+			candidateEngine.thread.join();
+		} finally {
+			// Only left running if the comparison failed.
+			baselineEngine.thread.interrupt();
+			candidateEngine.thread.interrupt();
+		}
+		return new Report(baskets, mismatches, timeAlone(baseline, log), timeAlone(candidate, log));
+	}
+
+	/**
+	 * @return how long the pipeline takes to replay the log on the calling thread, with nothing else replaying.
+	 */
+	private static long timeAlone(final ScanLogPipeline pipeline, final Path log) throws IOException {
+		final long start = System.nanoTime();
+		pipeline.replay(log, basket -> { });
+		return System.nanoTime() - start;
+	}
+
+	private static boolean agree(final BasketTotal expected, final BasketTotal actual) {
+		if (expected.isRejected() || actual.isRejected()) {
+			return expected.isRejected() && actual.isRejected() && expected.getRejection().equals(actual.getRejection());
+		}
+		return expected.getTotal().equals(actual.getTotal());
+	}
+
+}
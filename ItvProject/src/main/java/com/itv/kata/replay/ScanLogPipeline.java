@@ -0,0 +1,372 @@
+package com.itv.kata.replay;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.LongFunction;
+
+import com.itv.kata.checkout.KataSupermarketCheckout;
+import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.checkout.PriceCatalog;
+import com.itv.kata.checkout.PromotionTimeline;
+import com.itv.kata.checkout.ScanResult;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+
+/**
+ * ScanLogPipeline replays a till scan log and prices every basket in it.
+ *
+ * The log has one scan event per line: transaction id, SKU and timestamp in
+ * milliseconds, separated by commas. The log is read through a fixed size
+ * buffer, and the scans of a transaction are added to its basket as they are
+ * read. A basket is closed when the latest timestamp of the log has moved on by
+ * the idle gap since its last scan, or at the end of the log, and its total is
+ * handed to the sink straight away. Memory therefore depends on the number of
+ * open baskets, not on the size of the log.
+ *
+ * The log does not need to be sorted by time, as when the logs of several tills
+ * are merged: a scan only has to come within the idle gap of the latest one read
+ * before it, or its basket may have been closed already and it opens a new one.
+ *
+ * A basket with a scan that cannot be priced is rejected with the reason, and
+ * its later scans are skipped.
+ *
+ */
+public final class ScanLogPipeline {
+
+	/**
+	 * Receives every basket as soon as it is closed.
+	 */
+	public interface BasketSink {
+		void accept(BasketTotal basket) throws IOException;
+	}
+
+	/**
+	 * The total of a closed basket.
+	 */
+	public static final class BasketTotal {
+
+		private final String transactionId;
+		private final long firstScan;
+		private final long lastScan;
+		private final long scans;
+		private final Money total;
+		private final String rejection;
+		private final Transaction transaction;
+
+		BasketTotal(final String transactionId, final long firstScan, final long lastScan, final long scans, final Money total, final String rejection, final Transaction transaction) {
+			this.transactionId = transactionId;
+			this.firstScan = firstScan;
+			this.lastScan = lastScan;
+			this.scans = scans;
+			this.total = total;
+			this.rejection = rejection;
+			this.transaction = transaction;
+		}
+
+		public String getTransactionId() {
+			return transactionId;
+		}
+
+		/**
+		 * @return the timestamp of the first scan.
+		 */
+		public long getFirstScan() {
+			return firstScan;
+		}
+
+		/**
+		 * @return the timestamp of the last scan.
+		 */
+		public long getLastScan() {
+			return lastScan;
+		}
+
+		/**
+		 * @return the number of scans of the basket, with the ones after a rejection.
+		 */
+		public long getScans() {
+			return scans;
+		}
+
+		/**
+		 * @return the total of the basket, null if the basket was rejected.
+		 */
+		public Money getTotal() {
+			return total;
+		}
+
+		/**
+		 * @return why the basket was rejected, null if it was priced.
+		 */
+		public String getRejection() {
+			return rejection;
+		}
+
+		public boolean isRejected() {
+			return rejection != null;
+		}
+
+		/**
+		 * @return the transaction the basket was scanned into, up to its rejection.
+		 */
+		Transaction getTransaction() {
+			return transaction;
+		}
+
+		@Override
+		public String toString() {
+			return transactionId + (isRejected() ? " rejected: " + rejection : " " + total);
+		}
+	}
+
+	/**
+	 * Gives you a sink writing one CSV line per basket: transaction id, first scan,
+	 * last scan, number of scans, total in GBP and the rejection, if any.
+	 * The caller buffers, flushes and closes the writer.
+	 * @param writer the writer.
+	 * @return BasketSink
+	 */
+	public static BasketSink csvSink(final Writer writer) {
+		return new BasketSink() {
+			public void accept(final BasketTotal basket) throws IOException {
+				writer.write(basket.getTransactionId());
+				writer.write(',');
+				writer.write(Long.toString(basket.getFirstScan()));
+				writer.write(',');
+				writer.write(Long.toString(basket.getLastScan()));
+				writer.write(',');
+				writer.write(Long.toString(basket.getScans()));
+				writer.write(',');
+				if (basket.isRejected()) {
+					writer.write(',');
+					writer.write(basket.getRejection().replace(',', ' '));
+				} else {
+					writer.write(basket.getTotal().toGBP().toPlainString());
+					writer.write(',');
+				}
+				writer.write('\n');
+			}
+		};
+	}
+
+	static final int BUFFER_BYTES = 64 * 1024;
+
+	// Baskets by their last scan, and in the order they were opened if that is the same.
+	private static final Comparator<OpenBasket> BY_LAST_SCAN = new Comparator<OpenBasket>() {
+		public int compare(OpenBasket o1, OpenBasket o2) {
+			final int byLastScan = Long.compare(o1.lastScan, o2.lastScan);
+			return byLastScan != 0 ? byLastScan : Long.compare(o1.opened, o2.opened);
+		}
+	};
+
+	private final KataSupermarketCheckout checkout;
+	// The catalog of a basket, by the time of its first scan.
+	private final LongFunction<PriceCatalog> catalogs;
+	private final long idleMillis;
+
+	/**
+	 * @param checkout the checkout totalling the baskets.
+	 * @param catalog the prices the log is replayed with.
+	 * @param idleMillis how long after its last scan a basket is closed, in log time.
+	 */
+	public ScanLogPipeline(final KataSupermarketCheckout checkout, final PriceCatalog catalog, final long idleMillis) {
+		this(checkout, time -> catalog, idleMillis);
+	}
+
+	/**
+	 * Replays the log with the prices of its time, every basket priced with the
+	 * promotions valid at its first scan.
+	 * @param checkout the checkout totalling the baskets.
+	 * @param timeline the prices of every moment.
+	 * @param idleMillis how long after its last scan a basket is closed, in log time.
+	 */
+	public ScanLogPipeline(final KataSupermarketCheckout checkout, final PromotionTimeline timeline, final long idleMillis) {
+		this(checkout, timeline::catalogAt, idleMillis);
+	}
+
+	private ScanLogPipeline(final KataSupermarketCheckout checkout, final LongFunction<PriceCatalog> catalogs, final long idleMillis) {
+		if (idleMillis < 0) {
+			throw new InvalidKataRequestException("Sorry! Idle gap can not be negative.");
+		}
+		this.checkout = checkout;
+		this.catalogs = catalogs;
+		this.idleMillis = idleMillis;
+	}
+
+	/**
+	 * Replays the given scan log.
+	 * @param log the scan log.
+	 * @param sink receives every basket as soon as it is closed.
+	 * @return the number of baskets.
+	 * @throws IOException if the log cannot be read or the sink fails.
+	 */
+	public long replay(final Path log, final BasketSink sink) throws IOException {
+		final Replay replay = new Replay(sink);
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+			byte[] line = new byte[128];
+			int length = 0;
+			long lineNumber = 0;
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					final byte b = buffer.get();
+					if (b == '\n') {
+						replay.event(line, length, ++lineNumber);
+						length = 0;
+					} else {
+						if (length == line.length) {
+							line = Arrays.copyOf(line, length * 2);
+						}
+						line[length++] = b;
+					}
+				}
+				buffer.clear();
+			}
+			if (length > 0) {
+				replay.event(line, length, ++lineNumber);
+			}
+		}
+		replay.closeAll();
+		return replay.baskets;
+	}
+
+	// An open basket of the log.
+	private static final class OpenBasket {
+		private final String transactionId;
+		private final Transaction transaction;
+		private final long firstScan;
+		// Number of baskets opened before this one in the replay.
+		private final long opened;
+		private long lastScan;
+		private long scans;
+		private String rejection;
+
+		private OpenBasket(final String transactionId, final Transaction transaction, final long firstScan, final long opened) {
+			this.transactionId = transactionId;
+			this.transaction = transaction;
+			this.firstScan = firstScan;
+			this.opened = opened;
+			this.lastScan = firstScan;
+		}
+	}
+
+	// State of one replay, the pipeline itself can replay several logs at the same time.
+	private final class Replay {
+
+		private final BasketSink sink;
+		private final Map<String, OpenBasket> open = new HashMap<String, OpenBasket>(64);
+		// The open baskets idle for longest first, whatever order their scans were logged in.
+		private final TreeSet<OpenBasket> idle = new TreeSet<OpenBasket>(BY_LAST_SCAN);
+		private long watermark = Long.MIN_VALUE;
+		private long opened;
+		private long baskets;
+
+		private Replay(final BasketSink sink) {
+			this.sink = sink;
+		}
+
+		private void event(final byte[] line, int length, final long lineNumber) throws IOException {
+			if (length > 0 && line[length - 1] == '\r') {
+				length--;
+			}
+			if (length == 0) {
+				return;
+			}
+			final int firstComma = indexOf(line, 0, length);
+			final int secondComma = firstComma < 0 ? -1 : indexOf(line, firstComma + 1, length);
+			if (secondComma < 0) {
+				throw new InvalidKataRequestException("Sorry! Line " + lineNumber + " of the scan log is not transaction id, SKU, timestamp.");
+			}
+			final String transactionId = new String(line, 0, firstComma, StandardCharsets.UTF_8);
+			final long timestamp = parseTimestamp(line, secondComma + 1, length, lineNumber);
+
+			watermark = Math.max(watermark, timestamp);
+			OpenBasket basket = open.get(transactionId);
+			if (basket == null) {
+				basket = new OpenBasket(transactionId, checkout.getTransaction(catalogs.apply(timestamp)), timestamp, opened++);
+				open.put(transactionId, basket);
+				idle.add(basket);
+			} else if (timestamp > basket.lastScan) {
+				idle.remove(basket);
+				basket.lastScan = timestamp;
+				idle.add(basket);
+			}
+			basket.scans++;
+			if (basket.rejection == null) {
+				final Item item = new Item(new String(line, firstComma + 1, secondComma - firstComma - 1, StandardCharsets.UTF_8));
+				final ScanResult result = basket.transaction.tryScan(item);
+				if (!result.isAccepted()) {
+					basket.rejection = result + " " + item;
+				}
+			}
+			closeIdle();
+		}
+
+		private void closeIdle() throws IOException {
+			while (!idle.isEmpty() && watermark - idle.first().lastScan > idleMillis) {
+				final OpenBasket basket = idle.pollFirst();
+				open.remove(basket.transactionId);
+				close(basket);
+			}
+		}
+
+		private void closeAll() throws IOException {
+			for (OpenBasket basket : idle) {
+				close(basket);
+			}
+			idle.clear();
+			open.clear();
+		}
+
+		private void close(final OpenBasket basket) throws IOException {
+			Money total = null;
+			if (basket.rejection == null) {
+				try {
+					total = checkout.calculateTotal(basket.transaction);
+				} catch (InvalidKataRequestException e) {
+					// For example a total too large for Money, only this basket is rejected.
+					basket.rejection = e.getMessage();
+				}
+			}
+			sink.accept(new BasketTotal(basket.transactionId, basket.firstScan, basket.lastScan, basket.scans, total, basket.rejection, basket.transaction));
+			baskets++;
+		}
+	}
+
+	private static int indexOf(final byte[] line, final int from, final int length) {
+		for (int i = from; i < length; i++) {
+			if (line[i] == ',') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static long parseTimestamp(final byte[] line, final int from, final int length, final long lineNumber) {
+		if (from == length) {
+			throw new InvalidKataRequestException("Sorry! Line " + lineNumber + " of the scan log has no timestamp.");
+		}
+		long timestamp = 0;
+		for (int i = from; i < length; i++) {
+			final int digit = line[i] - '0';
+			if (digit < 0 || digit > 9 || timestamp > (Long.MAX_VALUE - digit) / 10) {
+				throw new InvalidKataRequestException("Sorry! Line " + lineNumber + " of the scan log has an invalid timestamp.");
+			}
+			timestamp = timestamp * 10 + digit;
+		}
+		return timestamp;
+	}
+
+}
@@ -0,0 +1,152 @@
+package com.itv.kata.archive;
+
+import static com.itv.kata.pricing.BundlePricingRule.bundlePricingRuleFor;
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.itv.kata.checkout.KataSupermarketCheckout;
+import com.itv.kata.checkout.Receipt;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule;
+
+public class BasketArchiveTest {
+
+	private static final Item COFFEE = new Item("COFFEE");
+	private static final Item MUFFIN = new Item("MUFFIN");
+	private static final Item WATER = new Item("WATER");
+
+	private static final long JANUARY = 1704067200000L;
+	private static final long APRIL = 1711929600000L;
+	private static final long JULY = 1719792000000L;
+
+	private Path directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("archive");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	private void archiveTwoQuarters() throws IOException {
+		try (BasketArchive.Appender appender = BasketArchive.append(directory)) {
+			appender.append(JANUARY, COFFEE, 3, RuleType.MULTI_ITEM, 500)
+					.append(JANUARY, MUFFIN, 1, RuleType.INDIVIDUAL, 180)
+					.append(APRIL, COFFEE, 3, RuleType.MULTI_ITEM, 500)
+					.append(APRIL, COFFEE, 1, RuleType.INDIVIDUAL, 250)
+					.append(APRIL, WATER, 2, RuleType.BUNDLE, 150);
+		}
+	}
+
+	@Test
+	public void sumsRevenueOfOneSkuUnderOffersInOneQuarter() throws IOException {
+		archiveTwoQuarters();
+		BasketArchive archive = BasketArchive.open(directory);
+
+		assertEquals(5, archive.size());
+		assertEquals(500, archive.query().sku(COFFEE).rule(RuleType.MULTI_ITEM).between(APRIL, JULY).sumPence());
+		assertEquals(1000, archive.query().sku(new Item("COFFEE")).rule(RuleType.MULTI_ITEM).sumPence());
+		assertEquals(4, archive.query().sku(COFFEE).between(APRIL, JULY).sumQuantity());
+		assertEquals(3, archive.query().between(APRIL, JULY).count());
+		assertEquals(1580, archive.query().sumPence());
+		assertEquals(0, archive.query().sku(new Item("TEA")).sumPence());
+	}
+
+	@Test
+	public void groupsBySkuAndRuleType() throws IOException {
+		archiveTwoQuarters();
+		BasketArchive archive = BasketArchive.open(directory);
+
+		Map<Item, Long> bySku = archive.query().between(APRIL, JULY).penceBySku();
+		assertEquals(2, bySku.size());
+		assertEquals(750L, (long) bySku.get(COFFEE));
+		assertEquals(150L, (long) bySku.get(WATER));
+
+		Map<RuleType, Long> byRule = archive.query().sku(COFFEE).penceByRule();
+		assertEquals(2, byRule.size());
+		assertEquals(1000L, (long) byRule.get(RuleType.MULTI_ITEM));
+		assertEquals(250L, (long) byRule.get(RuleType.INDIVIDUAL));
+	}
+
+	@Test
+	public void archivesReceiptLines() throws IOException {
+		Set<PricingRule> prices = new HashSet<PricingRule>();
+		prices.add(pricingRuleFor(COFFEE).atPrice(Money.ofPence(250)));
+		prices.add(multiItemPricingRuleFor(COFFEE).buy(3).atPrice(Money.ofPence(500)));
+		KataSupermarketCheckout checkout = new KataSupermarketCheckout();
+		Receipt receipt = new Receipt();
+		checkout.calculateTotal(checkout.getTransaction(prices).scan(COFFEE, 4), receipt);
+		try (BasketArchive.Appender appender = BasketArchive.append(directory)) {
+			appender.append(APRIL, receipt);
+		}
+		BasketArchive archive = BasketArchive.open(directory);
+
+		assertEquals(2, archive.size());
+		assertEquals(500, archive.query().rule(RuleType.MULTI_ITEM).sumPence());
+		assertEquals(750, archive.query().sku(COFFEE).sumPence());
+	}
+
+	@Test
+	public void archivesBundleForEveryItem() throws IOException {
+		Set<PricingRule> prices = new HashSet<PricingRule>();
+		prices.add(pricingRuleFor(COFFEE).atPrice(Money.ofPence(250)));
+		prices.add(pricingRuleFor(MUFFIN).atPrice(Money.ofPence(180)));
+		prices.add(bundlePricingRuleFor(COFFEE).and(MUFFIN, 2).atPrice(Money.ofPence(400)));
+		KataSupermarketCheckout checkout = new KataSupermarketCheckout();
+		Receipt receipt = new Receipt();
+		checkout.calculateTotal(checkout.getTransaction(prices).scan(COFFEE, 3).scan(MUFFIN, 4), receipt);
+		try (BasketArchive.Appender appender = BasketArchive.append(directory)) {
+			appender.append(APRIL, receipt);
+		}
+		BasketArchive archive = BasketArchive.open(directory);
+
+		// Two bundles of 6 items for 800p, 133p an item and the 2p left over on the coffee.
+		assertEquals(3, archive.size());
+		assertEquals(800 + 250, archive.query().sumPence());
+		assertEquals(4, archive.query().sku(MUFFIN).rule(RuleType.BUNDLE).sumQuantity());
+		assertEquals(532, archive.query().sku(MUFFIN).sumPence());
+		assertEquals(3, archive.query().sku(COFFEE).sumQuantity());
+		assertEquals(268 + 250, archive.query().sku(COFFEE).sumPence());
+	}
+
+	@Test
+	public void appendsAcrossSessionsAndSegments() throws IOException {
+		archiveTwoQuarters();
+		try (BasketArchive.Appender appender = BasketArchive.append(directory)) {
+			for (int i = 0; i < 20000; i++) {
+				appender.append(JULY + i, new Item("SKU" + (i % 7)), 1, RuleType.INDIVIDUAL, 10);
+			}
+		}
+		BasketArchive archive = BasketArchive.open(directory, 4096);
+
+		assertEquals(20005, archive.size());
+		assertEquals(1580 + 200000, archive.query().sumPence());
+		assertEquals(20000, archive.query().between(JULY, Long.MAX_VALUE).sumQuantity());
+		assertEquals(3 + 7, archive.query().quantityBySku().size());
+		assertTrue(archive.query().quantityBySku().containsKey(MUFFIN));
+	}
+
+}
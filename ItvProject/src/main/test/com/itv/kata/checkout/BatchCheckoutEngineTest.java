@@ -0,0 +1,137 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.itv.kata.checkout.BatchCheckoutEngine.BatchResult;
+import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.pricing.PricingRule;
+
+public class BatchCheckoutEngineTest {
+
+	private static final Item A = new Item("A");
+	private static final Item B = new Item("B");
+	private static final Item C = new Item("C");
+	private static final Item[] ITEMS = { A, B, C };
+
+	private KataSupermarketCheckout checkout = new KataSupermarketCheckout();
+	private ForkJoinPool pool = new ForkJoinPool(4);
+
+	@After
+	public void shutDownPool() {
+		pool.shutdownNow();
+	}
+
+	private Set<PricingRule> todaysPrices() {
+		Set<PricingRule> todaysPrices = new HashSet<PricingRule>();
+		todaysPrices.add(pricingRuleFor(A).atPrice(new BigDecimal(0.50).setScale(2, RoundingMode.HALF_UP)));
+		todaysPrices.add(pricingRuleFor(B).atPrice(new BigDecimal(0.30).setScale(2, RoundingMode.HALF_UP)));
+		todaysPrices.add(pricingRuleFor(C).atPrice(new BigDecimal(0.20).setScale(2, RoundingMode.HALF_UP)));
+		return todaysPrices;
+	}
+
+	private Set<PricingRule> tomorrowsPrices() {
+		Set<PricingRule> tomorrowsPrices = todaysPrices();
+		tomorrowsPrices.add(multiItemPricingRuleFor(A).buy(3).atPrice(new BigDecimal(1.30).setScale(2, RoundingMode.HALF_UP)));
+		tomorrowsPrices.add(multiItemPricingRuleFor(B).buy(2).atPrice(new BigDecimal(0.45).setScale(2, RoundingMode.HALF_UP)));
+		return tomorrowsPrices;
+	}
+
+	private List<Transaction> transactions(Set<PricingRule> pricingRules, int count) {
+		List<Transaction> transactions = new ArrayList<Transaction>();
+		for (int i = 0; i < count; i++) {
+			Transaction transaction = checkout.getTransaction(pricingRules);
+			for (int scan = 0; scan < i % 11; scan++) {
+				transaction.scan(ITEMS[(i + scan) % ITEMS.length]);
+			}
+			transactions.add(transaction);
+		}
+		return transactions;
+	}
+
+	@Test
+	public void repricesTransactionsWithNewRules() {
+		List<Transaction> history = transactions(todaysPrices(), 1000);
+		List<Transaction> expected = transactions(tomorrowsPrices(), 1000);
+
+		BatchResult result = new BatchCheckoutEngine(tomorrowsPrices(), pool)
+				.calculateTotalPrices(history.stream());
+
+		assertEquals(1000, result.size());
+		BigDecimal aggregate = BigDecimal.ZERO;
+		for (int i = 0; i < expected.size(); i++) {
+			BigDecimal totalPrice = checkout.calculateTotalPrice(expected.get(i));
+			assertEquals(totalPrice, result.getTotalPrice(i));
+			aggregate = aggregate.add(totalPrice);
+		}
+		assertEquals(aggregate, result.getAggregateTotalPrice());
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void repriceItemWithoutNewPrice() {
+		Set<PricingRule> withoutC = new HashSet<PricingRule>();
+		withoutC.add(pricingRuleFor(A).atPrice(new BigDecimal(0.50).setScale(2, RoundingMode.HALF_UP)));
+		withoutC.add(pricingRuleFor(B).atPrice(new BigDecimal(0.30).setScale(2, RoundingMode.HALF_UP)));
+
+		new BatchCheckoutEngine(withoutC).calculateTotalPrices(transactions(todaysPrices(), 10).stream());
+	}
+
+	@Test
+	public void keepsInterruptOfCallingThread() {
+		BatchCheckoutEngine engine = new BatchCheckoutEngine(todaysPrices(), pool);
+		Thread.currentThread().interrupt();
+		try {
+			engine.calculateTotalPrices(transactions(todaysPrices(), 10).stream());
+			fail();
+		} catch (InvalidKataRequestException e) {
+			assertTrue(Thread.interrupted());
+		} finally {
+			Thread.interrupted();
+		}
+	}
+
+	@Test
+	public void stopsTotallingWhenCallerGivesUp() throws InterruptedException {
+		final Thread caller = Thread.currentThread();
+		final AtomicInteger totalled = new AtomicInteger();
+		Stream<Transaction> slowHistory = transactions(todaysPrices(), 10000).stream().peek(transaction -> {
+			if (totalled.incrementAndGet() == 10) {
+				caller.interrupt();
+			}
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		});
+		try {
+			new BatchCheckoutEngine(todaysPrices(), pool).calculateTotalPrices(slowHistory);
+			fail();
+		} catch (InvalidKataRequestException e) {
+			assertTrue(Thread.interrupted());
+		} finally {
+			Thread.interrupted();
+		}
+
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+		assertTrue(totalled.get() < 10000);
+	}
+
+}
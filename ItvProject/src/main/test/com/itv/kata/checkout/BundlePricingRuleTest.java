@@ -0,0 +1,162 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.pricing.BundlePricingRule.bundlePricingRuleFor;
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule;
+
+public class BundlePricingRuleTest {
+
+	private static final Item SANDWICH = new Item("SANDWICH");
+	private static final Item DRINK = new Item("DRINK");
+	private static final Item SNACK = new Item("SNACK");
+	private static final Item COFFEE = new Item("COFFEE");
+	private static final Item A = new Item("A");
+	private static final Item B = new Item("B");
+	private static final Item C = new Item("C");
+
+	private KataSupermarketCheckout checkout = new KataSupermarketCheckout();
+
+	private Set<PricingRule> mealDeal() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(SANDWICH).atPrice(Money.ofPence(250)));
+		thisWeeksPrices.add(pricingRuleFor(DRINK).atPrice(Money.ofPence(120)));
+		thisWeeksPrices.add(pricingRuleFor(SNACK).atPrice(Money.ofPence(80)));
+		thisWeeksPrices.add(pricingRuleFor(COFFEE).atPrice(Money.ofPence(200)));
+		thisWeeksPrices.add(multiItemPricingRuleFor(DRINK).buy(2).atPrice(Money.ofPence(200)));
+		thisWeeksPrices.add(bundlePricingRuleFor(SANDWICH).and(DRINK).and(SNACK).atPrice(Money.ofPence(300)));
+		return thisWeeksPrices;
+	}
+
+	@Test
+	public void appliesBundleBeforeSingleItemRules() {
+		Transaction transaction = checkout.getTransaction(mealDeal())
+				.scan(SANDWICH)
+				.scan(DRINK)
+				.scan(COFFEE)
+				.scan(SNACK)
+				.scan(DRINK);
+
+		// Meal deal 3.00, second drink 1.20 as the 2 for 2.00 no longer applies, coffee 2.00.
+		assertEquals(Money.ofPence(620), checkout.calculateTotal(transaction));
+	}
+
+	@Test
+	public void appliesBundleAsOftenAsBasketAllows() {
+		Transaction transaction = checkout.getTransaction(mealDeal())
+				.scan(SANDWICH, 2)
+				.scan(DRINK, 4)
+				.scan(SNACK, 3);
+
+		// Two meal deals 6.00, two drinks 2.00, one snack 0.80.
+		assertEquals(Money.ofPence(880), checkout.calculateTotal(transaction));
+	}
+
+	@Test
+	public void incompleteBundleIsPricedPerItem() {
+		Transaction transaction = checkout.getTransaction(mealDeal())
+				.scan(SANDWICH)
+				.scan(DRINK);
+
+		assertEquals(Money.ofPence(370), checkout.calculateTotal(transaction));
+	}
+
+	@Test
+	public void runningTotalMatchesTotal() {
+		Item[] scans = { DRINK, SANDWICH, COFFEE, SNACK, DRINK, DRINK, SANDWICH, SNACK, DRINK };
+		Transaction transaction = checkout.getTransaction(mealDeal());
+		for (Item item : scans) {
+			transaction.scan(item);
+			assertEquals(checkout.calculateTotal(transaction), transaction.currentTotal());
+		}
+	}
+
+	@Test
+	public void manyMealDeals() {
+		Set<PricingRule> thisWeeksPrices = mealDeal();
+		for (int deal = 0; deal < 5000; deal++) {
+			Item sandwich = new Item("SANDWICH" + deal);
+			thisWeeksPrices.add(pricingRuleFor(sandwich).atPrice(Money.ofPence(250)));
+			thisWeeksPrices.add(bundlePricingRuleFor(sandwich).and(DRINK).and(SNACK).atPrice(Money.ofPence(310)));
+		}
+
+		Transaction transaction = checkout.getTransaction(thisWeeksPrices)
+				.scan(new Item("SANDWICH42"))
+				.scan(DRINK)
+				.scan(SNACK);
+
+		assertEquals(Money.ofPence(310), checkout.calculateTotal(transaction));
+	}
+
+	// A and B save 0.10 together, B and C 1.00.
+	private List<PricingRule> overlappingBundles() {
+		return Arrays.<PricingRule> asList(
+				pricingRuleFor(A).atPrice(Money.ofPence(100)),
+				pricingRuleFor(B).atPrice(Money.ofPence(100)),
+				pricingRuleFor(C).atPrice(Money.ofPence(100)),
+				pricingRuleFor(COFFEE).atPrice(Money.ofPence(200)),
+				multiItemPricingRuleFor(C).buy(3).atPrice(Money.ofPence(250)),
+				bundlePricingRuleFor(A).and(B).atPrice(Money.ofPence(190)),
+				bundlePricingRuleFor(B).and(C).atPrice(Money.ofPence(100)));
+	}
+
+	@Test
+	public void pricesOverlappingBundlesAlikeWhateverTheirOrder() {
+		List<PricingRule> prices = overlappingBundles();
+		List<PricingRule> reversed = new ArrayList<PricingRule>(prices);
+		Collections.reverse(reversed);
+		Set<PricingRule> given = new LinkedHashSet<PricingRule>(prices);
+		Set<PricingRule> givenReversed = new LinkedHashSet<PricingRule>(reversed);
+		assertEquals(given, givenReversed);
+
+		// B goes into the bigger saving.
+		KataSupermarketCheckout otherCheckout = new KataSupermarketCheckout();
+		assertEquals(Money.ofPence(200), checkout.calculateTotal(checkout.getTransaction(given).scan(A).scan(B).scan(C)));
+		assertEquals(Money.ofPence(200), otherCheckout.calculateTotal(otherCheckout.getTransaction(givenReversed).scan(A).scan(B).scan(C)));
+	}
+
+	@Test
+	public void runningTotalOfOverlappingBundlesMatchesTotal() {
+		Item[] scans = { C, A, COFFEE, B, C, C, B, A, COFFEE, C, B, B, A, C };
+		Transaction transaction = checkout.getTransaction(new HashSet<PricingRule>(overlappingBundles()));
+		for (Item item : scans) {
+			transaction.scan(item);
+			assertEquals(checkout.calculateTotal(transaction), transaction.currentTotal());
+		}
+		transaction.scan(C, 5).scan(A, 2);
+		assertEquals(checkout.calculateTotal(transaction), transaction.currentTotal());
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void rejectsItemOnlyPricedInBundle() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(DRINK).atPrice(Money.ofPence(120)));
+		thisWeeksPrices.add(bundlePricingRuleFor(SANDWICH).and(DRINK).atPrice(Money.ofPence(300)));
+
+		Transaction transaction = checkout.getTransaction(thisWeeksPrices);
+		assertEquals(ScanResult.UNKNOWN_SKU, transaction.tryScan(SANDWICH));
+		transaction.scan(SANDWICH);
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void rejectsBundleWithoutQuantity() {
+		bundlePricingRuleFor(SANDWICH).and(DRINK, 0);
+	}
+
+}
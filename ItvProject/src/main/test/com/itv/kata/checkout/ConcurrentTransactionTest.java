@@ -0,0 +1,131 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.pricing.PricingRule;
+
+public class ConcurrentTransactionTest {
+
+	private static final Item A = new Item("A");
+	private static final Item B = new Item("B");
+	private static final Item C = new Item("C");
+	private static final Item[] ITEMS = { A, B, C };
+
+	private static final int SCANNERS = 8;
+	private static final int SCANS_PER_SCANNER = 30000;
+
+	private KataSupermarketCheckout checkout = new KataSupermarketCheckout();
+
+	private Set<PricingRule> thisWeeksPrices() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(A).atPrice(new BigDecimal(0.50).setScale(2, RoundingMode.HALF_UP)));
+		thisWeeksPrices.add(pricingRuleFor(B).atPrice(new BigDecimal(0.30).setScale(2, RoundingMode.HALF_UP)));
+		thisWeeksPrices.add(pricingRuleFor(C).atPrice(new BigDecimal(0.20).setScale(2, RoundingMode.HALF_UP)));
+		thisWeeksPrices.add(multiItemPricingRuleFor(A).buy(3).atPrice(new BigDecimal(1.30).setScale(2, RoundingMode.HALF_UP)));
+		return thisWeeksPrices;
+	}
+
+	@Test
+	public void totalMatchesSequentialTransaction() {
+		ConcurrentTransaction concurrent = checkout.getConcurrentTransaction(thisWeeksPrices())
+				.scan(A).scan(B).scan(A).scan(A).scan(C);
+		KataSupermarketCheckout.Transaction sequential = checkout.getTransaction(thisWeeksPrices())
+				.scan(A).scan(B).scan(A).scan(A).scan(C);
+
+		assertEquals(checkout.calculateTotalPrice(sequential), checkout.calculateTotalPrice(concurrent));
+	}
+
+	@Test
+	public void rejectsQuantityBeyondWhatBasketCanHold() {
+		ConcurrentTransaction transaction = checkout.getConcurrentTransaction(thisWeeksPrices())
+				.scan(B, ConcurrentTransaction.MAX_QUANTITY);
+
+		assertEquals(ScanResult.REJECTED, transaction.tryScan(B));
+		assertEquals(ScanResult.REJECTED, transaction.tryScan(C));
+		assertEquals(ConcurrentTransaction.MAX_QUANTITY, transaction.snapshot().get(transaction.getCatalog().ordinalOf(B)));
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void scanBeyondWhatBasketCanHoldThrows() {
+		checkout.getConcurrentTransaction(thisWeeksPrices())
+				.scan(A, ConcurrentTransaction.MAX_QUANTITY)
+				.scan(A, ConcurrentTransaction.MAX_QUANTITY);
+	}
+
+	@Test
+	public void concurrentScansAreNotLost() throws Exception {
+		final ConcurrentTransaction transaction = checkout.getConcurrentTransaction(thisWeeksPrices());
+		final ExecutorService scanners = Executors.newFixedThreadPool(SCANNERS + 1);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicBoolean scanning = new AtomicBoolean(true);
+		try {
+			List<Future<?>> scans = new ArrayList<Future<?>>();
+			for (int scanner = 0; scanner < SCANNERS; scanner++) {
+				scans.add(scanners.submit(() -> {
+					start.await();
+					for (int i = 0; i < SCANS_PER_SCANNER; i++) {
+						transaction.scan(ITEMS[i % ITEMS.length]);
+					}
+					return null;
+				}));
+			}
+			// Snapshots taken while scanning must never lose a scan an earlier snapshot saw.
+			Future<?> totals = scanners.submit(() -> {
+				start.await();
+				long previousQuantity = 0;
+				while (scanning.get()) {
+					ItemQuantityMap basket = transaction.snapshot();
+					long quantity = 0;
+					for (int slot = 0; slot < basket.capacity(); slot++) {
+						if (basket.ordinalAt(slot) >= 0) {
+							quantity += basket.quantityAt(slot);
+						}
+					}
+					assertTrue(quantity >= previousQuantity);
+					previousQuantity = quantity;
+				}
+				return null;
+			});
+
+			start.countDown();
+			for (Future<?> scan : scans) {
+				scan.get(1, TimeUnit.MINUTES);
+			}
+			scanning.set(false);
+			totals.get(1, TimeUnit.MINUTES);
+		} finally {
+			scanners.shutdownNow();
+		}
+
+		PriceCatalog catalog = transaction.getCatalog();
+		ItemQuantityMap basket = transaction.snapshot();
+		long expectedPerItem = (long) SCANNERS * SCANS_PER_SCANNER / ITEMS.length;
+		for (Item item : ITEMS) {
+			assertEquals(expectedPerItem, basket.get(catalog.ordinalOf(item)));
+		}
+
+		// 80000 x A = 26666 x 1.30 + 2 x 0.50, 80000 x B at 0.30, 80000 x C at 0.20.
+		assertEquals(new BigDecimal(74666.80).setScale(2, RoundingMode.HALF_UP), checkout.calculateTotalPrice(transaction));
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.itv.kata.checkout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ItemQuantityMapTest {
+
+	@Test
+	public void addsQuantitiesPerOrdinal() {
+		ItemQuantityMap basket = new ItemQuantityMap();
+		assertTrue(basket.isEmpty());
+
+		assertEquals(1, basket.add(7, 1));
+		assertEquals(2, basket.add(7, 1));
+		assertEquals(5, basket.add(0, 5));
+
+		assertEquals(2, basket.size());
+		assertEquals(2, basket.get(7));
+		assertEquals(5, basket.get(0));
+		assertEquals(0, basket.get(3));
+	}
+
+	@Test
+	public void keepsQuantitiesWhenGrowing() {
+		ItemQuantityMap basket = new ItemQuantityMap(1);
+		for (int ordinal = 0; ordinal < 10000; ordinal++) {
+			basket.add(ordinal, ordinal + 1);
+		}
+
+		assertEquals(10000, basket.size());
+		long total = 0;
+		for (int slot = 0; slot < basket.capacity(); slot++) {
+			if (basket.ordinalAt(slot) >= 0) {
+				assertEquals(basket.ordinalAt(slot) + 1, basket.quantityAt(slot));
+				total += basket.quantityAt(slot);
+			}
+		}
+		assertEquals(10000L * 10001 / 2, total);
+	}
+
+	@Test
+	public void clearKeepsMapUsable() {
+		ItemQuantityMap basket = new ItemQuantityMap();
+		basket.add(1, 3);
+		basket.clear();
+
+		assertTrue(basket.isEmpty());
+		assertEquals(0, basket.get(1));
+		assertEquals(2, basket.add(1, 2));
+	}
+
+}
@@ -3,10 +3,14 @@ package com.itv.kata.checkout;
 import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
 import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Test;
@@ -14,6 +18,7 @@ import org.junit.Test;
 import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
 import com.itv.kata.exceptions.InvalidKataRequestException;
 import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
 import com.itv.kata.pricing.PricingRule;
 
 public class KataSupermarketCheckoutTest {
@@ -115,4 +120,47 @@ public class KataSupermarketCheckoutTest {
 		assertEquals(new BigDecimal(0.50).setScale(2, RoundingMode.HALF_UP), checkout.calculateTotalPrice(transaction));
 	}
 
-}
\ No newline at end of file
+	@Test(expected = InvalidKataRequestException.class)
+	public void scanNullItem() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(A).atPrice(new BigDecimal(0.60).setScale(2, RoundingMode.HALF_UP)));
+
+		checkout.getTransaction(thisWeeksPrices).scan(null);
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void scanNullItemConcurrently() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(A).atPrice(new BigDecimal(0.60).setScale(2, RoundingMode.HALF_UP)));
+
+		checkout.getConcurrentTransaction(thisWeeksPrices).scan(null);
+	}
+
+	@Test
+	public void scanAllAddsNothingIfTotalWouldBeTooLarge() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(A).atPrice(Money.ofPence(Long.MAX_VALUE / 2)));
+		List<Item> items = new ArrayList<Item>();
+		for (int i = 0; i < 20; i++) {
+			Item item = new Item("SCAN-ALL-" + i);
+			thisWeeksPrices.add(pricingRuleFor(item).atPrice(Money.ofPence(10)));
+			items.add(item);
+		}
+		items.add(A);
+		items.add(A);
+		items.add(A);
+		Item first = items.get(0);
+		Transaction transaction = checkout.getTransaction(thisWeeksPrices).scan(first);
+
+		try {
+			transaction.scanAll(items);
+			fail();
+		} catch (InvalidKataRequestException e) {
+			// Whatever line the total overflowed on, the lines before it are taken out again.
+		}
+		assertEquals(Collections.singletonMap(first, 1L), transaction.getItems());
+		assertEquals(Money.ofPence(10), transaction.currentTotal());
+		assertEquals(Money.ofPence(10), checkout.calculateTotal(transaction));
+	}
+
+}
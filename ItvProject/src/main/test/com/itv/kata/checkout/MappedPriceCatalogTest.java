@@ -0,0 +1,149 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.pricing.BundlePricingRule.bundlePricingRuleFor;
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.ItemRegistry;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.OptimalPricingStrategy;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.pricing.PricingRuleOrder;
+
+public class MappedPriceCatalogTest {
+
+	private static final Item SANDWICH = new Item("SANDWICH");
+	private static final Item DRINK = new Item("DRINK");
+	private static final Item SNACK = new Item("SNACK");
+
+	@PricingRuleOrder(0)
+	private static class SevenPencePricingRule implements PricingRule {
+		public Item getItem() {
+			return SANDWICH;
+		}
+
+		public Unit getUnit(long quantity) {
+			return new Unit(quantity * 7, quantity);
+		}
+	}
+
+	private KataSupermarketCheckout checkout = new KataSupermarketCheckout();
+	private Path file;
+
+	@Before
+	public void createFile() throws IOException {
+		file = Files.createTempFile("catalog", ".bin");
+	}
+
+	@After
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	private Set<PricingRule> thisWeeksPrices() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(SANDWICH).atPrice(Money.ofPence(250)));
+		thisWeeksPrices.add(pricingRuleFor(DRINK).atPrice(Money.ofPence(120)));
+		thisWeeksPrices.add(pricingRuleFor(SNACK).atPrice(Money.ofPence(80)));
+		thisWeeksPrices.add(multiItemPricingRuleFor(DRINK).buy(2).atPrice(Money.ofPence(200)));
+		thisWeeksPrices.add(bundlePricingRuleFor(SANDWICH).and(DRINK).and(SNACK, 2).atPrice(Money.ofPence(350)));
+		for (int i = 0; i < 1000; i++) {
+			Item item = new Item("SKU" + i);
+			thisWeeksPrices.add(pricingRuleFor(item).atPrice(Money.ofPence(10 + i)));
+			thisWeeksPrices.add(multiItemPricingRuleFor(item).buy(3).atPrice(Money.ofPence(20 + i)));
+		}
+		return thisWeeksPrices;
+	}
+
+	@Test
+	public void mappedCatalogPricesLikeCompiledCatalog() throws IOException {
+		PriceCatalogFile.write(thisWeeksPrices(), file);
+		MappedPriceCatalog mapped = MappedPriceCatalog.open(file);
+
+		assertEquals(1003, mapped.size());
+		assertTrue(mapped.contains(new Item("SKU999")));
+		assertFalse(mapped.contains(null));
+		assertFalse(mapped.contains(new Item("SKU1000")));
+		assertTrue(mapped.isCompiledFrom(thisWeeksPrices()));
+
+		Item[][] baskets = {
+				{ SANDWICH, DRINK, SNACK, SNACK, DRINK },
+				{ DRINK, DRINK, DRINK, new Item("SKU7") },
+				{ new Item("SKU42"), new Item("SKU42"), new Item("SKU42"), new Item("SKU42"), SANDWICH },
+		};
+		for (Item[] basket : baskets) {
+			KataSupermarketCheckout.Transaction fromFile = checkout.getTransaction(mapped);
+			KataSupermarketCheckout.Transaction compiled = checkout.getTransaction(thisWeeksPrices());
+			for (Item item : basket) {
+				fromFile.scan(item);
+				compiled.scan(item);
+			}
+			assertEquals(checkout.calculateTotal(compiled), checkout.calculateTotal(fromFile));
+			assertEquals(checkout.calculateTotal(fromFile), fromFile.currentTotal());
+		}
+	}
+
+	@Test
+	public void pricesEverySkuWithoutKeepingThemAll() throws IOException {
+		Set<PricingRule> prices = thisWeeksPrices();
+		for (int i = 1000; i < 3000; i++) {
+			Item item = new Item("SKU" + i);
+			prices.add(pricingRuleFor(item).atPrice(Money.ofPence(10 + i)));
+			prices.add(multiItemPricingRuleFor(item).buy(3).atPrice(Money.ofPence(20 + i)));
+		}
+		PriceCatalogFile.write(prices, file);
+		MappedPriceCatalog mapped = MappedPriceCatalog.open(file);
+		int interned = ItemRegistry.size();
+
+		// Priced in place by the greedy checkout, from decoded rules by the optimal one and the receipt.
+		KataSupermarketCheckout optimalCheckout = new KataSupermarketCheckout(new OptimalPricingStrategy());
+		Receipt receipt = new Receipt();
+		for (int i = 0; i < 3000; i++) {
+			Item item = new Item("SKU" + i);
+			assertEquals(Money.ofPence(30 + 2 * i), checkout.calculateTotal(checkout.getTransaction(mapped).scan(item, 4)));
+			assertEquals(Money.ofPence(30 + 2 * i), optimalCheckout.calculateTotal(optimalCheckout.getTransaction(mapped).scan(item, 4), receipt));
+		}
+		assertEquals(interned, ItemRegistry.size());
+	}
+
+	@Test
+	public void rewritesMappedCatalog() throws IOException {
+		PriceCatalogFile.write(thisWeeksPrices(), file);
+		Path copy = Files.createTempFile("catalog", ".bin");
+		try {
+			PriceCatalogFile.write(MappedPriceCatalog.open(file), copy);
+			assertEquals(thisWeeksPrices(), MappedPriceCatalog.open(copy).getPricingRules());
+		} finally {
+			Files.deleteIfExists(copy);
+		}
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void rejectsFileThatIsNotACatalog() throws IOException {
+		Files.write(file, new byte[128]);
+		MappedPriceCatalog.open(file);
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void rejectsRulesWithoutFileFormat() throws IOException {
+		Set<PricingRule> thisWeeksPrices = thisWeeksPrices();
+		thisWeeksPrices.add(new SevenPencePricingRule());
+		PriceCatalogFile.write(thisWeeksPrices, file);
+	}
+
+}
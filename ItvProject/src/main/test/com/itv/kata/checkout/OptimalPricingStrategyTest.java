@@ -0,0 +1,93 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.OptimalPricingStrategy;
+import com.itv.kata.pricing.PricingRule;
+
+public class OptimalPricingStrategyTest {
+
+	private static final Item A = new Item("A");
+	private static final Item B = new Item("B");
+
+	private KataSupermarketCheckout greedyCheckout = new KataSupermarketCheckout();
+	private KataSupermarketCheckout optimalCheckout = new KataSupermarketCheckout(new OptimalPricingStrategy());
+
+	// 4 for 1.00 and 3 for 0.80 overlap, so applying either of them first is not always cheapest.
+	private Set<PricingRule> overlappingOffers() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(A).atPrice(Money.ofPence(50)));
+		thisWeeksPrices.add(multiItemPricingRuleFor(A).buy(4).atPrice(Money.ofPence(100)));
+		thisWeeksPrices.add(multiItemPricingRuleFor(A).buy(3).atPrice(Money.ofPence(80)));
+		thisWeeksPrices.add(pricingRuleFor(B).atPrice(Money.ofPence(30)));
+		return thisWeeksPrices;
+	}
+
+	@Test
+	public void findsCheapestCombinationOfOffers() {
+		assertEquals(Money.ofPence(160), optimalCheckout.calculateTotal(optimalCheckout.getTransaction(overlappingOffers()).scan(A, 6)));
+		assertEquals(Money.ofPence(200), optimalCheckout.calculateTotal(optimalCheckout.getTransaction(overlappingOffers()).scan(A, 8)));
+		assertEquals(Money.ofPence(390), optimalCheckout.calculateTotal(optimalCheckout.getTransaction(overlappingOffers()).scan(A, 14).scan(B)));
+		assertEquals(Money.ofPence(50), optimalCheckout.calculateTotal(optimalCheckout.getTransaction(overlappingOffers()).scan(A)));
+	}
+
+	@Test
+	public void neverDearerThanGreedy() {
+		for (int quantity = 1; quantity <= 50; quantity++) {
+			Money greedy = greedyCheckout.calculateTotal(greedyCheckout.getTransaction(overlappingOffers()).scan(A, quantity));
+			Money optimal = optimalCheckout.calculateTotal(optimalCheckout.getTransaction(overlappingOffers()).scan(A, quantity));
+			assertTrue(optimal.compareTo(greedy) <= 0);
+		}
+	}
+
+	@Test
+	public void runningTotalMatchesTotal() {
+		Transaction transaction = optimalCheckout.getTransaction(overlappingOffers());
+		for (int scan = 0; scan < 30; scan++) {
+			transaction.scan(scan % 5 == 0 ? B : A);
+			assertEquals(optimalCheckout.calculateTotal(transaction), transaction.currentTotal());
+		}
+	}
+
+	@Test
+	public void pricesEveryBasketTheSameAcrossThreads() throws InterruptedException {
+		final KataSupermarketCheckout sharedCheckout = new KataSupermarketCheckout(new OptimalPricingStrategy());
+		final Set<PricingRule> prices = overlappingOffers();
+		final Money[] totals = new Money[8];
+		Thread[] threads = new Thread[totals.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int thread = i;
+			threads[i] = new Thread(() -> totals[thread] = sharedCheckout.calculateTotal(sharedCheckout.getTransaction(prices).scan(A, 998 - thread % 2 * 500)));
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// 248 x 4 for 1.00 and 2 x 3 for 0.80, however far the other threads got.
+		for (int i = 0; i < totals.length; i += 2) {
+			assertEquals(Money.ofPence(24960), totals[i]);
+			assertEquals(Money.ofPence(12460), totals[i + 1]);
+		}
+	}
+
+	@Test
+	public void fallsBackToGreedyAboveMaxQuantity() {
+		KataSupermarketCheckout boundedCheckout = new KataSupermarketCheckout(new OptimalPricingStrategy(5));
+
+		Money greedy = greedyCheckout.calculateTotal(greedyCheckout.getTransaction(overlappingOffers()).scan(A, 8));
+		assertEquals(greedy, boundedCheckout.calculateTotal(boundedCheckout.getTransaction(overlappingOffers()).scan(A, 8)));
+	}
+
+}
@@ -0,0 +1,112 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.pricing.BundlePricingRule.bundlePricingRuleFor;
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.pricing.MultiItemPricingRule;
+import com.itv.kata.pricing.PricingRule;
+
+public class PriceCatalogTest {
+
+	private static final Item A = new Item("A");
+	private static final Item B = new Item("B");
+	private static final Item C = new Item("C");
+
+	private KataSupermarketCheckout checkout = new KataSupermarketCheckout();
+
+	private Set<PricingRule> thisWeeksPrices() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(A).atPrice(new BigDecimal(0.50).setScale(2, RoundingMode.HALF_UP)));
+		thisWeeksPrices.add(pricingRuleFor(B).atPrice(new BigDecimal(0.30).setScale(2, RoundingMode.HALF_UP)));
+		thisWeeksPrices.add(multiItemPricingRuleFor(A).buy(3).atPrice(new BigDecimal(1.30).setScale(2, RoundingMode.HALF_UP)));
+		return thisWeeksPrices;
+	}
+
+	@Test
+	public void groupsAndOrdersRulesPerItem() {
+		PriceCatalog catalog = PriceCatalog.compile(thisWeeksPrices());
+
+		assertEquals(2, catalog.size());
+		assertTrue(catalog.contains(new Item("A")));
+		assertFalse(catalog.contains(C));
+		assertEquals(-1, catalog.ordinalOf(C));
+
+		PricingRule[] rulesOfA = catalog.rulesAt(catalog.ordinalOf(A));
+		assertEquals(2, rulesOfA.length);
+		assertTrue(rulesOfA[0] instanceof MultiItemPricingRule);
+	}
+
+	@Test
+	public void sharesCatalogBetweenTransactionsOfSameRules() {
+		PriceCatalog first = checkout.getTransaction(thisWeeksPrices()).getCatalog();
+		PriceCatalog second = checkout.getTransaction(thisWeeksPrices()).getCatalog();
+		assertSame(first, second);
+
+		Set<PricingRule> changedPrices = thisWeeksPrices();
+		changedPrices.add(pricingRuleFor(C).atPrice(new BigDecimal(0.20).setScale(2, RoundingMode.HALF_UP)));
+		assertTrue(checkout.getTransaction(changedPrices).getCatalog().contains(C));
+	}
+
+	@Test
+	public void keepsCatalogsOfAlternatingRuleSets() {
+		Set<PricingRule> weekdayPrices = thisWeeksPrices();
+		Set<PricingRule> weekendPrices = thisWeeksPrices();
+		weekendPrices.add(pricingRuleFor(C).atPrice(new BigDecimal(0.20).setScale(2, RoundingMode.HALF_UP)));
+
+		PriceCatalog weekday = checkout.getTransaction(weekdayPrices).getCatalog();
+		PriceCatalog weekend = checkout.getTransaction(weekendPrices).getCatalog();
+		assertSame(weekday, checkout.getTransaction(weekdayPrices).getCatalog());
+		assertSame(weekend, checkout.getTransaction(weekendPrices).getCatalog());
+		// An equal set given for the first time is compared once, then found by identity.
+		assertSame(weekday, checkout.getTransaction(thisWeeksPrices()).getCatalog());
+	}
+
+	@Test
+	public void givesRulesOfBasketItemsOnly() {
+		Set<PricingRule> thisWeeksPrices = thisWeeksPrices();
+		PricingRule mealDeal = bundlePricingRuleFor(A).and(B).atPrice(new BigDecimal(0.70).setScale(2, RoundingMode.HALF_UP));
+		thisWeeksPrices.add(mealDeal);
+		PriceCatalog catalog = PriceCatalog.compile(thisWeeksPrices);
+
+		Set<PricingRule> rules = catalog.getPricingRulesOf(Arrays.asList(A, B, C));
+		assertEquals(4, rules.size());
+		assertTrue(rules.contains(mealDeal));
+		assertEquals(1, catalog.getPricingRulesOf(Arrays.asList(B)).size());
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void compileRuleWithoutPricingRuleOrder() {
+		Set<PricingRule> thisWeeksPrices = thisWeeksPrices();
+		thisWeeksPrices.add(new PricingRule() {
+			public Item getItem() {
+				return C;
+			}
+
+			public Unit getUnit(long quantity) {
+				return new Unit(0, quantity);
+			}
+		});
+		PriceCatalog.compile(thisWeeksPrices);
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void validateItemNotInCatalog() {
+		ValidationUtil.validateItem(C, PriceCatalog.compile(thisWeeksPrices()));
+	}
+
+}
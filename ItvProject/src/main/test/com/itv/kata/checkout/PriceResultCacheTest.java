@@ -0,0 +1,120 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.pricing.BundlePricingRule.bundlePricingRuleFor;
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.metrics.CheckoutStatistics;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.BundlePricingRule;
+import com.itv.kata.pricing.GreedyPricingStrategy;
+import com.itv.kata.pricing.IndividualPricingRule;
+import com.itv.kata.pricing.OptimalPricingStrategy;
+import com.itv.kata.pricing.PricingRule;
+
+public class PriceResultCacheTest {
+
+	private static final Item COFFEE = new Item("COFFEE");
+	private static final Item MUFFIN = new Item("MUFFIN");
+	private static final Item WATER = new Item("WATER");
+
+	private PriceResultCache cache = new PriceResultCache(2);
+	private KataSupermarketCheckout checkout = new KataSupermarketCheckout(new GreedyPricingStrategy(), cache);
+
+	private Set<PricingRule> thisWeeksPrices() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(COFFEE).atPrice(Money.ofPence(250)));
+		thisWeeksPrices.add(pricingRuleFor(MUFFIN).atPrice(Money.ofPence(180)));
+		thisWeeksPrices.add(pricingRuleFor(WATER).atPrice(Money.ofPence(90)));
+		thisWeeksPrices.add(bundlePricingRuleFor(COFFEE).and(MUFFIN).atPrice(Money.ofPence(350)));
+		return thisWeeksPrices;
+	}
+
+	@Test
+	public void totalsRepeatedBasketFromCache() {
+		assertEquals(Money.ofPence(600), checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(COFFEE).scan(MUFFIN).scan(COFFEE)));
+		// Same basket scanned in another order.
+		assertEquals(Money.ofPence(600), checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(COFFEE, 2).scan(MUFFIN)));
+
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0.5, cache.getHitRate(), 0);
+	}
+
+	@Test
+	public void priceChangeIsNeverServedFromCache() {
+		PricingRuleStore store = new PricingRuleStore(thisWeeksPrices());
+		assertEquals(Money.ofPence(90), checkout.calculateTotal(checkout.getTransaction(store).scan(WATER)));
+
+		store.apply(PricingRuleStore.delta()
+				.remove(pricingRuleFor(WATER).atPrice(Money.ofPence(90)))
+				.add(pricingRuleFor(WATER).atPrice(Money.ofPence(75))));
+
+		assertEquals(Money.ofPence(75), checkout.calculateTotal(checkout.getTransaction(store).scan(WATER)));
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedBasket() {
+		checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(COFFEE));
+		checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(MUFFIN));
+		checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(COFFEE));
+		checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(WATER));
+		checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(COFFEE));
+		checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(MUFFIN));
+
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getEvictionCount());
+		assertEquals(2, cache.getHitCount());
+	}
+
+	@Test
+	public void pricesLargeBasketsWithoutCaching() {
+		PriceResultCache smallBaskets = new PriceResultCache(10, 1);
+		KataSupermarketCheckout smallBasketCheckout = new KataSupermarketCheckout(new GreedyPricingStrategy(), smallBaskets);
+
+		assertEquals(Money.ofPence(430), smallBasketCheckout.calculateTotal(smallBasketCheckout.getTransaction(thisWeeksPrices()).scan(COFFEE).scan(WATER).scan(WATER)));
+		assertEquals(0, smallBaskets.size());
+		assertEquals(0, smallBaskets.getMissCount());
+	}
+
+	@Test
+	public void cachedTotalCountsSameRules() {
+		CheckoutStatistics statistics = new CheckoutStatistics();
+		KataSupermarketCheckout countedCheckout = new KataSupermarketCheckout(new GreedyPricingStrategy(), new PriceResultCache(10), statistics);
+
+		countedCheckout.calculateTotal(countedCheckout.getTransaction(thisWeeksPrices()).scan(COFFEE, 2).scan(MUFFIN).scan(WATER));
+		countedCheckout.calculateTotal(countedCheckout.getTransaction(thisWeeksPrices()).scan(COFFEE, 2).scan(MUFFIN).scan(WATER));
+
+		assertEquals(2, statistics.getRuleApplicationCount(BundlePricingRule.class));
+		assertEquals(4, statistics.getRuleApplicationCount(IndividualPricingRule.class));
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void isOnlySharedByCheckoutsOfOneStrategy() {
+		new KataSupermarketCheckout(new OptimalPricingStrategy(), cache);
+	}
+
+	@Test
+	public void spreadsLargeCacheOverStripes() {
+		PriceResultCache largeCache = new PriceResultCache(1000);
+		KataSupermarketCheckout largeCacheCheckout = new KataSupermarketCheckout(new GreedyPricingStrategy(), largeCache);
+		for (int quantity = 1; quantity <= 100; quantity++) {
+			largeCacheCheckout.calculateTotal(largeCacheCheckout.getTransaction(thisWeeksPrices()).scan(WATER, quantity));
+		}
+		for (int quantity = 1; quantity <= 100; quantity++) {
+			assertEquals(Money.ofPence(90 * quantity), largeCacheCheckout.calculateTotal(largeCacheCheckout.getTransaction(thisWeeksPrices()).scan(WATER, quantity)));
+		}
+
+		assertEquals(100, largeCache.size());
+		assertEquals(100, largeCache.getHitCount());
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule;
+
+public class PricingRuleStoreTest {
+
+	private static final Item A = new Item("A");
+	private static final Item B = new Item("B");
+
+	private KataSupermarketCheckout checkout = new KataSupermarketCheckout();
+
+	private Set<PricingRule> thisWeeksPrices() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(A).atPrice(Money.ofPence(50)));
+		thisWeeksPrices.add(pricingRuleFor(B).atPrice(Money.ofPence(30)));
+		return thisWeeksPrices;
+	}
+
+	@Test
+	public void inFlightTransactionKeepsItsVersion() {
+		PricingRuleStore store = new PricingRuleStore(thisWeeksPrices());
+		Transaction beforeMarkdown = checkout.getTransaction(store).scan(A);
+
+		store.apply(PricingRuleStore.delta()
+				.remove(pricingRuleFor(A).atPrice(Money.ofPence(50)))
+				.add(pricingRuleFor(A).atPrice(Money.ofPence(25))));
+		Transaction afterMarkdown = checkout.getTransaction(store).scan(A);
+		beforeMarkdown.scan(A);
+
+		assertEquals(2, store.getVersion());
+		assertEquals(1, beforeMarkdown.getCatalog().getVersion());
+		assertEquals(Money.ofPence(100), checkout.calculateTotal(beforeMarkdown));
+		assertEquals(Money.ofPence(25), checkout.calculateTotal(afterMarkdown));
+	}
+
+	@Test
+	public void appliesDeltaAsOneVersion() {
+		PricingRuleStore store = new PricingRuleStore(thisWeeksPrices());
+		List<PricingRule> markdowns = new ArrayList<PricingRule>();
+		for (int i = 0; i < 2000; i++) {
+			Item item = new Item("SKU" + i);
+			markdowns.add(pricingRuleFor(item).atPrice(Money.ofPence(10 + i)));
+			markdowns.add(multiItemPricingRuleFor(item).buy(2).atPrice(Money.ofPence(15 + i)));
+		}
+
+		PriceCatalog published = store.apply(PricingRuleStore.delta().addAll(markdowns).remove(pricingRuleFor(B).atPrice(Money.ofPence(30))));
+
+		assertEquals(2, published.getVersion());
+		assertEquals(2001, published.size());
+		assertFalse(published.contains(B));
+		assertEquals(Money.ofPence(109), checkout.calculateTotal(checkout.getTransaction(store).scan(new Item("SKU42"), 3)));
+	}
+
+	@Test
+	public void changingGivenRulesDoesNotChangeStore() {
+		Set<PricingRule> thisWeeksPrices = thisWeeksPrices();
+		PricingRuleStore store = new PricingRuleStore(thisWeeksPrices);
+		thisWeeksPrices.add(pricingRuleFor(new Item("C")).atPrice(Money.ofPence(20)));
+
+		assertFalse(store.getCatalog().contains(new Item("C")));
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void rejectsDeltaRemovingEveryRule() {
+		PricingRuleStore store = new PricingRuleStore(thisWeeksPrices());
+		store.apply(PricingRuleStore.delta().removeAll(thisWeeksPrices()));
+	}
+
+}
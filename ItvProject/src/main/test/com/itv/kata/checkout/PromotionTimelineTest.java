@@ -0,0 +1,112 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule;
+
+public class PromotionTimelineTest {
+
+	private static final Item BEER = new Item("BEER");
+	private static final Item CRISPS = new Item("CRISPS");
+	private static final ZoneId UTC = ZoneOffset.UTC;
+	// A Friday.
+	private static final LocalDate FIRST = LocalDate.of(2024, 3, 1);
+
+	private KataSupermarketCheckout checkout = new KataSupermarketCheckout();
+
+	private Set<PricingRule> everydayPrices() {
+		Set<PricingRule> everydayPrices = new HashSet<PricingRule>();
+		everydayPrices.add(pricingRuleFor(BEER).atPrice(Money.ofPence(300)));
+		everydayPrices.add(pricingRuleFor(CRISPS).atPrice(Money.ofPence(100)));
+		return everydayPrices;
+	}
+
+	private static long at(final LocalDate day, final int hour) {
+		return day.atTime(hour, 0).atZone(UTC).toInstant().toEpochMilli();
+	}
+
+	private Money totalAt(final PromotionTimeline timeline, final long time) {
+		return checkout.calculateTotal(checkout.getTransaction(timeline, time).scan(BEER, 2).scan(CRISPS));
+	}
+
+	@Test
+	public void happyHourOnlyAppliesWithinItsWindow() {
+		PromotionTimeline timeline = PromotionTimeline.builder(everydayPrices())
+				.recurring(multiItemPricingRuleFor(BEER).buy(2).atPrice(Money.ofPence(500)), FIRST, FIRST.plusDays(6), LocalTime.of(17, 0), LocalTime.of(19, 0), UTC)
+				.build();
+
+		assertEquals(Money.ofPence(700), totalAt(timeline, at(FIRST, 16)));
+		assertEquals(Money.ofPence(600), totalAt(timeline, at(FIRST, 17)));
+		assertEquals(Money.ofPence(600), totalAt(timeline, at(FIRST.plusDays(3), 18)));
+		assertEquals(Money.ofPence(700), totalAt(timeline, at(FIRST, 19)));
+		assertEquals(Money.ofPence(700), totalAt(timeline, at(FIRST.plusDays(7), 18)));
+		assertEquals(at(FIRST, 19), timeline.nextChangeAfter(at(FIRST, 17)));
+	}
+
+	@Test
+	public void recurringWindowsShareOneCatalog() {
+		PromotionTimeline timeline = PromotionTimeline.builder(everydayPrices())
+				.recurring(multiItemPricingRuleFor(BEER).buy(2).atPrice(Money.ofPence(500)), FIRST, FIRST.plusDays(29), LocalTime.of(17, 0), LocalTime.of(19, 0), UTC)
+				.build();
+
+		assertEquals(61, timeline.size());
+		assertSame(timeline.catalogAt(at(FIRST, 18)), timeline.catalogAt(at(FIRST.plusDays(20), 18)));
+		assertSame(timeline.getAlwaysOn(), timeline.catalogAt(at(FIRST.plusDays(20), 12)));
+	}
+
+	@Test
+	public void overlappingPromotionsStack() {
+		PromotionTimeline timeline = PromotionTimeline.builder(everydayPrices())
+				.recurring(multiItemPricingRuleFor(BEER).buy(2).atPrice(Money.ofPence(500)), FIRST, FIRST.plusDays(6), LocalTime.of(18, 0), LocalTime.of(2, 0), UTC,
+						DayOfWeek.FRIDAY, DayOfWeek.SATURDAY)
+				.during(pricingRuleFor(CRISPS).atPrice(Money.ofPence(50)), at(FIRST, 0), at(FIRST.plusDays(2), 0))
+				.build();
+
+		// Friday night over midnight, the weekend offer on crisps as well.
+		assertEquals(Money.ofPence(550), totalAt(timeline, at(FIRST.plusDays(1), 1)));
+		assertEquals(Money.ofPence(650), totalAt(timeline, at(FIRST.plusDays(1), 12)));
+		assertEquals(Money.ofPence(600), totalAt(timeline, at(FIRST.plusDays(2), 1)));
+		assertEquals(Money.ofPence(700), totalAt(timeline, at(FIRST.plusDays(2), 12)));
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void promotionMustEndAfterItStarts() {
+		PromotionTimeline.builder(everydayPrices()).during(pricingRuleFor(CRISPS).atPrice(Money.ofPence(50)), 10, 10);
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void rejectsOverlappingPromotionsOfSameType() {
+		PromotionTimeline.builder(everydayPrices())
+				.during(pricingRuleFor(BEER).atPrice(Money.ofPence(250)), 0, 100)
+				.during(pricingRuleFor(BEER).atPrice(Money.ofPence(200)), 50, 150)
+				.build();
+	}
+
+	@Test
+	public void promotionsOfSameTypeMayFollowEachOther() {
+		PromotionTimeline timeline = PromotionTimeline.builder(everydayPrices())
+				.during(pricingRuleFor(BEER).atPrice(Money.ofPence(250)), 0, 100)
+				.during(pricingRuleFor(BEER).atPrice(Money.ofPence(200)), 100, 150)
+				.build();
+
+		assertEquals(Money.ofPence(600), totalAt(timeline, 60));
+		assertEquals(Money.ofPence(500), totalAt(timeline, 120));
+	}
+
+}
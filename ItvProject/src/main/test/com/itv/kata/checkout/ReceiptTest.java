@@ -0,0 +1,117 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.pricing.BundlePricingRule.bundlePricingRuleFor;
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.OptimalPricingStrategy;
+import com.itv.kata.pricing.PricingRule;
+
+public class ReceiptTest {
+
+	private static final Item A = new Item("A");
+	private static final Item B = new Item("B");
+	private static final Item SANDWICH = new Item("SANDWICH");
+	private static final Item DRINK = new Item("DRINK");
+
+	private KataSupermarketCheckout checkout = new KataSupermarketCheckout();
+	private Receipt receipt = new Receipt(1);
+
+	private Set<PricingRule> thisWeeksPrices() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(A).atPrice(Money.ofPence(50)));
+		thisWeeksPrices.add(pricingRuleFor(B).atPrice(Money.ofPence(30)));
+		thisWeeksPrices.add(pricingRuleFor(SANDWICH).atPrice(Money.ofPence(250)));
+		thisWeeksPrices.add(pricingRuleFor(DRINK).atPrice(Money.ofPence(120)));
+		thisWeeksPrices.add(multiItemPricingRuleFor(A).buy(3).atPrice(Money.ofPence(130)));
+		thisWeeksPrices.add(bundlePricingRuleFor(SANDWICH).and(DRINK).atPrice(Money.ofPence(300)));
+		return thisWeeksPrices;
+	}
+
+	@Test
+	public void itemisesOffersAndIndividualPrices() {
+		Money total = checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(A, 4), receipt);
+
+		assertEquals(Money.ofPence(180), total);
+		assertEquals(total, receipt.getTotal());
+		assertEquals(2, receipt.size());
+		assertEquals(multiItemPricingRuleFor(A).buy(3).atPrice(Money.ofPence(130)), receipt.getRule(0));
+		assertEquals(3, receipt.getQuantity(0));
+		assertEquals(130, receipt.getPence(0));
+		assertEquals(20, receipt.getSavingPence(0));
+		assertEquals(pricingRuleFor(A).atPrice(Money.ofPence(50)), receipt.getRule(1));
+		assertEquals(1, receipt.getQuantity(1));
+		assertEquals(50, receipt.getPence(1));
+		assertEquals(Money.ofPence(20), receipt.getSavings());
+	}
+
+	@Test
+	public void itemisesBundleAsOneLine() {
+		checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(SANDWICH).scan(DRINK, 2), receipt);
+
+		assertEquals(Money.ofPence(420), receipt.getTotal());
+		assertEquals(2, receipt.size());
+		assertEquals(SANDWICH, receipt.getItem(0));
+		assertEquals(1, receipt.getQuantity(0));
+		assertEquals(300, receipt.getPence(0));
+		assertEquals(70, receipt.getSavingPence(0));
+		assertEquals(DRINK, receipt.getItem(1));
+		assertEquals(120, receipt.getPence(1));
+	}
+
+	@Test
+	public void reusedReceiptOnlyHoldsLastBasket() {
+		checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(A, 4).scan(B), receipt);
+		checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(B, 2), receipt);
+
+		assertEquals(1, receipt.size());
+		assertEquals(B, receipt.getItem(0));
+		assertEquals(2, receipt.getQuantity(0));
+		assertEquals(Money.ofPence(60), receipt.getTotal());
+		assertEquals(Money.ZERO, receipt.getSavings());
+	}
+
+	@Test
+	public void itemisesCheapestCombinationOfOptimalStrategy() {
+		Set<PricingRule> prices = new HashSet<PricingRule>();
+		prices.add(multiItemPricingRuleFor(A).buy(3).atPrice(Money.ofPence(130)));
+		prices.add(multiItemPricingRuleFor(A).buy(5).atPrice(Money.ofPence(200)));
+		KataSupermarketCheckout optimal = new KataSupermarketCheckout(new OptimalPricingStrategy());
+
+		assertEquals(Money.ofPence(330), optimal.calculateTotal(optimal.getTransaction(prices).scan(A, 8), receipt));
+		assertEquals(2, receipt.size());
+		long quantity = 0;
+		long pence = 0;
+		for (int line = 0; line < receipt.size(); line++) {
+			quantity += receipt.getQuantity(line);
+			pence += receipt.getPence(line);
+		}
+		assertEquals(8, quantity);
+		assertEquals(330, pence);
+		// Without an individual price there is nothing to save against.
+		assertEquals(Money.ZERO, receipt.getSavings());
+	}
+
+	@Test
+	public void itemisesQuantityNoRulePriced() {
+		Set<PricingRule> prices = new HashSet<PricingRule>();
+		prices.add(multiItemPricingRuleFor(A).buy(3).atPrice(Money.ofPence(130)));
+		KataSupermarketCheckout optimal = new KataSupermarketCheckout(new OptimalPricingStrategy());
+
+		optimal.calculateTotal(optimal.getTransaction(prices).scan(A, 4), receipt);
+		assertEquals(2, receipt.size());
+		assertNull(receipt.getRule(1));
+		assertEquals(1, receipt.getQuantity(1));
+		assertEquals(0, receipt.getPence(1));
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.itv.kata.checkout;
+
+import static com.itv.kata.pricing.BundlePricingRule.bundlePricingRuleFor;
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule;
+
+public class StorePriceCatalogsTest {
+
+	private static final Item MILK = new Item("MILK");
+	private static final Item BREAD = new Item("BREAD");
+	private static final Item JAM = new Item("JAM");
+	private static final Item LOCAL_HONEY = new Item("LOCAL_HONEY");
+
+	private KataSupermarketCheckout checkout = new KataSupermarketCheckout();
+
+	private Set<PricingRule> nationalPrices() {
+		Set<PricingRule> nationalPrices = new HashSet<PricingRule>();
+		nationalPrices.add(pricingRuleFor(MILK).atPrice(Money.ofPence(100)));
+		nationalPrices.add(multiItemPricingRuleFor(MILK).buy(2).atPrice(Money.ofPence(150)));
+		nationalPrices.add(pricingRuleFor(BREAD).atPrice(Money.ofPence(120)));
+		nationalPrices.add(pricingRuleFor(JAM).atPrice(Money.ofPence(200)));
+		nationalPrices.add(bundlePricingRuleFor(BREAD).and(JAM).atPrice(Money.ofPence(280)));
+		return nationalPrices;
+	}
+
+	private Set<PricingRule> storePrices() {
+		Set<PricingRule> storePrices = new HashSet<PricingRule>();
+		storePrices.add(pricingRuleFor(MILK).atPrice(Money.ofPence(90)));
+		storePrices.add(pricingRuleFor(LOCAL_HONEY).atPrice(Money.ofPence(450)));
+		storePrices.add(bundlePricingRuleFor(MILK).and(BREAD).atPrice(Money.ofPence(180)));
+		return storePrices;
+	}
+
+	@Test
+	public void storePricesOverrideNationalOnes() {
+		StorePriceCatalogs stores = new StorePriceCatalogs(new PricingRuleStore(nationalPrices()));
+		stores.setOverrides("0042", storePrices());
+
+		// The local price of milk replaces the national multi-buy.
+		assertEquals(Money.ofPence(180), checkout.calculateTotal(checkout.getTransaction(stores, "0042").scan(MILK, 2)));
+		assertEquals(Money.ofPence(150), checkout.calculateTotal(checkout.getTransaction(stores, "0007").scan(MILK, 2)));
+		// National bundle first, then the local one on what is left.
+		assertEquals(Money.ofPence(280 + 180), checkout.calculateTotal(checkout.getTransaction(stores, "0042").scan(BREAD, 2).scan(JAM).scan(MILK)));
+		assertEquals(Money.ofPence(450), checkout.calculateTotal(checkout.getTransaction(stores, "0042").scan(LOCAL_HONEY)));
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void localItemsAreNotSoldNationally() {
+		StorePriceCatalogs stores = new StorePriceCatalogs(new PricingRuleStore(nationalPrices()));
+		stores.setOverrides("0042", storePrices());
+
+		checkout.getTransaction(stores, "0007").scan(LOCAL_HONEY);
+	}
+
+	@Test
+	public void layerFollowsNationalPriceChanges() {
+		PricingRuleStore national = new PricingRuleStore(nationalPrices());
+		StorePriceCatalogs stores = new StorePriceCatalogs(national);
+		stores.setOverrides("0042", storePrices());
+		PriceCatalog before = stores.getCatalog("0042");
+		assertSame(before, stores.getCatalog("0042"));
+
+		national.apply(PricingRuleStore.delta()
+				.remove(pricingRuleFor(JAM).atPrice(Money.ofPence(200)))
+				.add(pricingRuleFor(JAM).atPrice(Money.ofPence(210))));
+
+		assertEquals(Money.ofPence(210), checkout.calculateTotal(checkout.getTransaction(stores, "0042").scan(JAM)));
+		assertEquals(Money.ofPence(200), checkout.calculateTotal(checkout.getTransaction(before).scan(JAM)));
+	}
+
+	@Test
+	public void layeredCatalogPricesLikeFlattenedRules() {
+		Set<PricingRule> nationalPrices = nationalPrices();
+		Item[] items = new Item[200];
+		for (int i = 0; i < items.length; i++) {
+			items[i] = new Item("SKU" + i);
+			nationalPrices.add(pricingRuleFor(items[i]).atPrice(Money.ofPence(10 + i)));
+			nationalPrices.add(multiItemPricingRuleFor(items[i]).buy(3).atPrice(Money.ofPence(20 + i)));
+		}
+		Set<PricingRule> storePrices = storePrices();
+		for (int i = 0; i < items.length; i += 7) {
+			storePrices.add(pricingRuleFor(items[i]).atPrice(Money.ofPence(5 + i)));
+		}
+		PriceCatalog layered = PriceCatalog.overlay(PriceCatalog.compile(nationalPrices), storePrices);
+		Set<PricingRule> flattened = layered.getPricingRules();
+		assertTrue(flattened.containsAll(storePrices));
+
+		Random random = new Random(42);
+		for (int basket = 0; basket < 200; basket++) {
+			Transaction layeredBasket = checkout.getTransaction(layered);
+			Transaction flatBasket = checkout.getTransaction(flattened);
+			for (int scan = 0; scan < 20; scan++) {
+				int pick = random.nextInt(items.length + 4);
+				Item item = pick < items.length ? items[pick] : new Item[] { MILK, BREAD, JAM, LOCAL_HONEY }[pick - items.length];
+				long quantity = 1 + random.nextInt(4);
+				layeredBasket.scan(item, quantity);
+				flatBasket.scan(item, quantity);
+			}
+			assertEquals(checkout.calculateTotal(flatBasket), checkout.calculateTotal(layeredBasket));
+		}
+	}
+
+	@Test
+	public void overridesTakeMemoryOfOverridesOnly() {
+		Set<PricingRule> nationalPrices = nationalPrices();
+		for (int sku = 0; sku < 20000; sku++) {
+			nationalPrices.add(pricingRuleFor(new Item("NATIONAL" + sku)).atPrice(Money.ofPence(100)));
+		}
+		StorePriceCatalogs stores = new StorePriceCatalogs(new PricingRuleStore(nationalPrices));
+		// The last SKU interned has the highest id of all.
+		Set<PricingRule> storePrices = storePrices();
+		storePrices.add(pricingRuleFor(new Item("NATIONAL19999")).atPrice(Money.ofPence(80)));
+		stores.setOverrides("0042", storePrices);
+
+		LayeredPriceCatalog catalog = (LayeredPriceCatalog) stores.getCatalog("0042");
+		assertTrue(((CompiledPriceCatalog) catalog.getOverlay()).idIndexLength() < 100);
+		assertEquals(Money.ofPence(90 + 450 + 80 + 100), checkout.calculateTotal(checkout.getTransaction(stores, "0042")
+				.scan(MILK).scan(LOCAL_HONEY).scan(new Item("NATIONAL19999")).scan(new Item("NATIONAL0"))));
+	}
+
+}
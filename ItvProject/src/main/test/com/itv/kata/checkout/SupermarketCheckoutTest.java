@@ -3,15 +3,19 @@ package com.itv.kata.checkout;
 import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
 import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import org.junit.Test;
 
 import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.exceptions.InvalidKataRequestException;
 import com.itv.kata.model.Item;
 import com.itv.kata.pricing.PricingRule;
 
@@ -80,4 +84,91 @@ public class SupermarketCheckoutTest {
         assertEquals(new BigDecimal(1.25).setScale(2, RoundingMode.HALF_UP), checkout.calculateTotalPrice(transaction));  
     }
 
-}
\ No newline at end of file
+    @Test
+    public void runningTotalMatchesTotalPriceAfterEveryScan() {
+    	initThisWeekPrices();
+    	Item[] scans = { B, A, B, A, A, C, B, A, D, A, A, B };
+        Transaction transaction = checkout.getTransaction(thisWeeksPrices);
+        for (Item item : scans) {
+        	transaction.scan(item);
+        	assertEquals(checkout.calculateTotalPrice(transaction), transaction.currentTotal().toGBP());
+        }
+        assertEquals(new BigDecimal(3.85).setScale(2, RoundingMode.HALF_UP), transaction.currentTotal().toGBP());
+    }
+
+    @Test
+    public void scanQuantityMatchesScanningEachUnit() {
+    	initThisWeekPrices();
+        Transaction bulk = checkout.getTransaction(thisWeeksPrices)
+                .scan(A, 500)
+                .scan(B, 7);
+        Transaction oneByOne = checkout.getTransaction(thisWeeksPrices);
+        for (int i = 0; i < 500; i++) {
+        	oneByOne.scan(A);
+        }
+        for (int i = 0; i < 7; i++) {
+        	oneByOne.scan(B);
+        }
+
+        assertEquals(checkout.calculateTotalPrice(oneByOne), checkout.calculateTotalPrice(bulk));
+        assertEquals(checkout.calculateTotalPrice(bulk), bulk.currentTotal().toGBP());
+    }
+
+    @Test
+    public void scanAllMatchesScanningEachItem() {
+    	initThisWeekPrices();
+        Transaction bulk = checkout.getTransaction(thisWeeksPrices)
+                .scanAll(Arrays.asList(B, A, B, A, A, C, B))
+                .scanAll(Stream.of(D, A));
+        Transaction oneByOne = checkout.getTransaction(thisWeeksPrices)
+                .scan(B).scan(A).scan(B).scan(A).scan(A).scan(C).scan(B).scan(D).scan(A);
+
+        assertEquals(checkout.calculateTotalPrice(oneByOne), checkout.calculateTotalPrice(bulk));
+        assertEquals(checkout.calculateTotalPrice(bulk), bulk.currentTotal().toGBP());
+    }
+
+    @Test
+    public void scanAllWithUnpricedItemAddsNothing() {
+    	initThisWeekPrices();
+        Transaction transaction = checkout.getTransaction(thisWeeksPrices);
+        try {
+        	transaction.scanAll(Arrays.asList(A, new Item("E"), B));
+        	fail();
+        } catch (InvalidKataRequestException e) {
+        	assertEquals(new BigDecimal(0.00).setScale(2, RoundingMode.HALF_UP), checkout.calculateTotalPrice(transaction));
+        }
+    }
+
+    @Test(expected = InvalidKataRequestException.class)
+    public void scanNonPositiveQuantity() {
+    	initThisWeekPrices();
+        checkout.getTransaction(thisWeeksPrices).scan(A, 0);
+    }
+
+    @Test
+    public void tryScanReportsRejectedScans() {
+    	initThisWeekPrices();
+        Transaction transaction = checkout.getTransaction(thisWeeksPrices);
+
+        assertEquals(ScanResult.ACCEPTED, transaction.tryScan(A));
+        assertEquals(ScanResult.UNKNOWN_SKU, transaction.tryScan(new Item("E")));
+        assertEquals(ScanResult.REJECTED, transaction.tryScan(B, 0));
+        assertEquals(ScanResult.REJECTED, transaction.tryScan(null));
+        assertEquals(ScanResult.ACCEPTED, transaction.tryScan(A, 2));
+        assertEquals(new BigDecimal(1.30).setScale(2, RoundingMode.HALF_UP), checkout.calculateTotalPrice(transaction));
+        assertEquals(checkout.calculateTotalPrice(transaction), transaction.currentTotal().toGBP());
+    }
+
+    @Test
+    public void unpricedItemIsRejectedWithoutStackTrace() {
+    	initThisWeekPrices();
+        try {
+        	checkout.getTransaction(thisWeeksPrices).scan(new Item("E"));
+        	fail();
+        } catch (InvalidKataRequestException e) {
+        	assertEquals("Sorry!E has not been priced yet. Please remove this item from basket.", e.getMessage());
+        	assertEquals(0, e.getStackTrace().length);
+        }
+    }
+
+}
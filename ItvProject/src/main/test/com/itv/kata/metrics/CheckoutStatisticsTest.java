@@ -0,0 +1,183 @@
+package com.itv.kata.metrics;
+
+import static com.itv.kata.pricing.BundlePricingRule.bundlePricingRuleFor;
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.itv.kata.checkout.KataSupermarketCheckout;
+import com.itv.kata.checkout.KataSupermarketCheckout.Transaction;
+import com.itv.kata.checkout.Receipt;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.BundlePricingRule;
+import com.itv.kata.pricing.GreedyPricingStrategy;
+import com.itv.kata.pricing.IndividualPricingRule;
+import com.itv.kata.pricing.MultiItemPricingRule;
+import com.itv.kata.pricing.OptimalPricingStrategy;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.pricing.PricingStrategy;
+
+public class CheckoutStatisticsTest {
+
+	private static final Item A = new Item("A");
+	private static final Item B = new Item("B");
+	private static final Item C = new Item("C");
+
+	private CheckoutStatistics statistics = new CheckoutStatistics();
+
+	private Set<PricingRule> thisWeeksPrices() {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(A).atPrice(Money.ofPence(50)));
+		thisWeeksPrices.add(pricingRuleFor(B).atPrice(Money.ofPence(30)));
+		thisWeeksPrices.add(pricingRuleFor(C).atPrice(Money.ofPence(20)));
+		thisWeeksPrices.add(multiItemPricingRuleFor(A).buy(3).atPrice(Money.ofPence(130)));
+		thisWeeksPrices.add(bundlePricingRuleFor(B).and(C).atPrice(Money.ofPence(40)));
+		return thisWeeksPrices;
+	}
+
+	@Test
+	public void recordsScansTotalsAndRules() {
+		KataSupermarketCheckout checkout = new KataSupermarketCheckout(new GreedyPricingStrategy(), null, statistics);
+		Transaction transaction = checkout.getTransaction(thisWeeksPrices()).scan(A, 4).scan(B).scan(C);
+
+		assertEquals(Money.ofPence(220), checkout.calculateTotal(transaction));
+		assertEquals(6, statistics.getScanCount());
+		assertEquals(1, statistics.getTotalCount());
+		assertTrue(statistics.getTotalLatencyMaxNanos() > 0);
+		assertEquals(1, statistics.getRuleApplicationCount(MultiItemPricingRule.class));
+		assertEquals(1, statistics.getRuleApplicationCount(IndividualPricingRule.class));
+		assertEquals(1, statistics.getRuleApplicationCount(BundlePricingRule.class));
+	}
+
+	@Test
+	public void countsOffersOfOptimalStrategy() {
+		KataSupermarketCheckout checkout = new KataSupermarketCheckout(new OptimalPricingStrategy(), null, statistics);
+		checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(A, 7));
+
+		// 3 for 1.30 twice and one A at 0.50, each rule counted once for the line.
+		assertEquals(1, statistics.getRuleApplicationCount(MultiItemPricingRule.class));
+		assertEquals(1, statistics.getRuleApplicationCount(IndividualPricingRule.class));
+	}
+
+	@Test
+	public void countsSameRulesWithAndWithoutReceipt() {
+		CheckoutStatistics itemised = new CheckoutStatistics();
+		for (PricingStrategy strategy : new PricingStrategy[] { new GreedyPricingStrategy(), new OptimalPricingStrategy() }) {
+			KataSupermarketCheckout checkout = new KataSupermarketCheckout(strategy, null, statistics);
+			KataSupermarketCheckout itemisingCheckout = new KataSupermarketCheckout(strategy, null, itemised);
+			checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(A, 7).scan(B, 2).scan(C, 2));
+			itemisingCheckout.calculateTotal(itemisingCheckout.getTransaction(thisWeeksPrices()).scan(A, 7).scan(B, 2).scan(C, 2), new Receipt());
+		}
+
+		assertEquals(statistics.getRuleApplicationCounts(), itemised.getRuleApplicationCounts());
+		// Two bundles of B and C are one line.
+		assertEquals(2, statistics.getRuleApplicationCount(BundlePricingRule.class));
+	}
+
+	@Test
+	public void recordsValidationFailures() {
+		KataSupermarketCheckout checkout = new KataSupermarketCheckout(new GreedyPricingStrategy(), null, statistics);
+		Transaction transaction = checkout.getTransaction(thisWeeksPrices());
+		try {
+			transaction.scan(new Item("D"));
+			fail();
+		} catch (InvalidKataRequestException e) {
+			// expected
+		}
+		try {
+			transaction.scan(A, 0);
+			fail();
+		} catch (InvalidKataRequestException e) {
+			// expected
+		}
+		assertEquals(2, statistics.getValidationFailureCount());
+		assertEquals(0, statistics.getScanCount());
+	}
+
+	@Test
+	public void scanRateFollowsRecentScans() {
+		final AtomicLong nanos = new AtomicLong();
+		CheckoutStatistics clocked = new CheckoutStatistics(nanos::get);
+
+		// An hour at 100 scans a second.
+		for (int tick = 0; tick < 720; tick++) {
+			clocked.scanned(500);
+			nanos.addAndGet(ExponentialRate.TICK_NANOS);
+			clocked.getOneMinuteScansPerSecond();
+		}
+		assertEquals(100, clocked.getOneMinuteScansPerSecond(), 0.01);
+
+		// Five minutes without a scan, read only at the end.
+		nanos.addAndGet(60 * ExponentialRate.TICK_NANOS);
+		assertTrue(clocked.getOneMinuteScansPerSecond() < 1);
+		assertEquals(360000, clocked.getScanCount());
+
+		clocked.reset();
+		assertEquals(0, clocked.getOneMinuteScansPerSecond(), 0);
+	}
+
+	@Test
+	public void exportsEveryStatistic() {
+		KataSupermarketCheckout checkout = new KataSupermarketCheckout(new GreedyPricingStrategy(), null, statistics);
+		checkout.calculateTotal(checkout.getTransaction(thisWeeksPrices()).scan(A));
+
+		final Map<String, Double> exported = new HashMap<String, Double>();
+		statistics.exportTo(new MetricsExporter() {
+			public void counter(String name, long value) {
+				exported.put(name, (double) value);
+			}
+
+			public void gauge(String name, double value) {
+				exported.put(name, value);
+			}
+		});
+		assertEquals(1.0, exported.get("checkout.scans"), 0);
+		assertEquals(1.0, exported.get("checkout.totals"), 0);
+		assertEquals(1.0, exported.get("checkout.rules.IndividualPricingRule"), 0);
+		assertTrue(exported.containsKey("checkout.total.latency.p99"));
+		assertTrue(exported.containsKey("checkout.scans.per.second.1m"));
+	}
+
+	@Test
+	public void registersMBean() throws Exception {
+		ObjectName name = statistics.registerMBean("com.itv.kata:type=CheckoutStatistics,name=test");
+		try {
+			statistics.scanned(3);
+			assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ScanCount"));
+		} finally {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+	}
+
+	@Test
+	public void histogramKeepsRelativeErrorSmall() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long nanos = 1; nanos <= 100000; nanos++) {
+			histogram.record(nanos);
+		}
+		assertEquals(100000, histogram.getCount());
+		assertEquals(50000, histogram.getValueAtPercentile(50), 50000 / 16);
+		assertEquals(99000, histogram.getValueAtPercentile(99), 99000 / 16);
+		assertEquals(100000, histogram.getMaxValue(), 100000 / 16);
+		for (long value : new long[] { 0, 31, 32, 1000, 123456789, Long.MAX_VALUE }) {
+			long highest = LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(value));
+			assertTrue(highest >= value && highest - value <= Math.max(0, value / 16));
+		}
+	}
+
+}
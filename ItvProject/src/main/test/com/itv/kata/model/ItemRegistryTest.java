@@ -0,0 +1,70 @@
+package com.itv.kata.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ItemRegistryTest {
+
+	@Test
+	public void internsOneItemPerSku() {
+		Item first = ItemRegistry.intern(new String("REGISTRY-A"));
+		Item second = ItemRegistry.intern(new Item("REGISTRY-A"));
+
+		assertSame(first, second);
+		assertTrue(first.isInterned());
+		assertSame(first, ItemRegistry.itemOf(first.getId()));
+		assertTrue(first.getId() < ItemRegistry.size());
+	}
+
+	@Test
+	public void givesDenseIds() {
+		Item first = ItemRegistry.intern("REGISTRY-B");
+		Item second = ItemRegistry.intern("REGISTRY-C");
+
+		assertEquals(first.getId() + 1, second.getId());
+	}
+
+	@Test
+	public void internedItemEqualsItemOfSameSku() {
+		Item interned = ItemRegistry.intern("REGISTRY-D");
+		Item scanned = new Item("REGISTRY-D");
+
+		assertFalse(scanned.isInterned());
+		assertEquals(interned, scanned);
+		assertEquals(scanned, interned);
+		assertEquals(interned.hashCode(), scanned.hashCode());
+		assertNotEquals(interned, ItemRegistry.intern("REGISTRY-E"));
+	}
+
+	@Test
+	public void internsManyItemsConcurrently() throws InterruptedException {
+		Thread[] threads = new Thread[4];
+		final Item[][] interned = new Item[threads.length][2000];
+		for (int t = 0; t < threads.length; t++) {
+			final int thread = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 2000; i++) {
+						interned[thread][i] = ItemRegistry.intern("REGISTRY-SKU" + i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (int i = 0; i < 2000; i++) {
+			for (int t = 1; t < threads.length; t++) {
+				assertSame(interned[0][i], interned[t][i]);
+			}
+			assertSame(interned[0][i], ItemRegistry.itemOf(interned[0][i].getId()));
+		}
+	}
+
+}
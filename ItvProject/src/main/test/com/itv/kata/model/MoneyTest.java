@@ -0,0 +1,41 @@
+package com.itv.kata.model;
+
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.itv.kata.checkout.KataSupermarketCheckout;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.pricing.PricingRule;
+
+public class MoneyTest {
+
+	@Test
+	public void convertsBetweenPenceAndGBP() {
+		assertEquals(130, Money.ofGBP(new BigDecimal(1.30).setScale(2, RoundingMode.HALF_UP)).getPence());
+		assertEquals(new BigDecimal(4.85).setScale(2, RoundingMode.HALF_UP), Money.ofPence(485).toGBP());
+		assertEquals(Money.ofPence(390), Money.ofPence(130).times(3));
+		assertEquals(Money.ofPence(180), Money.ofPence(130).plus(Money.ofPence(50)));
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void rejectsOverflowingSum() {
+		Money.ofPence(Long.MAX_VALUE).plus(Money.ofPence(1));
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void rejectsOverflowingBulkBasket() {
+		Item a = new Item("A");
+		Set<PricingRule> pricingRules = new HashSet<PricingRule>();
+		pricingRules.add(pricingRuleFor(a).atPrice(Money.ofPence(50)));
+
+		new KataSupermarketCheckout().getTransaction(pricingRules).scan(a, Long.MAX_VALUE / 10);
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.itv.kata.pricing;
+
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule.MutableUnit;
+import com.itv.kata.pricing.PricingRule.Unit;
+
+public class PricingRuleTest {
+
+	private static final Item A = new Item("A");
+
+	private void assertFillUnitMatchesGetUnit(PricingRule rule) {
+		MutableUnit mutableUnit = new MutableUnit();
+		for (long quantity = 0; quantity < 20; quantity++) {
+			Unit unit = rule.getUnit(quantity);
+			rule.fillUnit(quantity, mutableUnit);
+			assertEquals(unit.getPrice(), mutableUnit.getPrice());
+			assertEquals(unit.getQuantity(), mutableUnit.getQuantity());
+		}
+	}
+
+	@Test
+	public void individualFillUnitMatchesGetUnit() {
+		assertFillUnitMatchesGetUnit(pricingRuleFor(A).atPrice(Money.ofPence(50)));
+	}
+
+	@Test
+	public void multiItemFillUnitMatchesGetUnit() {
+		assertFillUnitMatchesGetUnit(multiItemPricingRuleFor(A).buy(3).atPrice(Money.ofPence(130)));
+	}
+
+	@Test
+	public void fillUnitFallsBackToGetUnit() {
+		assertFillUnitMatchesGetUnit(new PricingRule() {
+			public Item getItem() {
+				return A;
+			}
+
+			public Unit getUnit(long quantity) {
+				return new Unit(quantity * 7, quantity);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.itv.kata.replay;
+
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.itv.kata.checkout.KataSupermarketCheckout;
+import com.itv.kata.checkout.PriceCatalog;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.OptimalPricingStrategy;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.replay.DifferentialReplay.Mismatch;
+
+public class DifferentialReplayTest {
+
+	private static final Item A = new Item("A");
+	private static final Item B = new Item("B");
+
+	private final List<Mismatch> mismatches = new ArrayList<Mismatch>();
+	private PriceCatalog catalog;
+	private Path log;
+
+	@Before
+	public void createLog() throws IOException {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(A).atPrice(Money.ofPence(50)));
+		thisWeeksPrices.add(pricingRuleFor(B).atPrice(Money.ofPence(30)));
+		thisWeeksPrices.add(multiItemPricingRuleFor(A).buy(3).atPrice(Money.ofPence(130)));
+		thisWeeksPrices.add(multiItemPricingRuleFor(A).buy(5).atPrice(Money.ofPence(200)));
+		catalog = PriceCatalog.compile(thisWeeksPrices);
+		log = Files.createTempFile("scans", ".log");
+		StringBuilder scans = new StringBuilder();
+		for (int basket = 0; basket < 500; basket++) {
+			// Every tenth basket has 8 A, cheaper as 5 + 3 than as 5 + 2 + 1.
+			int quantity = basket % 10 == 0 ? 8 : 1 + basket % 4;
+			for (int scan = 0; scan < quantity; scan++) {
+				scans.append('T').append(basket).append(",A,").append(basket * 100 + scan).append('\n');
+			}
+			scans.append('T').append(basket).append(",B,").append(basket * 100 + 50).append('\n');
+		}
+		scans.append("T500,A,60000\nT500,C,60001\n");
+		Files.write(log, scans.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void deleteLog() throws IOException {
+		Files.deleteIfExists(log);
+	}
+
+	@Test
+	public void sameEngineHasNoMismatch() throws Exception {
+		DifferentialReplay replay = new DifferentialReplay(new KataSupermarketCheckout(), new KataSupermarketCheckout(), catalog, 10);
+
+		DifferentialReplay.Report report = replay.replay(log, mismatches::add);
+
+		assertEquals(501, report.getBaskets());
+		assertEquals(0, report.getMismatches());
+		assertTrue(mismatches.isEmpty());
+		assertTrue(report.getBaselineThroughput() > 0);
+		assertTrue(report.getCandidateThroughput() > 0);
+	}
+
+	@Test
+	public void reportsEveryBasketTotalledDifferently() throws Exception {
+		DifferentialReplay replay = new DifferentialReplay(new KataSupermarketCheckout(), new KataSupermarketCheckout(new OptimalPricingStrategy()), catalog, 10);
+
+		DifferentialReplay.Report report = replay.replay(log, mismatches::add);
+
+		assertEquals(501, report.getBaskets());
+		assertEquals(50, report.getMismatches());
+		Mismatch mismatch = mismatches.get(0);
+		assertEquals("T0", mismatch.getTransactionId());
+		assertEquals(Money.ofPence(390), mismatch.getBaseline().getTotal());
+		assertEquals(Money.ofPence(360), mismatch.getCandidate().getTotal());
+		assertEquals(8L, (long) mismatch.getItems().get(A));
+		// Every rule of A and B, the rule set to look at.
+		assertEquals(4, mismatch.getRules().size());
+	}
+
+}
@@ -0,0 +1,175 @@
+package com.itv.kata.replay;
+
+import static com.itv.kata.pricing.IndividualPricingRule.pricingRuleFor;
+import static com.itv.kata.pricing.MultiItemPricingRule.multiItemPricingRuleFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.itv.kata.checkout.KataSupermarketCheckout;
+import com.itv.kata.checkout.PriceCatalog;
+import com.itv.kata.exceptions.InvalidKataRequestException;
+import com.itv.kata.model.Item;
+import com.itv.kata.model.Money;
+import com.itv.kata.pricing.PricingRule;
+import com.itv.kata.replay.ScanLogPipeline.BasketSink;
+import com.itv.kata.replay.ScanLogPipeline.BasketTotal;
+
+public class ScanLogPipelineTest {
+
+	private final List<BasketTotal> closed = new ArrayList<BasketTotal>();
+	private final BasketSink collect = new BasketSink() {
+		public void accept(BasketTotal basket) {
+			closed.add(basket);
+		}
+	};
+
+	private ScanLogPipeline pipeline;
+	private Path log;
+
+	@Before
+	public void createLog() throws IOException {
+		Set<PricingRule> thisWeeksPrices = new HashSet<PricingRule>();
+		thisWeeksPrices.add(pricingRuleFor(new Item("A")).atPrice(Money.ofPence(50)));
+		thisWeeksPrices.add(pricingRuleFor(new Item("B")).atPrice(Money.ofPence(30)));
+		thisWeeksPrices.add(multiItemPricingRuleFor(new Item("A")).buy(3).atPrice(Money.ofPence(130)));
+		pipeline = new ScanLogPipeline(new KataSupermarketCheckout(), PriceCatalog.compile(thisWeeksPrices), 1000);
+		log = Files.createTempFile("scans", ".log");
+	}
+
+	@After
+	public void deleteLog() throws IOException {
+		Files.deleteIfExists(log);
+	}
+
+	private void writeLog(String... lines) throws IOException {
+		Files.write(log, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void pricesInterleavedBaskets() throws IOException {
+		writeLog("T1,A,100", "T2,B,110", "T1,A,120", "T2,A,130\r", "T1,A,140", "", "T1,B,150");
+
+		assertEquals(2, pipeline.replay(log, collect));
+		// At the end of the log the basket idle for longest is closed first.
+		assertEquals("T2", closed.get(0).getTransactionId());
+		assertEquals(Money.ofPence(80), closed.get(0).getTotal());
+		assertEquals("T1", closed.get(1).getTransactionId());
+		assertEquals(Money.ofPence(160), closed.get(1).getTotal());
+		assertEquals(4, closed.get(1).getScans());
+		assertEquals(100, closed.get(1).getFirstScan());
+		assertEquals(150, closed.get(1).getLastScan());
+	}
+
+	@Test
+	public void closesBasketAfterIdleGap() throws IOException {
+		writeLog("T1,A,0", "T2,B,500", "T2,B,1500", "T3,A,1600", "T1,A,5000");
+
+		assertEquals(4, pipeline.replay(log, collect));
+		// Baskets are closed once the log has moved on by more than a second since their last scan, so T1 starts again.
+		assertEquals("T1", closed.get(0).getTransactionId());
+		assertEquals(Money.ofPence(50), closed.get(0).getTotal());
+		assertEquals("T2", closed.get(1).getTransactionId());
+		assertEquals(Money.ofPence(60), closed.get(1).getTotal());
+		assertEquals(5000, closed.get(3).getFirstScan());
+	}
+
+	@Test
+	public void closesBasketsByTheirLastScanWhenTillsAreMerged() throws IOException {
+		// T2 comes from a till whose scans were merged into the log after those of T1.
+		writeLog("T1,A,1000", "T2,B,500", "T3,A,1600", "T3,A,2600");
+
+		assertEquals(3, pipeline.replay(log, collect));
+		// T2 was idle for more than a second at 1600, T1 only at 2600.
+		assertEquals("T2", closed.get(0).getTransactionId());
+		assertEquals(Money.ofPence(30), closed.get(0).getTotal());
+		assertEquals("T1", closed.get(1).getTransactionId());
+		assertEquals("T3", closed.get(2).getTransactionId());
+	}
+
+	@Test
+	public void rejectsBasketWithUnpricedItem() throws IOException {
+		writeLog("T1,A,0", "T1,C,10", "T1,A,20", "T2,B,30");
+
+		pipeline.replay(log, collect);
+		assertTrue(closed.get(0).isRejected());
+		assertNull(closed.get(0).getTotal());
+		assertEquals(3, closed.get(0).getScans());
+		assertEquals(Money.ofPence(30), closed.get(1).getTotal());
+	}
+
+	@Test
+	public void rejectsBasketWhoseTotalIsTooLarge() throws IOException {
+		Set<PricingRule> prices = new HashSet<PricingRule>();
+		prices.add(pricingRuleFor(new Item("A")).atPrice(Money.ofPence(50)));
+		KataSupermarketCheckout tooLargeForT1 = new KataSupermarketCheckout() {
+			@Override
+			public Money calculateTotal(Transaction transaction) {
+				Money total = super.calculateTotal(transaction);
+				// T1 costs more than can be added up, as if it had a surcharge of Long.MAX_VALUE pence.
+				return total.equals(Money.ofPence(100)) ? Money.ofPence(Money.addPence(Long.MAX_VALUE, total.getPence())) : total;
+			}
+		};
+		writeLog("T1,A,0", "T1,A,10", "T2,A,20");
+
+		assertEquals(2, new ScanLogPipeline(tooLargeForT1, PriceCatalog.compile(prices), 1000).replay(log, collect));
+		assertTrue(closed.get(0).isRejected());
+		assertNull(closed.get(0).getTotal());
+		assertEquals(Money.ofPence(50), closed.get(1).getTotal());
+	}
+
+	@Test
+	public void writesCsvIncrementally() throws IOException {
+		writeLog("T1,A,0", "T1,B,10");
+		StringWriter csv = new StringWriter();
+		BufferedWriter writer = new BufferedWriter(csv);
+
+		pipeline.replay(log, ScanLogPipeline.csvSink(writer));
+		writer.flush();
+		assertEquals("T1,0,10,2,0.80,\n", csv.toString());
+	}
+
+	@Test
+	public void readsLogLargerThanBuffer() throws IOException {
+		StringBuilder lines = new StringBuilder();
+		int scans = 0;
+		for (int transaction = 0; transaction < 2000; transaction++) {
+			for (int scan = 0; scan < 10; scan++) {
+				lines.append("TRANSACTION-").append(transaction).append(",A,").append(transaction * 10 + scan).append('\n');
+				scans++;
+			}
+		}
+		Files.write(log, lines.toString().getBytes(StandardCharsets.UTF_8));
+		assertTrue(Files.size(log) > ScanLogPipeline.BUFFER_BYTES);
+
+		assertEquals(2000, pipeline.replay(log, collect));
+		long replayedScans = 0;
+		for (BasketTotal basket : closed) {
+			assertEquals(Money.ofPence(440), basket.getTotal());
+			replayedScans += basket.getScans();
+		}
+		assertEquals(scans, replayedScans);
+	}
+
+	@Test(expected = InvalidKataRequestException.class)
+	public void rejectsMalformedLine() throws IOException {
+		writeLog("T1,A,0", "T1;A;10");
+		pipeline.replay(log, collect);
+	}
+
+}